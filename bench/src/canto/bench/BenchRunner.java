@@ -0,0 +1,53 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * BenchRunner.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ *  Runs the benchmarks with the usual JMH command line, adding the GC profiler
+ *  so that every run reports allocation per operation alongside throughput.
+ *  Set -Dcanto.bench.gc=false to leave it out.  Listing and help options are
+ *  passed straight to JMH.
+ */
+public class BenchRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListWithParams()
+                || cmdOptions.shouldListProfilers() || cmdOptions.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmdOptions);
+        if (Boolean.parseBoolean(System.getProperty("canto.bench.gc", "true")) && !hasGCProfiler(cmdOptions)) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+
+    private static boolean hasGCProfiler(Options options) {
+        for (ProfilerConfig profiler: options.getProfilers()) {
+            String name = profiler.getKlass();
+            if (name.equals("gc") || name.equals(GCProfiler.class.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,152 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * BenchSites.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import canto.lang.CantoNode;
+import canto.lang.Construction;
+import canto.lang.Context;
+import canto.lang.Definition;
+import canto.lang.ExternalDefinition;
+import canto.lang.Instantiation;
+import canto.lang.Redirection;
+import canto.lang.canto_server;
+import canto.runtime.CantoRequest;
+import canto.runtime.CantoSession;
+import canto.runtime.CantoSite;
+import canto.runtime.Log;
+
+/**
+ *  Shared setup for the benchmarks: locates the benchmark sites, generates a
+ *  configuration for them and builds the arguments a page request needs.
+ */
+public class BenchSites {
+
+    /** Directory containing the test sites; override with -Dcanto.bench.sites. **/
+    public static final String SITES_DIR = System.getProperty("canto.bench.sites", "../sites/test");
+
+    /** Source of the interpreter benchmark site; override with -Dcanto.bench.site. **/
+    public static final String BENCH_SITE = System.getProperty("canto.bench.site", "sites/bench.canto");
+
+    static {
+        Log.setLogLevel("WARN");
+    }
+
+    /** Returns the file for a site, given its key (the file name without the extension). **/
+    public static File siteFile(String key) {
+        File file = ("bench".equals(key) ? new File(BENCH_SITE) : new File(SITES_DIR, key + ".canto"));
+        if (!file.exists()) {
+            throw new RuntimeException("Benchmark site not found: " + file.getAbsolutePath());
+        }
+        return file;
+    }
+
+    /** Returns the name of the site declared in a site file. **/
+    public static String siteName(String key) {
+        switch (key) {
+            case "tiny_test":
+                return "tiny_site";
+            case "bench":
+                return "bench";
+            default:
+                return "test";
+        }
+    }
+
+    /** Returns configuration source pointing the main site at the given site file. **/
+    public static String configSource(String key) {
+        String path = siteFile(key).getAbsolutePath().replace('\\', '/');
+        return "{ site_config main_site = bench_config\n"
+             + "  site_config[] all_sites = []\n"
+             + "  cantopath = main_site.cantopath\n"
+             + "  sitename = main_site.name\n"
+             + "  site_config bench_config {\n"
+             + "      name = \"" + siteName(key) + "\"\n"
+             + "      cantopath = \"" + path + "\"\n"
+             + "  }\n"
+             + "}\n";
+    }
+
+    /** Loads a site the way the server does. **/
+    public static CantoSite loadSite(String key) {
+        CantoSite site = new CantoSite(siteName(key), new Server());
+        if (!site.load(configSource(key))) {
+            throw new RuntimeException("Unable to load benchmark site " + key);
+        }
+        // sets up the request trackers, as the server does before its first request
+        site.clearStats();
+        return site;
+    }
+
+    /** A stand-in for the server a site expects to run under; benchmarks make no HTTP requests. **/
+    public static class Server implements canto_server {
+        public String base_url()                     { return null; }
+        public Map<String, String> site_paths()      { return new HashMap<String, String>(); }
+        public String nominal_address()              { return "localhost"; }
+        public boolean is_running()                  { return true; }
+        public canto_server get_server(String name)  { return null; }
+
+        public canto_server launch_server(String name, Map<String, String> params) {
+            return null;
+        }
+
+        public canto_server relaunch_server(String name, Map<String, String> params) {
+            return null;
+        }
+
+        public String get(Context context, String requestName, Map<String, String> requestParams) throws Redirection {
+            return null;
+        }
+
+        public String get(Context context, String requestName) throws Redirection {
+            return null;
+        }
+    }
+
+    /** A PrintStream that discards everything written to it. **/
+    public static PrintStream nullOut() {
+        return new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    /** Holds the per-request arguments and context for responding to a page. **/
+    public static class Request {
+        public final Construction paramsArg;
+        public final Construction requestArg;
+        public final Construction sessionArg;
+
+        public Request(CantoSite site) {
+            Map<String, String> params = new HashMap<String, String>();
+            CantoSession session = new CantoSession();
+            paramsArg = externalArg(site, "params", null, params);
+            requestArg = externalArg(site, "request", site.getDefinition("request"), new CantoRequest(session, params));
+            sessionArg = externalArg(site, "session", site.getDefinition("session"), session);
+        }
+
+        public int respond(CantoSite site, String pageName, Context context, PrintStream out) throws Redirection {
+            return site.respond(pageName, paramsArg, requestArg, sessionArg, context, out);
+        }
+
+        private static Construction externalArg(CantoSite site, String name, Definition coreDef, Object obj) {
+            Definition parent = site.getMainOwner();
+            CantoNode owner = (CantoNode) parent;
+            ExternalDefinition def;
+            if (coreDef == null) {
+                def = new ExternalDefinition(name, owner, parent, null, Definition.Access.PUBLIC, Definition.Durability.IN_CONTEXT, obj, null);
+            } else {
+                def = new ExternalDefinition(name, owner, parent, coreDef.getType(), coreDef.getAccess(), coreDef.getDurability(), obj, null);
+            }
+            return new Instantiation(def);
+        }
+    }
+}
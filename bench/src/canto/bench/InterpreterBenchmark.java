@@ -0,0 +1,63 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * InterpreterBenchmark.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.bench;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import canto.lang.Context;
+import canto.lang.Redirection;
+import canto.runtime.CantoSite;
+
+/**
+ *  Measures the interpreter on the definitions in sites/bench.canto: nested
+ *  for loops, repeated hits on a kept value and calls to external methods.
+ *  The context is reused across invocations so that kept values stay cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({ "deep_loop", "cache_hits", "external_calls" })
+    public String page;
+
+    private CantoSite site;
+    private BenchSites.Request request;
+    private Context context;
+    private PrintStream out;
+
+    @Setup
+    public void setup() {
+        site = BenchSites.loadSite("bench");
+        request = new BenchSites.Request(site);
+        context = site.getNewContext();
+        out = BenchSites.nullOut();
+    }
+
+    @Benchmark
+    public int run() throws Redirection {
+        return request.respond(site, page, context, out);
+    }
+}
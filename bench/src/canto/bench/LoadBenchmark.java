@@ -0,0 +1,71 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * LoadBenchmark.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import canto.lang.Core;
+import canto.lang.SiteCache;
+import canto.runtime.SiteLoader;
+
+/**
+ *  Measures parsing, resolving and linking a site from source, including the
+ *  core.  Each invocation starts from an empty core.  Other files in the sites
+ *  directory can be measured with <code>-p site=name</code>.  With
+ *  <code>precompiled</code> set, sources are read from a site cache filled by
+ *  the first invocation instead of being parsed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({ "min_test", "tiny_test" })
+    public String site;
+
+    @Param({ "false", "true" })
+    public boolean precompiled;
+
+    private String siteName;
+    private String configSource;
+    private SiteCache siteCache;
+
+    @Setup
+    public void setup() throws IOException {
+        siteName = BenchSites.siteName(site);
+        configSource = BenchSites.configSource(site);
+        siteCache = (precompiled ? new SiteCache(Files.createTempDirectory("canto-bench")) : null);
+    }
+
+    @Benchmark
+    public Core load() {
+        Core core = new Core(true);
+        SiteLoader loader = new SiteLoader(core, siteName, configSource);
+        loader.setSiteCache(siteCache);
+        loader.load();
+        return core;
+    }
+}
@@ -0,0 +1,60 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * RespondBenchmark.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.bench;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import canto.lang.Redirection;
+import canto.runtime.CantoSite;
+
+/**
+ *  Measures responding to a page request on a loaded site, the path a server
+ *  request takes after the HTTP layer.  Each invocation gets a fresh context,
+ *  as a new session would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RespondBenchmark {
+
+    @Param({ "index", "standard", "bug_test" })
+    public String page;
+
+    private CantoSite site;
+    private BenchSites.Request request;
+    private PrintStream out;
+
+    @Setup
+    public void setup() {
+        site = BenchSites.loadSite("min_test");
+        request = new BenchSites.Request(site);
+        out = BenchSites.nullOut();
+    }
+
+    @Benchmark
+    public int respond() throws Redirection {
+        return request.respond(site, page, site.getNewContext(), out);
+    }
+}
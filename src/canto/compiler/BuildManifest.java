@@ -0,0 +1,203 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * BuildManifest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.compiler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import canto.Version;
+import canto.runtime.Log;
+
+/**
+ * A record of a static build, used to make the next build incremental.  For
+ * every source file it holds a hash of the file's contents, and for every
+ * generated page it holds the output file, a hash of the output and the source
+ * files containing the definitions the page touched while it was generated.
+ *
+ * A page needs to be generated again only if it is new, its output file is
+ * missing or one of the source files it depends on has changed.  A page whose
+ * new output hashes the same as before does not need to be rewritten.
+ */
+public class BuildManifest {
+
+    private static final Log LOG = Log.getLogger(BuildManifest.class);
+
+    public static final String DEFAULT_FILE_NAME = "cantoc.manifest";
+
+    /** The record of a generated page. **/
+    public static class PageEntry {
+        final String name;
+        final String outputFile;
+        final String outputHash;
+        final List<String> sources;
+
+        public PageEntry(String name, String outputFile, String outputHash, List<String> sources) {
+            this.name = name;
+            this.outputFile = outputFile;
+            this.outputHash = outputHash;
+            this.sources = sources;
+        }
+    }
+
+    private Map<String, String> sourceHashes = new TreeMap<String, String>();
+    private Map<String, PageEntry> pages = new TreeMap<String, PageEntry>();
+
+    public BuildManifest() {}
+
+    /** Reads a manifest written by a previous build.  Returns an empty manifest if
+     *  the file doesn't exist, can't be read or was written by a different version
+     *  of Canto.
+     */
+    public static BuildManifest load(Path path) {
+        BuildManifest manifest = new BuildManifest();
+        if (!Files.exists(path)) {
+            return manifest;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null || !line.equals("version\t" + Version.getVersion())) {
+                LOG.info("Build manifest " + path + " is from another version; ignoring");
+                return manifest;
+            }
+            List<String> deps = null;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields[0].equals("source") && fields.length == 3) {
+                    manifest.sourceHashes.put(fields[2], fields[1]);
+                } else if (fields[0].equals("page") && fields.length == 4) {
+                    deps = new ArrayList<String>();
+                    manifest.pages.put(fields[1], new PageEntry(fields[1], fields[3], fields[2], deps));
+                } else if (fields[0].equals("dep") && fields.length == 2 && deps != null) {
+                    deps.add(fields[1]);
+                } else {
+                    LOG.warn("Unrecognized line in build manifest " + path + ": " + line);
+                    return new BuildManifest();
+                }
+            }
+        } catch (IOException ioe) {
+            LOG.warn("Unable to read build manifest " + path + ": " + ioe);
+            return new BuildManifest();
+        }
+        return manifest;
+    }
+
+    public void save(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("version\t" + Version.getVersion() + "\n");
+            for (Map.Entry<String, String> entry: sourceHashes.entrySet()) {
+                writer.write("source\t" + entry.getValue() + "\t" + entry.getKey() + "\n");
+            }
+            for (PageEntry page: pages.values()) {
+                writer.write("page\t" + page.name + "\t" + page.outputHash + "\t" + page.outputFile + "\n");
+                for (String dep: page.sources) {
+                    writer.write("dep\t" + dep + "\n");
+                }
+            }
+        }
+    }
+
+    public Map<String, String> getSourceHashes() {
+        return Collections.unmodifiableMap(sourceHashes);
+    }
+
+    public void setSourceHash(String source, String hash) {
+        sourceHashes.put(source, hash);
+    }
+
+    public PageEntry getPage(String name) {
+        return pages.get(name);
+    }
+
+    public synchronized void putPage(PageEntry page) {
+        pages.put(page.name, page);
+    }
+
+    /** Returns true if the passed page, as recorded in this manifest, has to be
+     *  generated again given the current source hashes.
+     */
+    public boolean isStale(String pageName, Map<String, String> currentHashes) {
+        PageEntry page = pages.get(pageName);
+        if (page == null || !Files.exists(Path.of(page.outputFile))) {
+            return true;
+        }
+        for (String source: page.sources) {
+            String hash = currentHashes.get(source);
+            if (hash == null || !hash.equals(sourceHashes.get(source))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the identifier under which a loaded source is recorded. **/
+    public static String sourceId(Object source) {
+        if (source instanceof File) {
+            return ((File) source).getAbsolutePath();
+        } else {
+            return source.toString();
+        }
+    }
+
+    /** Returns a hash of the contents of a loaded source, or null if the source is
+     *  not a file or URL.
+     */
+    public static String hashSource(Object source) throws IOException {
+        if (source instanceof File) {
+            return hash(Files.readAllBytes(((File) source).toPath()));
+        } else if (source instanceof URL) {
+            try (InputStream in = ((URL) source).openStream()) {
+                return hash(in.readAllBytes());
+            }
+        } else {
+            return null;
+        }
+    }
+
+    public static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b: digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException("SHA-256 not available: " + nsae);
+        }
+    }
+
+    /** Returns a map of loaded sources to their current hashes. **/
+    public static Map<String, String> hashSources(Object[] sources) throws IOException {
+        Map<String, String> hashes = new HashMap<String, String>();
+        for (Object source: sources) {
+            String hash = hashSource(source);
+            if (hash == null) {
+                return null;
+            }
+            hashes.put(sourceId(source), hash);
+        }
+        return hashes;
+    }
+}
@@ -8,16 +8,34 @@
 
 package canto.compiler;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import canto.Version;
 import canto.lang.Definition;
 import canto.lang.Instantiation;
 import canto.lang.Redirection;
+import canto.lang.Site;
 import canto.runtime.SiteLoader;
 import canto.lang.Context;
 import canto.lang.Core;
@@ -45,6 +63,29 @@ public class CantoCompiler {
         }
     }
 
+    private static final int NUM_SLOWEST_PAGES = 5;
+
+    // incremental build state, set by startIncrementalBuild
+    private BuildManifest previousManifest = null;
+    private BuildManifest manifest = null;
+    private Map<String, String> currentHashes = null;
+    private Map<Site, String> siteSources = null;
+    private List<String> coreSources = null;
+    private boolean fullRebuild = false;
+    private Path manifestPath = Paths.get( BuildManifest.DEFAULT_FILE_NAME );
+
+    private static boolean isNumber( String str ) {
+        if ( str.length() == 0 ) {
+            return false;
+        }
+        for ( int i = 0; i < str.length(); i++ ) {
+            if ( !Character.isDigit( str.charAt( i ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static String durString( long time ) {
         if ( time > 500 ) {
             long sec = time / 1000;
@@ -63,8 +104,14 @@ public class CantoCompiler {
         System.out.println("\nThe following options are supported, in any combination:" );
         System.out.println("\n   -f filter   If sourcepath is a directory, load only the files that" );
         System.out.println(  "               match the filter (default: *.canto)" );
+        System.out.println("\n   -i          Incremental build: only generate pages whose sources have" );
+        System.out.println(  "               changed since the last build, as recorded in " + BuildManifest.DEFAULT_FILE_NAME );
+        System.out.println("\n   -j [n]      Generate pages in parallel using n workers (default: the" );
+        System.out.println(  "               number of available processors)" );
         System.out.println("\n   -l dirname  Write logging information to logfile in the dirname" );
         System.out.println(  "               (default: write to console)" );
+        System.out.println("\n   -m filename Keep the build manifest for -i in filename (default:" );
+        System.out.println(  "               " + BuildManifest.DEFAULT_FILE_NAME + " in the current directory)" );
         System.out.println("\n   -o dirname  Write output files to the dirname directory (default:" );
         System.out.println(  "               write to current directory)" );
         System.out.println("\n   -r          If sourcepath is a directory, recurse through subdirectories" );
@@ -138,7 +185,27 @@ public class CantoCompiler {
     }
 
 
-    void compile( String args[] ) {
+    /**
+     * createSiteLoader
+     * 
+     * Default convention is to load the sources found at the cantopath, or at
+     * the cantopath named in config.canto if there is one in the current
+     * directory.
+     * 
+     * @param core
+     * @param cantoPath
+     * @param filter
+     * 
+     * @return the loader for the sources to compile
+     */
+    protected SiteLoader createSiteLoader( Core core, String cantoPath, String filter ) {
+        return new SiteLoader( core, "", cantoPath, filter );
+    }
+
+    /** Compiles the sources and generates the pages named by the passed arguments,
+     *  and returns the outcome for each page.
+     */
+    List<PageResult> compile( String args[] ) {
 
         long startTime = System.currentTimeMillis();
 
@@ -147,6 +214,9 @@ public class CantoCompiler {
 
         String cantoPath = null;
         String pageName = null;
+        int numWorkers = 1;
+        boolean incremental = false;
+        List<PageResult> results = new ArrayList<PageResult>();
 
         System.out.println("\ncantoc compiler for Canto version " + Version.getVersion());
         System.out.println("Copyright (c) 2018-2024 by cantolang.org\n");
@@ -171,11 +241,28 @@ public class CantoCompiler {
                         DEFAULT_OUTPUT_DIRECTORY = args[ i ];
                     }
                     break;
+                case 'i':
+                    incremental = true;
+                    break;
+                case 'm':
+                    if ( i < args.length - 1 ) {
+                        i++;
+                        manifestPath = Paths.get( args[ i ] );
+                    }
+                    break;
+                case 'j':
+                    if ( i < args.length - 1 && isNumber( args[ i + 1 ] ) ) {
+                        i++;
+                        numWorkers = Integer.parseInt( args[ i ] );
+                    } else {
+                        numWorkers = Runtime.getRuntime().availableProcessors();
+                    }
+                    break;
                 case 'v':
                     break;
                 case '?':
                     showHelp();
-                    return;
+                    return results;
 
                 }
 
@@ -186,7 +273,7 @@ public class CantoCompiler {
 
         if ( cantoPath == null ) {
             System.out.println( "No path specified, exiting." );
-            return;
+            return results;
         }
         if ( logFileName != null ) {
             try {
@@ -199,9 +286,11 @@ public class CantoCompiler {
             }
         }
 
-        Core core = new Core();
+        // each build starts from a core of its own rather than sharing the
+        // tables of one loaded earlier in the same process
+        Core core = new Core( true );
 
-        SiteLoader loader = new SiteLoader(core, "", cantoPath, inFilter);
+        SiteLoader loader = createSiteLoader( core, cantoPath, inFilter );
         loader.load();
         long parseTime = System.currentTimeMillis() - startTime;
 
@@ -222,76 +311,54 @@ public class CantoCompiler {
 
         }
 
+        if ( incremental ) {
+            incremental = startIncrementalBuild( sources, loader.getParseResults() );
+        }
+
         Definition[] pages = core.getDefinitions( "page" );
 
         int numPages = pages.length;
         if ( numPages > 0 ) {
             // now spit out pages
-            int count = 0; // count of pages successfully written
+            long genStartTime = System.currentTimeMillis();
             try {
-
-                Context context = new Context( core );
-                for ( int i = 0; i < numPages; i++ ) {
-
-                    if ( pageName != null && !pageName.equals( pages[ i ].getName() ) ) {
-                        continue;
-                    }
-
-                    Definition page = pages[ i ];
-                    Instantiation instance = new Instantiation( page );
-                    if ( instance.isAbstract( context )) {
-                        LOG.warn( page.getFullName() + " does not generate output; skipping" );
-                        continue;
-                    }
-                    String pageText = null;
-                    try {
-                        pageText = instance.getText( context );
-                    } catch ( Redirection r ) {
-                        LOG.warn( "Page " + pageName + " redirects to " + r.getLocation() + "; skipping" );
-                        continue;
-                    }
-                    if ( pageText != null && pageText.length() > 0 ) {
-                        File outDir = createOutputDirectory( page, instance );
-                        if ( outDir != null ) {
-                            String fileName = createFileName( page, instance );
-                            if ( fileName != null ) {
-                                LOG.debug( "Page " + count + " is " + fileName );
-                                File pageFile = new File( outDir, fileName );
-                                if ( !pageFile.exists() ) {
-                                    File parent = pageFile.getParentFile();
-                                    if ( !parent.exists() ) {
-                                        if ( !parent.mkdirs() ) {
-                                            LOG.error( "Unable to create parent directory " + parent.getAbsolutePath() );
-                                            continue;
-                                        }
-                                    }
-                                    pageFile.createNewFile();
-                                }
-
-                                if ( !pageFile.canWrite() ) {
-                                    LOG.error( "Unable to write to file " + pageFile.getAbsolutePath() );
-                                    continue;
-                                }
-
-                                LOG.info( "Writing " + pageFile.getAbsolutePath() + "..." );
-                                FileWriter writer = new FileWriter( pageFile );
-                                writer.write( pageText );
-                                writer.close();
-                                count++;
-                            }
+                if ( numWorkers > 1 ) {
+                    LOG.info( "Generating " + numPages + " pages with " + numWorkers + " workers" );
+                    generatePagesInParallel( core, pages, pageName, numWorkers, results );
+                } else {
+                    Context context = new Context( core );
+                    for ( int i = 0; i < numPages; i++ ) {
+                        if ( pageName != null && !pageName.equals( pages[ i ].getName() ) ) {
+                            continue;
+                        }
+                        PageResult result = generatePage( pages[ i ], context );
+                        if ( result != null ) {
+                            results.add( result );
                         }
-
-                    } else {
-                        LOG.warn( "Page " + page.getFullName() + " has no content, skipping." );
                     }
                 }
                 LOG.info( "Done." );
 
+                if ( incremental ) {
+                    finishIncrementalBuild( results );
+                }
+
+                int count = 0; // count of pages successfully generated
+                for ( PageResult result: results ) {
+                    if ( result.generated ) {
+                        count++;
+                    }
+                }
                 long totalTime = System.currentTimeMillis() - startTime;
+                long genTime = System.currentTimeMillis() - genStartTime;
                 long perPageTime = ( count > 0 ? ( totalTime / count ) : 0L );
                 LOG.info( count + " page" + ( count == 1 ? "" : "s" ) + " generated in " + durString( totalTime ) + " ("
                         + durString( perPageTime ) + " per page)" );
-                LOG.info( "(parse time " + durString( parseTime ) + ")" );
+                LOG.info( "(parse time " + durString( parseTime ) + ", generation time " + durString( genTime ) + ")" );
+                if ( genTime > 0 ) {
+                    LOG.info( String.format( "%.1f pages/sec.", count * 1000.0 / genTime ) );
+                }
+                logSlowestPages( results );
 
             } catch ( Exception e ) {
                 LOG.error( "Exception generating pages: " + e );
@@ -300,6 +367,258 @@ public class CantoCompiler {
         } else {
             LOG.error( "No pages in input." );
         }
+        return results;
+    }
+
+    /** Compares the sources just loaded with the manifest from the previous build.
+     *  Returns false if the sources can't be tracked, in which case every page is
+     *  generated.
+     */
+    private boolean startIncrementalBuild( Object[] sources, Site[] parseResults ) {
+        if ( sources == null || parseResults == null ) {
+            LOG.warn( "No sources recorded by the loader; incremental build disabled" );
+            return false;
+        }
+        try {
+            currentHashes = BuildManifest.hashSources( sources );
+        } catch ( IOException ioe ) {
+            LOG.warn( "Unable to read sources for incremental build: " + ioe );
+            return false;
+        }
+        if ( currentHashes == null ) {
+            LOG.warn( "Not all sources are files; incremental build disabled" );
+            return false;
+        }
+
+        previousManifest = BuildManifest.load( manifestPath );
+        manifest = new BuildManifest();
+        for ( Map.Entry<String, String> entry: currentHashes.entrySet() ) {
+            manifest.setSourceHash( entry.getKey(), entry.getValue() );
+        }
+
+        // added or removed files can change what any name refers to
+        fullRebuild = !previousManifest.getSourceHashes().keySet().equals( currentHashes.keySet() );
+        if ( fullRebuild ) {
+            LOG.info( "Source files added or removed since last build; generating all pages" );
+        }
+
+        siteSources = new IdentityHashMap<Site, String>();
+        coreSources = new ArrayList<String>();
+        for ( int i = 0; i < sources.length; i++ ) {
+            if ( parseResults[ i ] == null ) {
+                continue;
+            }
+            String id = BuildManifest.sourceId( sources[ i ] );
+            siteSources.put( parseResults[ i ], id );
+            if ( parseResults[ i ] instanceof Core ) {
+                coreSources.add( id );
+            }
+        }
+        return true;
+    }
+
+    private void finishIncrementalBuild( List<PageResult> results ) {
+        int upToDate = 0;
+        int unchanged = 0;
+        for ( PageResult result: results ) {
+            if ( !result.generated ) {
+                upToDate++;
+            } else if ( !result.written ) {
+                unchanged++;
+            }
+        }
+        LOG.info( upToDate + " page" + ( upToDate == 1 ? "" : "s" ) + " up to date, " + unchanged + " regenerated with unchanged output" );
+        try {
+            manifest.save( manifestPath );
+        } catch ( IOException ioe ) {
+            LOG.error( "Unable to write build manifest: " + ioe );
+        }
+    }
+
+    /** Returns the source files containing the passed definitions. **/
+    private List<String> getSourcesFor( Set<Definition> defs ) {
+        Set<String> deps = new TreeSet<String>();
+        for ( Definition def: defs ) {
+            if ( def instanceof Site ) {
+                // a site's scope holds no content of its own; its definitions are recorded separately
+                continue;
+            }
+            Definition owner = def;
+            while ( owner != null && !( owner instanceof Site ) ) {
+                owner = owner.getOwner();
+            }
+            if ( owner == null ) {
+                // objects created at runtime, such as external values, have no source
+                continue;
+            } else if ( owner instanceof Core ) {
+                deps.addAll( coreSources );
+            } else {
+                String source = siteSources.get( owner );
+                if ( source != null ) {
+                    deps.add( source );
+                } else {
+                    // can't tell where it came from, so depend on everything
+                    deps.addAll( currentHashes.keySet() );
+                }
+            }
+        }
+        return new ArrayList<String>( deps );
+    }
+
+    /** Generates pages concurrently.  Each worker renders with its own Context
+     *  rooted at the core, so per-request state is never shared between pages
+     *  generated at the same time.
+     */
+    private void generatePagesInParallel( Core core, Definition[] pages, String pageName, int numWorkers, List<PageResult> results ) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool( numWorkers );
+        ThreadLocal<Context> workerContext = ThreadLocal.withInitial( () -> new Context( core ) );
+        try {
+            List<Future<PageResult>> futures = new ArrayList<Future<PageResult>>( pages.length );
+            for ( Definition page: pages ) {
+                if ( pageName != null && !pageName.equals( page.getName() ) ) {
+                    continue;
+                }
+                futures.add( executor.submit( () -> generatePage( page, workerContext.get() ) ) );
+            }
+            for ( Future<PageResult> future: futures ) {
+                try {
+                    PageResult result = future.get();
+                    if ( result != null ) {
+                        results.add( result );
+                    }
+                } catch ( ExecutionException ee ) {
+                    LOG.error( "Exception generating page: " + ee.getCause() );
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /** Renders a page and writes it to its output file.  Returns the result, or
+     *  null if the page generated no output or could not be written.
+     */
+    PageResult generatePage( Definition page, Context context ) throws IOException {
+        long pageStartTime = System.currentTimeMillis();
+        String name = page.getFullName();
+        BuildManifest.PageEntry previousEntry = null;
+        if ( manifest != null ) {
+            previousEntry = previousManifest.getPage( name );
+            if ( !fullRebuild && !previousManifest.isStale( name, currentHashes ) ) {
+                manifest.putPage( previousEntry );
+                return new PageResult( name, Paths.get( previousEntry.outputFile ), 0L, false, false );
+            }
+        }
+        Set<Definition> dependencies = ( manifest != null ? new HashSet<Definition>() : null );
+        if ( dependencies != null ) {
+            dependencies.add( page );
+            context.setDependencies( dependencies );
+        }
+        try {
+            return generatePage( page, context, previousEntry, dependencies, pageStartTime );
+        } finally {
+            context.setDependencies( null );
+        }
+    }
+
+    private PageResult generatePage( Definition page, Context context, BuildManifest.PageEntry previousEntry, Set<Definition> dependencies, long pageStartTime ) throws IOException {
+        Instantiation instance = new Instantiation( page );
+        if ( instance.isAbstract( context )) {
+            LOG.warn( page.getFullName() + " does not generate output; skipping" );
+            return null;
+        }
+        String pageText = null;
+        try {
+            pageText = instance.getText( context );
+        } catch ( Redirection r ) {
+            LOG.warn( "Page " + page.getFullName() + " redirects to " + r.getLocation() + "; skipping" );
+            return null;
+        }
+        if ( pageText == null || pageText.length() == 0 ) {
+            LOG.warn( "Page " + page.getFullName() + " has no content, skipping." );
+            return null;
+        }
+        File outDir = createOutputDirectory( page, instance );
+        if ( outDir == null ) {
+            return null;
+        }
+        String fileName = createFileName( page, instance );
+        if ( fileName == null ) {
+            return null;
+        }
+        Path pagePath = new File( outDir, fileName ).toPath();
+        Path parent = pagePath.getParent();
+        if ( parent != null && !Files.isDirectory( parent ) ) {
+            try {
+                Files.createDirectories( parent );
+            } catch ( IOException ioe ) {
+                LOG.error( "Unable to create parent directory " + parent.toAbsolutePath() );
+                return null;
+            }
+        }
+        if ( Files.exists( pagePath ) && !Files.isWritable( pagePath ) ) {
+            LOG.error( "Unable to write to file " + pagePath.toAbsolutePath() );
+            return null;
+        }
+
+        String outputFile = pagePath.toAbsolutePath().toString();
+        boolean write = true;
+        if ( dependencies != null ) {
+            String outputHash = BuildManifest.hash( pageText.getBytes( Charset.defaultCharset() ) );
+            if ( previousEntry != null && previousEntry.outputHash.equals( outputHash )
+                    && previousEntry.outputFile.equals( outputFile ) && Files.exists( pagePath ) ) {
+                LOG.info( "Output of " + page.getFullName() + " unchanged" );
+                write = false;
+            }
+            manifest.putPage( new BuildManifest.PageEntry( page.getFullName(), outputFile, outputHash, getSourcesFor( dependencies ) ) );
+        }
+
+        if ( write ) {
+            LOG.info( "Writing " + outputFile + "..." );
+            try ( BufferedWriter writer = Files.newBufferedWriter( pagePath, Charset.defaultCharset() ) ) {
+                writer.write( pageText );
+            }
+        }
+        return new PageResult( page.getFullName(), pagePath, System.currentTimeMillis() - pageStartTime, true, write );
+    }
+
+    private static void logSlowestPages( List<PageResult> results ) {
+        if ( results.size() < 2 ) {
+            return;
+        }
+        List<PageResult> sorted = new ArrayList<PageResult>( results.size() );
+        for ( PageResult result: results ) {
+            if ( result.generated ) {
+                sorted.add( result );
+            }
+        }
+        if ( sorted.size() < 2 ) {
+            return;
+        }
+        sorted.sort( Comparator.comparingLong( ( PageResult r ) -> r.time ).reversed() );
+        int n = Math.min( NUM_SLOWEST_PAGES, sorted.size() );
+        LOG.info( "Slowest pages:" );
+        for ( int i = 0; i < n; i++ ) {
+            PageResult result = sorted.get( i );
+            LOG.info( "    " + result.name + " (" + durString( result.time ) + ")" );
+        }
+    }
+
+    /** The outcome of generating a single page. **/
+    static class PageResult {
+        final String name;
+        final Path file;
+        final long time;
+        final boolean generated;
+        final boolean written;
+
+        PageResult( String name, Path file, long time, boolean generated, boolean written ) {
+            this.name = name;
+            this.file = file;
+            this.time = time;
+            this.generated = generated;
+            this.written = written;
+        }
     }
 
 }
@@ -2,42 +2,89 @@
  * 
  * CantoBuilder.java
  *
- * Copyright (c) 2024-2025 by cantolang.org
+ * Copyright (c) 2024-2026 by cantolang.org
  * All rights reserved.
  */
 
 package canto.lang;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 import canto.parser.CantoLexer;
 import canto.parser.CantoParser;
 import canto.runtime.Log;
 
 /**
- * 
+ * Parses Canto source and builds sites, names and collections from it.
+ *
+ * Source is parsed in two stages.  The first uses ANTLR's faster SLL prediction
+ * and gives up at the first syntax error; only if it fails is the source parsed
+ * again with full LL prediction and the default error reporting and recovery.
+ * Either way the prediction DFA is kept in static fields of the generated
+ * parser, so it is shared by all builders and stays warm for the life of the
+ * process.
  */
 public class CantoBuilder {
 
     private static final Log LOG = Log.getLogger(CantoBuilder.class);
     
     private CantoParser parser;
+    private long parseTime = 0L;
+    private boolean fullLL = false;
     private Exception exception = null;
+    private SiteCache siteCache = null;
+    private String cacheKey = null;
+    private boolean fromCache = false;
 
     public CantoBuilder(Object source) throws IOException {
+        this(source, null);
+    }
+
+    /** Constructs a builder which looks for a precompiled site in the passed cache
+     *  before parsing the source, and caches the site it parses.  Only file and URL
+     *  sources are cached.
+     */
+    public CantoBuilder(Object source, SiteCache siteCache) throws IOException {
+        if (siteCache != null && (source instanceof File || source instanceof URL)) {
+            byte[] bytes = readSource(source);
+            this.siteCache = siteCache;
+            this.cacheKey = siteCache.getKey(bytes);
+            source = new ByteArrayInputStream(bytes);
+        }
         this.parser = getCantoParser(source);
     }
+
+    private static byte[] readSource(Object source) throws IOException {
+        if (source instanceof File) {
+            return Files.readAllBytes(((File) source).toPath());
+        } else {
+            try (InputStream in = ((URL) source).openStream()) {
+                return in.readAllBytes();
+            }
+        }
+    }
     
     private CantoParser getCantoParser(Object source) throws IOException {
         CharStream cs = null;
@@ -59,14 +106,104 @@ public class CantoBuilder {
         return new CantoParser(tokens);
     }
 
+    /** Parses the source with the passed rule, first with SLL prediction and
+     *  bailing out at the first syntax error, then, if that fails, again from
+     *  the start with full LL prediction and the default error strategy, so that
+     *  errors are reported and recovered from as usual.
+     */
+    private <T extends ParserRuleContext> T parse(Function<CantoParser, T> rule) {
+        long startTime = System.nanoTime();
+        List<ANTLRErrorListener> listeners = new ArrayList<ANTLRErrorListener>(parser.getErrorListeners());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        try {
+            return rule.apply(parser);
+
+        } catch (ParseCancellationException pce) {
+            fullLL = true;
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            for (ANTLRErrorListener listener: listeners) {
+                parser.addErrorListener(listener);
+            }
+            return rule.apply(parser);
+
+        } finally {
+            parseTime += System.nanoTime() - startTime;
+        }
+    }
+
+    /** Returns the time spent parsing the source, in milliseconds. **/
+    public long getParseTime() {
+        return parseTime / 1000000L;
+    }
+
+    /** Returns true if the source failed to parse with SLL prediction and had to
+     *  be parsed again with full LL prediction.
+     */
+    public boolean isFullLL() {
+        return fullLL;
+    }
+
     public Exception getException() {
         return exception;
     }
 
+    /** Returns true if the site returned by <code>parseSite</code> came from the
+     *  site cache rather than the parser.
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /** Parses the source and builds a site, then adds the site to the core.  Returns
+     *  null if the site could not be built or added.
+     */
     public Site buildSite(Core core) {
+        Site site = parseSite();
+        if (site != null) {
+            site = addToCore(site, core);
+        }
+        return site;
+    }
+
+    /** Parses the source and builds a site without touching the core.  This step
+     *  is independent of any other builder, so builders for different sources may
+     *  parse in parallel.  Returns null if the source could not be parsed.
+     */
+    public Site parseSite() {
         Site site = null;
+        if (siteCache != null) {
+            site = siteCache.get(cacheKey);
+            if (site != null) {
+                fromCache = true;
+                return site;
+            }
+        }
+        try {
+            site = (Site) parse(CantoParser::compilationUnit).accept(new CantoVisitor());
+        } catch (Exception e) {
+            exception = e;
+            LOG.error("Error building site", e);
+            site = null;
+        }
+        // a site recovered from syntax errors is not cached, so the errors are
+        // reported every time it is loaded
+        if (site != null && siteCache != null && parser.getNumberOfSyntaxErrors() == 0) {
+            siteCache.put(cacheKey, site);
+        }
+        return site;
+    }
+
+    /** Initializes and validates a site built by <code>parseSite</code> and adds it
+     *  to the core, or merges it into the core if it is a core site.  This step
+     *  modifies the core, so sites must be added one at a time.  Returns null if
+     *  the site could not be added.
+     */
+    public Site addToCore(Site site, Core core) {
         try {
-            site = (Site) parser.compilationUnit().accept(new CantoVisitor());
             site.initializeTables(core);
             
             if (!site.validate(site.getParent(), site.getOwner())) {
@@ -103,7 +240,7 @@ public class CantoBuilder {
     public ComplexName buildComplexName() {
         ComplexName name = null;
         try {
-            name = (ComplexName) parser.complexName().accept(new CantoVisitor());
+            name = (ComplexName) parse(CantoParser::complexName).accept(new CantoVisitor());
         } catch (Exception e) {
             exception = e;
             LOG.error("Error building site", e);
@@ -114,7 +251,7 @@ public class CantoBuilder {
     public CollectionDefinition buildCollectionDefinition() {
         CollectionDefinition collectionDef = null;
         try {
-            collectionDef = (CollectionDefinition) parser.collectionDefinition().accept(new CantoVisitor());
+            collectionDef = (CollectionDefinition) parse(CantoParser::collectionDefinition).accept(new CantoVisitor());
         } catch (Exception e) {
             exception = e;
             LOG.error("Error parsing collection", e);
@@ -8,6 +8,7 @@
 
 package canto.lang;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -22,7 +23,7 @@ import canto.util.*;
  * Base class for canto nodes. Every statement in a canto program is a node.
  *
  */
-abstract public class CantoNode implements Cloneable {
+abstract public class CantoNode implements Cloneable, Serializable {
     private static final Log LOG = Log.getLogger(CantoNode.class);
 
     /** Standard indent when displaying source */
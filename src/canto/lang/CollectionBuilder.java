@@ -8,12 +8,14 @@
 
 package canto.lang;
 
+import java.io.Serializable;
+
 
 /**
  * CollectionBuilder is the common base for classes that construct arrays and tables
  */
 
-abstract public class CollectionBuilder {
+abstract public class CollectionBuilder implements Serializable {
 
     public CollectionBuilder() {
         super();
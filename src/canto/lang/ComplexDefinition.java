@@ -31,7 +31,7 @@ public class ComplexDefinition extends NamedDefinition {
         return null;
     }
 
-    private DefinitionTable definitions;
+    transient private DefinitionTable definitions;
 
     public ComplexDefinition(NameNode name) {
         super(name);
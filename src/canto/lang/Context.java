@@ -11,17 +11,25 @@ package canto.lang;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import canto.runtime.CantoObjectWrapper;
 import canto.runtime.CantoSession;
 import canto.util.Holder;
 import canto.runtime.Log;
+import canto.runtime.RequestProfile;
 import canto.util.StateFactory;
 import canto.util.MappedArray;
 
 /**
- * 
+ * A Context is the stack of scopes through which a construction is evaluated.
+ *
+ * A Context is confined to the thread using it and does no locking of its own;
+ * each request gets its own copy (see <code>Context(Context)</code>).  Copies
+ * share their cache and keep maps with the context they were copied from, so
+ * those maps are concurrent.
  */
 public class Context {
     private static final Log LOG = Log.getLogger(Context.class);
@@ -42,17 +50,18 @@ public class Context {
 
     private final static int MAX_POINTER_CHAIN_LENGTH = 10;
     
-    private static int instanceCount = 0;
-    public static int getNumContextsCreated() {
-        return instanceCount;
+    // counted on every thread, so adders rather than plain ints
+    private static final LongAdder instanceCount = new LongAdder();
+    public static long getNumContextsCreated() {
+        return instanceCount.sum();
     }
     public static void resetNumContextsCreated() {
-        instanceCount = 0;
+        instanceCount.reset();
     }
 
-    private static int numClonedContexts = 0;
-    public static int getNumClonedContexts() {
-        return numClonedContexts;
+    private static final LongAdder numClonedContexts = new LongAdder();
+    public static long getNumClonedContexts() {
+        return numClonedContexts.sum();
     }
 
     // used for resolving references to Definition methods
@@ -85,23 +94,28 @@ public class Context {
 
     private int size = 0;
 
-    private Scope abandonedScopes = null;
+    private ArrayDeque<Scope> unpushedScopes = new ArrayDeque<Scope>();
 
-    private Stack<Scope> unpushedScopes = new Stack<Scope>();
+    /** Sink for streaming output, claimed by the first construction of outputSinkDef. */
+    private OutputSink outputSink = null;
+    private Definition outputSinkDef = null;
+
+    /** If not null, every definition instantiated or retrieved from cache is added here. */
+    private Set<Definition> dependencies = null;
 
     public Context(Site site) {
-        instanceCount++;
+        instanceCount.increment();
         rootContext = this;
         stateFactory = new StateFactory();
         stateCount = stateFactory.lastState();
-        cache = newHashMap(Object.class);
-        keepMap = newHashMap(Pointer.class);
-        siteKeeps = newHashMapOfMaps(Object.class);
+        cache = newConcurrentMap(Object.class);
+        keepMap = newConcurrentMap(Pointer.class);
+        siteKeeps = newConcurrentMapOfMaps(Object.class);
         globalKeep = site.getGlobalKeep();
         if (globalKeep == null) {
             throw new IllegalStateException("Can't create context; site does not have a global cache");
         }
-        unpushedScopes = new Stack<Scope>();
+        unpushedScopes = new ArrayDeque<Scope>();
         if (site != null) {
             try {
                 push(site, null, null, true);
@@ -117,7 +131,7 @@ public class Context {
     }
   
     public Context(Context context, boolean clearKeep) {
-        instanceCount++;
+        instanceCount.increment();
         rootContext = context.rootContext;
         // this is a copy, so don't pop past the current top
 
@@ -132,6 +146,8 @@ public class Context {
         // copy the session
         session = context.session;
 
+        dependencies = context.dependencies;
+
         keepMap = context.keepMap;
         globalKeep = context.globalKeep;
         if (!clearKeep) {
@@ -156,8 +172,8 @@ public class Context {
             }
 
         } else {
-            cache = newHashMap(Object.class);
-            siteKeeps = newHashMapOfMaps(Object.class);
+            cache = newConcurrentMap(Object.class);
+            siteKeeps = newConcurrentMapOfMaps(Object.class);
             rootScope = newScope(context.rootScope, false);
             setTop(rootScope);
         }
@@ -165,13 +181,13 @@ public class Context {
 
     public Object clone() {
         Context context = new Context(this, false);
-        numClonedContexts++;
+        numClonedContexts.increment();
         return context;
     }
     
     public Context clone(boolean clearKeep) {
         Context context = new Context(this, clearKeep);
-        numClonedContexts++;
+        numClonedContexts.increment();
         return context;
     }
 
@@ -232,11 +248,7 @@ public class Context {
             if (scopeSite != null && !(scopeSite instanceof Core) && topScope != null) {
                 Site currentSite = topScope.def.getSite();
                 if (!scopeSite.equals(currentSite)) {
-                    Map<String, Object> siteKeep = siteKeeps.get(scopeSite.getName());
-                    if (siteKeep == null) {
-                        siteKeep = newHashMap(Object.class);
-                        siteKeeps.put(scopeSite.getName(), siteKeep);
-                    }
+                    siteKeeps.computeIfAbsent(scopeSite.getName(), k -> newConcurrentMap(Object.class));
                     //scope.setSiteKeep(siteKeep);
                 }
             }
@@ -323,10 +335,11 @@ public class Context {
         return shares;
     }
     
-    private synchronized void _push(Scope scope) {
+    private void _push(Scope scope) {
         if (scope.def == null) {
             throw new NullPointerException("attempt to push null definition on context");
         }
+        RequestProfile.countScope();
 
         if (size >= maxSize) {
             throw new RuntimeException("blown context");
@@ -354,7 +367,7 @@ public class Context {
         setTop(scope);
     }
 
-    public synchronized void pop() {
+    public void pop() {
         Scope scope = _pop();
 
         if (topScope != null) {
@@ -393,33 +406,14 @@ public class Context {
             throw new NoSuchElementException("Cannot push a parameter onto an empty context");
         }
 
-        Scope scope = topScope;
-        if (scope.params == null || scope.params.size() == 0) {
-            scope.params = new ParameterList(newArrayList(1, DefParameter.class));
-        } else if (scope.params.size() == scope.origParamsSize) {
-            scope.params = new ParameterList(newArrayList(scope.params));
-        }
-        if (scope.args == null || scope.args.size() == 0) {
-            scope.args = new ConstructionList(newArrayList(1, Construction.class));
-        } else if (scope.args.size() == scope.origArgsSize) {
-            scope.args = new ConstructionList(newArrayList(scope.args));
-        }
-
-        scope.params.add(param);
-        scope.args.add(arg);
+        topScope.addParam(param, arg);
     }
 
     public void popParam() {
-        Scope scope = topScope;
-        int n = scope.params.size();
-        if (n >  0) {
-            scope.params.remove(n - 1);
-            // this scope may have started with fewer args than params
-            scope.args.remove(scope.args.size() - 1);
-        }
+        topScope.removeParam();
     }
 
-    public synchronized Scope unpush() {
+    public Scope unpush() {
         if (size <= 1) {
             throw new IndexOutOfBoundsException("Attempt to unpush root scope in context");
         }
@@ -428,7 +422,7 @@ public class Context {
         return scope;
     }
 
-    public synchronized void repush() {
+    public void repush() {
         Scope scope = unpushedScopes.pop();
         // by pre-setting the previous to topScope, we avoid the logic in _push that clones
         // the scope being pushed
@@ -437,7 +431,7 @@ public class Context {
     }
 
 
-    public synchronized void unpop(Definition def, ParameterList params, ConstructionList args) {
+    public void unpop(Definition def, ParameterList params, ConstructionList args) {
         DefinitionInstance defInstance = getContextDefInstance(def, args);
         Definition contextDef = defInstance.def;
         if (defInstance.args != null && defInstance.args != args) {
@@ -447,11 +441,11 @@ public class Context {
         _push(newScope(contextDef, contextDef, params, args));
     }
 
-    public synchronized void unpop(Scope scope) {
+    public void unpop(Scope scope) {
         _push(scope);
     }
 
-    public synchronized Scope repop() {
+    public Scope repop() {
         Scope scope = _pop();
         return scope;
     }
@@ -482,13 +476,56 @@ public class Context {
         return definingDef;
     }
 
+    /** Arranges for the next construction of the passed definition to stream its
+     *  output to the passed sink instead of concatenating it.  Passing a null sink
+     *  cancels any pending sink.
+     */
+    public void setOutputSink(Definition def, OutputSink sink) {
+        outputSinkDef = (sink == null ? null : def);
+        outputSink = sink;
+    }
+
+    /** Returns the pending output sink if it belongs to the passed definition, and
+     *  clears it so that nested constructions don't write to it.  Definitions whose
+     *  data is retained across constructions never stream.
+     */
+    private OutputSink claimOutputSink(Definition def) {
+        if (outputSink == null || !def.equals(outputSinkDef)) {
+            return null;
+        }
+        Definition.Durability dur = def.getDurability();
+        if (dur != Definition.Durability.DYNAMIC && dur != Definition.Durability.IN_CONTEXT) {
+            return null;
+        }
+        OutputSink sink = outputSink;
+        outputSink = null;
+        outputSinkDef = null;
+        return sink;
+    }
+
+    /** Starts recording the definitions this context instantiates or retrieves
+     *  cached values for into the passed set, which callers use to determine what
+     *  generated output depends on.  Passing null stops recording.
+     */
+    public void setDependencies(Set<Definition> dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    public Set<Definition> getDependencies() {
+        return dependencies;
+    }
+
     public void setTop(Scope scope) {
-        if (topScope != null) {
+        if (topScope != null && topScope.owner == this) {
             topScope.decRefCount();
         }
         topScope = scope;
         if (topScope != null) {
-            topScope.incRefCount();
+            if (topScope.owner == this) {
+                topScope.incRefCount();
+            } else {
+                topScope.share();
+            }
         }
         int calcSize = 0;
         Scope e = topScope;
@@ -626,24 +663,22 @@ public class Context {
 
         if (inContainer) {
             Object paramObj = null;
-            synchronized (this) {
-                int i = 0;
-                try {
-                    //unpush();
-                    //i++;
-                    while (topScope != null) {
-                        paramObj = getParameter(name, false, returnClass);
-                        if (paramObj != null || topScope.getPrevious() == null) {
-                            break;
-                        }
-                        unpush();
-                        i++;
-                    }
-                } finally {
-                    while (i > 0) {
-                        repush();
-                        i--;
+            int i = 0;
+            try {
+                //unpush();
+                //i++;
+                while (topScope != null) {
+                    paramObj = getParameter(name, false, returnClass);
+                    if (paramObj != null || topScope.getPrevious() == null) {
+                        break;
                     }
+                    unpush();
+                    i++;
+                }
+            } finally {
+                while (i > 0) {
+                    repush();
+                    i--;
                 }
             }
             return paramObj;
@@ -916,22 +951,20 @@ public class Context {
         }
         Type paramType = null;
         if (inContainer) {
-            synchronized (this) {
-                int i = 0;
-                try {
-                    while (topScope != null) {
-                        paramType = getParameterType(node, false);
-                        if (paramType != null || topScope.getPrevious() == null) {
-                            break;
-                        }
-                        unpush();
-                        i++;
-                    }
-                } finally {
-                    while (i > 0) {
-                        repush();
-                        i--;
+            int i = 0;
+            try {
+                while (topScope != null) {
+                    paramType = getParameterType(node, false);
+                    if (paramType != null || topScope.getPrevious() == null) {
+                        break;
                     }
+                    unpush();
+                    i++;
+                }
+            } finally {
+                while (i > 0) {
+                    repush();
+                    i--;
                 }
             }
         } else if (node.numParts() > 1) {
@@ -2172,11 +2205,13 @@ public class Context {
                 // now reverse the order of the just pushed entries
                 Scope nextTop = top.previous;
                 top.previous = nextLink;
+                top.resetShape();
                 nextLink = top;
                 top = nextTop;
             }
     
             top.previous = nextLink;
+            top.resetShape();
             topScope = top;
             push(newScope(oldTop, true));
             numPushes++;
@@ -2281,7 +2316,7 @@ public class Context {
         return numPushes;
     }
 
-    synchronized private Object _instantiateArgChild(NameNode childName, Type paramType, Definition argDef, ConstructionList argArgs, IndexList argIndexes) {
+    private Object _instantiateArgChild(NameNode childName, Type paramType, Definition argDef, ConstructionList argArgs, IndexList argIndexes) {
         Object data = null;
         int numPushes = 0;
         int numUnpushes = 0;
@@ -2358,7 +2393,7 @@ public class Context {
     /** Looks through the context for the immediate subdefinition of the superdefinition at the
      *  top of the stack.
      */
-    private synchronized NamedDefinition getSubdefinition() {
+    private NamedDefinition getSubdefinition() {
 
         // if there is no superdef in the top context scope, then there is
         // no subdefinition
@@ -2396,7 +2431,12 @@ public class Context {
 
     
     private Object constructSuper(Definition def, ConstructionList args, Definition instantiatedDef, LinkedList<Definition> nextList) throws Redirection {
+        return constructSuper(def, args, instantiatedDef, nextList, null);
+    }
+
+    private Object constructSuper(Definition def, ConstructionList args, Definition instantiatedDef, LinkedList<Definition> nextList, OutputSink sink) throws Redirection {
         Object data = null;
+        TextAccumulator text = null;
         boolean pushed = false;
         boolean hasMore = (nextList != null && nextList.size() > 0);
 
@@ -2415,7 +2455,7 @@ public class Context {
                 Type st = def.getSuper(this);
                 ConstructionList superArgs = (st != null ? st.getArguments(this) : null);
                 NamedDefinition superFlavor = (NamedDefinition) superDef.getDefinitionForArgs(superArgs, this);
-                data = constructSuper(superFlavor, superArgs, instantiatedDef);
+                data = constructSuper(superFlavor, superArgs, instantiatedDef, null, sink);
 
             } else {
         
@@ -2514,15 +2554,34 @@ public class Context {
                             if (chunkData != null) {
                                 if (data == null) {
                                     data = chunkData;
+                                } else if (sink != null) {
+                                    if (data != sink) {
+                                        sink.write(data);
+                                        data = sink;
+                                    }
+                                    sink.write(chunkData);
                                 } else {
-                                    data = PrimitiveValue.getStringFor(data) + PrimitiveValue.getStringFor(chunkData);
+                                    if (text == null) {
+                                        text = TextAccumulator.acquire();
+                                        text.append(PrimitiveValue.getStringFor(data));
+                                        data = text;
+                                    }
+                                    text.append(PrimitiveValue.getStringFor(chunkData));
                                 }
                             }
                         }
                     }
+                    if (text != null) {
+                        data = text.toString();
+                    } else if (data == sink) {
+                        data = null;
+                    }
                 }
             }
         } finally {
+            if (text != null) {
+                text.release();
+            }
             if (pushed) {
                 pop();
             }
@@ -2733,6 +2792,31 @@ public class Context {
     public Object construct(Definition definition, ConstructionList args) {
         Object data = null;
 
+        // if the output depends only on the arguments and global data, it may
+        // already be cached
+        Definition fragmentDef = definition;
+        FragmentCache.Profile fragmentProfile = null;
+        String fragmentKey = null;
+        if (FragmentCache.isEnabled()) {
+            FragmentCache.Profile profile = FragmentCache.getProfile(definition);
+            if (profile.cacheable) {
+                fragmentKey = FragmentCache.getArgumentKey(args);
+                if (fragmentKey != null) {
+                    fragmentProfile = profile;
+                    String text = FragmentCache.get(definition, fragmentKey);
+                    if (text != null) {
+                        if (dependencies != null) {
+                            dependencies.addAll(profile.dependencies);
+                        }
+                        return text;
+                    }
+                }
+            }
+        }
+
+        // cacheable output has to be returned rather than streamed
+        OutputSink sink = (fragmentProfile == null ? claimOutputSink(definition) : null);
+
         boolean pushedSuperDef = false;
         boolean pushedParamDef = false;
         boolean pushedContext = false;
@@ -2812,7 +2896,7 @@ public class Context {
                     NamedDefinition superFlavor = (NamedDefinition) superDef.getDefinitionForArgs(superArgs, this);
                     if (superFlavor != null && (superFlavor.hasSub(this) || (constructions == null || constructions.size() == 0))) {
                         NamedDefinition ndef = (NamedDefinition) peek().def;
-                        data = constructSuper(superFlavor, superArgs, ndef);
+                        data = constructSuper(superFlavor, superArgs, ndef, null, sink);
                         constructed = true;
                     }
                 }
@@ -2832,7 +2916,7 @@ public class Context {
                         data = construction.getData(this);
                     }
                 } else {
-                    data = construct(constructions);
+                    data = construct(constructions, sink);
                 }
             }
     
@@ -2841,8 +2925,11 @@ public class Context {
 
             } else if (data instanceof CantoNode) {
                 instantiatedDef.initNode((CantoNode) data);
+
+            } else if (fragmentProfile != null && data instanceof String) {
+                FragmentCache.put(fragmentDef, fragmentKey, (String) data, fragmentProfile);
             }
-    
+
             return data;
 
         } catch (Redirection r) {
@@ -2906,9 +2993,19 @@ public class Context {
 
 
     public Object construct(List<Construction> constructions) {
+        return construct(constructions, null);
+    }
+
+    /** Constructs a list of constructions.  If a sink is passed, output after the
+     *  first construction is written to the sink as it is produced, and null is
+     *  returned if anything was written.
+     */
+    public Object construct(List<Construction> constructions, OutputSink sink) {
         Object data = null;
         if (constructions != null) {
-            StringBuffer sb = null;
+            TextAccumulator text = null;
+            // static text that supplied the leading data, to stream as such
+            StaticText leadingText = null;
             try {
                 int n = constructions.size();
                 for (int i = 0; i < n; i++) {
@@ -2950,6 +3047,9 @@ public class Context {
                             data = object;
                         } else {
                             data = object.getData(this);
+                            if (sink != null && object instanceof StaticText) {
+                                leadingText = (StaticText) object;
+                            }
                         }
                 
                         if (data instanceof Value) {
@@ -2998,6 +3098,21 @@ public class Context {
                                     }
                                 }
                             }
+                        } else if (sink != null && object instanceof StaticText) {
+                            // written directly, so it needn't be turned into a string
+                            StaticText staticText = (StaticText) object;
+                            String staticStr = staticText.getText();
+                            if (staticStr != null && staticStr.length() > 0) {
+                                if (data != sink) {
+                                    if (leadingText != null) {
+                                        sink.write(leadingText);
+                                    } else {
+                                        sink.write(data);
+                                    }
+                                    data = sink;
+                                }
+                                sink.write(staticText);
+                            }
                         } else if (object instanceof Value) {
                             if (!object.equals(NullValue.NULL_VALUE)) {
                                 str = ((Value) object).getString();
@@ -3008,30 +3123,50 @@ public class Context {
                             str = object.getText(this);
                         }
                         if (str != null && str.length() > 0) {
-                            if (sb == null) {
-                                sb = new StringBuffer(PrimitiveValue.getStringFor(data));
-                                data = sb;
+                            if (sink != null) {
+                                if (data != sink) {
+                                    if (leadingText != null) {
+                                        sink.write(leadingText);
+                                    } else {
+                                        sink.write(data);
+                                    }
+                                    data = sink;
+                                }
+                                sink.write(str);
+                            } else {
+                                if (text == null) {
+                                    text = TextAccumulator.acquire();
+                                    text.append(PrimitiveValue.getStringFor(data));
+                                    data = text;
+                                }
+                                text.append(str);
                             }
-                            sb.append(str);
                         }
                     }
                 }
 
+                if (text != null) {
+                    data = text.toString();
+                } else if (sink != null && data == sink) {
+                    data = null;
+                }
+
             } catch (ScriptExit se) {
                 String textOut = null;
-                if (sb != null) {
-                    textOut = sb.toString();
-                } else if (data != null) {
+                if (text != null) {
+                    textOut = text.toString();
+                } else if (data != null && data != sink) {
                     textOut = data.toString();
                 }
                 if (textOut != null) {
                     se.setTextOut(textOut);
                 }
                 throw se;
-            }
 
-            if (sb != null && data == sb) {
-                data = sb.toString();
+            } finally {
+                if (text != null) {
+                    text.release();
+                }
             }
         }
         return data;
@@ -3114,11 +3249,14 @@ public class Context {
         return data;
     }    
 
-    synchronized private Object getData(Definition def, String name, ConstructionList args, IndexList indexes, boolean local) {
+    private Object getData(Definition def, String name, ConstructionList args, IndexList indexes, boolean local) {
         if (name == null || name.length() == 0) {
             return null;
         }
         String fullName = (def == null ? name : def.getFullNameInContext(this));
+        if (def != null && dependencies != null) {
+            dependencies.add(def);
+        }
 
         Object data = null;
 
@@ -3222,7 +3360,7 @@ public class Context {
     /** Returns a Holder containing the definition and arguments associated with cached data for a 
      *  specified name in the current context, or null if there is none.
      */
-    synchronized public Holder getDefHolder(String name, String fullName, ConstructionList args, IndexList indexes, boolean local) {
+    public Holder getDefHolder(String name, String fullName, ConstructionList args, IndexList indexes, boolean local) {
         if (topScope == null || name == null || name.length() == 0) {
             return null;
         }
@@ -3276,7 +3414,7 @@ public class Context {
         putData(name, holder, indexes);
     }
         
-    synchronized public void putData(String name, Holder holder, IndexList indexes) {
+    public void putData(String name, Holder holder, IndexList indexes) {
         if (holder.data != null || holder.resolvedInstance != null) {
             LOG.debug(" - - - storing " + name + " in cache - - - ");
         }
@@ -3488,13 +3626,15 @@ public class Context {
      *  cached collections from cached elements.
      */
     private String addIndexesToKey(String key, IndexList indexes) {
-        if (indexes != null && indexes.size() > 0) {
-            Iterator<Index> it = indexes.iterator();
-            while (it.hasNext()) {
-                key = key + it.next().getModifierString(this);
-            }
+        if (indexes == null || indexes.size() == 0) {
+            return key;
         }
-        return key;
+        StringBuilder sb = new StringBuilder(key);
+        Iterator<Index> it = indexes.iterator();
+        while (it.hasNext()) {
+            it.next().appendModifierString(sb, this);
+        }
+        return sb.toString();
     }
 
     private Object getElement(Object collection, Index index) {
@@ -3830,137 +3970,166 @@ public class Context {
     }
     
     
-    private static int hashMapsCreated = 0;
-    public static int getNumHashMapsCreated() {
-        return hashMapsCreated;
+    private static final LongAdder hashMapsCreated = new LongAdder();
+    public static long getNumHashMapsCreated() {
+        return hashMapsCreated.sum();
     }
 
     public static <E> HashMap<String, E> newHashMap(Class<E> c) {
-        hashMapsCreated++;
+        hashMapsCreated.increment();
         return new HashMap<String, E>();
     }
 
     public static <E> HashMap<String, E> newHashMap(Map<String, E> map) {
-        hashMapsCreated++;
+        hashMapsCreated.increment();
         return new HashMap<String, E>(map);
     }
 
     public static <E> HashMap<String, Map<String,E>> newHashMapOfMaps(Class<E> c) {
-        hashMapsCreated++;
+        hashMapsCreated.increment();
         return new HashMap<String, Map<String, E>>();
     }
 
-    private static int arrayListsCreated = 0;
-    private static long totalListSize = 0L;
-    public static int getNumArrayListsCreated() {
-        return arrayListsCreated;
+    /** Returns a map for data that may be shared by contexts on different threads. **/
+    public static <E> Map<String, E> newConcurrentMap(Class<E> c) {
+        hashMapsCreated.increment();
+        return new ConcurrentHashMap<String, E>();
+    }
+
+    public static <E> Map<String, Map<String,E>> newConcurrentMapOfMaps(Class<E> c) {
+        hashMapsCreated.increment();
+        return new ConcurrentHashMap<String, Map<String, E>>();
+    }
+
+    private static final LongAdder arrayListsCreated = new LongAdder();
+    private static final LongAdder totalListSize = new LongAdder();
+    public static long getNumArrayListsCreated() {
+        return arrayListsCreated.sum();
     }
     public static long getTotalListSize() {
-        return totalListSize;
+        return totalListSize.sum();
     }
 
     public static <E> ArrayList<E> newArrayList(int size) {
-        arrayListsCreated++;
-        totalListSize += size;
+        arrayListsCreated.increment();
+        totalListSize.add(size);
         return new ArrayList<E>(size);
     }
 
     public static <E> ArrayList<E> newArrayList(int size, Class<E> c) {
-        arrayListsCreated++;
-        totalListSize += size;
+        arrayListsCreated.increment();
+        totalListSize.add(size);
         return new ArrayList<E>(size);
     }
 
     public static <E> ArrayList<E> newArrayList(int size, List<E> list) {
-        arrayListsCreated++;
-        totalListSize += size;
+        arrayListsCreated.increment();
+        totalListSize.add(size);
         return new ArrayList<E>(size);
     }
 
     public static <E> ArrayList<E> newArrayList(List<E> list) {
-        arrayListsCreated++;
-        totalListSize += list.size();
+        arrayListsCreated.increment();
+        totalListSize.add(list.size());
         return new ArrayList<E>(list);
     }
 
-    protected static int scopesCreated = 0;
-    public static int getNumEntriesCreated() {
-        return scopesCreated;
+    public static long getNumEntriesCreated() {
+        return Scope.getNumEntriesCreated();
+    }
+    public static long getNumEntriesCloned() {
+        return Scope.getNumEntriesCloned();
     }
-    protected static int scopesCloned = 0;
-    public static int getNumEntriesCloned() {
-        return scopesCloned;
+    protected static final LongAdder scopesRecycled = new LongAdder();
+    public static long getNumEntriesRecycled() {
+        return scopesRecycled.sum();
     }
 
+    /** Popped scopes that nothing refers to are kept in a per-thread pool and
+     *  reused by the next push on the same thread.
+     */
+    private static final int MAX_POOLED_SCOPES = 64;
+    private static final ThreadLocal<ArrayDeque<Scope>> SCOPE_POOL = ThreadLocal.withInitial(ArrayDeque::new);
+    private static volatile boolean poolScopes = true;
+
 
     public Scope newScope(Definition def, Definition superdef, ParameterList params, ConstructionList args) {
+        if (dependencies != null && def != null) {
+            dependencies.add(def);
+            if (superdef != null) {
+                dependencies.add(superdef);
+            }
+        }
 
         Map<String, Object> scopeKeep = null;
         if (def instanceof Site) {
-            scopeKeep = siteKeeps.get(def.getName());
-            if (scopeKeep == null) {
-                scopeKeep = newHashMap(Object.class);
-                siteKeeps.put(def.getName(), scopeKeep);
-            }
+            scopeKeep = siteKeeps.computeIfAbsent(def.getName(), k -> newConcurrentMap(Object.class));
         }
-        // ENTRY REUSE HAS BEEN DISABLED FOR NOW
-        // getAbandonedScope will always return null
         Scope scope = getAbandonedScope();
         if (scope != null) {
             scope.init(def, superdef, params, args, scopeKeep, globalKeep);
         } else {
             scope = new Scope(def, superdef, params, args, scopeKeep, globalKeep);
         }
+        scope.owner = this;
         return scope;
     }
 
     public Scope newScope(Scope copyScope, boolean copyKeep) {
-        // ENTRY REUSE HAS BEEN DISABLED FOR NOW
-        // getAbandonedScope will always return null
         Scope scope = getAbandonedScope();
         if (scope != null) {
             scope.copy(copyScope, copyKeep);
         } else {
             scope = new Scope(copyScope, copyKeep);
         }
+        scope.owner = this;
         return scope;
     }
 
+    /** Recycles a popped scope if nothing can still reach it.  A scope is reachable
+     *  if it is the top of this context or the previous of another of its scopes,
+     *  which its refCount counts, if another context refers to it, which marks it
+     *  as shared, or if it is waiting to be repushed.  Scopes are only recycled by
+     *  the context that made them; a copy of a context shares the scopes below its
+     *  top with the original, and may be used on another thread.
+     *  Parameter and argument lists and keep tables are not reused with the
+     *  scope, so instances made in the scope that hold on to them are unaffected.
+     */
     private void oldScope(Scope scope) {
         // recycle if the refCount has dropped to zero, unless it's the top of the
         // unpushedEntries stack, which may have a refCount of 0 but should
         // definitely not be abandoned.
 
-        synchronized (scope) {
-            if (scope.refCount == 0 && !unpushedScopes.contains(scope)) {
-                scope.clear();
-                addAbandonedScope(scope);
-            } else {
-                // this just means that the scope is still in use somewhere else, most likely in a ResolvedInstance
-                LOG.debug("Scope (" + scope.toString() + ") popped a scope with ref count of " + scope.refCount);
-            }
+        if (!poolScopes || scope.owner != this) {
+            return;
+        } else if (scope.refCount == 0 && !scope.isShared() && !unpushedScopes.contains(scope)) {
+            scope.clear();
+            addAbandonedScope(scope);
+        } else {
+            // this just means that the scope is still in use somewhere else, most likely in a ResolvedInstance
+            LOG.debug("Scope (" + scope.toString() + ") popped a scope with ref count of " + scope.refCount);
         }
 
     }
-    // DISABLE ENTRY REUSE FOR NOW
-    // see addAbandonedScope
-    private Scope getAbandonedScope() {
-        Scope scope = rootContext.abandonedScopes;
+
+    private static Scope getAbandonedScope() {
+        Scope scope = (poolScopes ? SCOPE_POOL.get().pollLast() : null);
         if (scope != null) {
-            synchronized (rootContext.abandonedScopes) {
-                Scope next = scope.getPrevious();
-                scope.setPrevious(null);
-                rootContext.abandonedScopes = next;
-            }
+            scopesRecycled.increment();
         }
         return scope;
     }
 
-    // DISABLE ENTRY REUSE FOR NOW
-    // by disabling this function
-    private void addAbandonedScope(Scope scope) {
-        //scope.setPrevious(rootContext.abandonedScopes);
-        //rootContext.abandonedScopes = scope;
+    private static void addAbandonedScope(Scope scope) {
+        ArrayDeque<Scope> pool = SCOPE_POOL.get();
+        if (pool.size() < MAX_POOLED_SCOPES) {
+            pool.addLast(scope);
+        }
+    }
+
+    /** Turns recycling of popped scopes on or off.  It is on by default. **/
+    public static void setScopePooling(boolean pool) {
+        poolScopes = pool;
     }
 
     public Scope getRootScope() {
@@ -8,6 +8,8 @@
 
 package canto.lang;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.*;
 
 import canto.runtime.Log;
@@ -20,9 +22,9 @@ public class Core extends Site {
 
     private static Core originalCore = null;
     
-    private Map<String, Site> siteTable = null;
-    private Map<String, DefinitionTable> defTableTable = null;
-    private Map<String, Map<String, Object>> globalKeepTable = null;
+    transient private Map<String, Site> siteTable = null;
+    transient private Map<String, DefinitionTable> defTableTable = null;
+    transient private Map<String, Map<String, Object>> globalKeepTable = null;
     
     public Core() {
         this(false);
@@ -30,7 +32,16 @@ public class Core extends Site {
     
     public Core(boolean fromScratch) {
         super(Name.CORE);
-        
+        initTables(fromScratch);
+    }
+
+    /** A deserialized core, like a parsed one, shares the tables of the original core. **/
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initTables(false);
+    }
+
+    private void initTables(boolean fromScratch) {
         // unless fromScratch is true, only allow one Core to be constructed from
         // scratch; every further Core is a copy of the first 
         if (!fromScratch && originalCore != null) {
@@ -42,10 +53,10 @@ public class Core extends Site {
         } else {
             siteTable = new HashMap<String, Site>();
             defTableTable = new HashMap<String, DefinitionTable>();
-            globalKeepTable = new HashMap<String, Map<String, Object>>();
+            globalKeepTable = Context.newConcurrentMapOfMaps(Object.class);
             setNewDefinitionTable();
             siteTable.put("core", this);
-            setGlobalKeep(new HashMap<String, Object>());
+            setGlobalKeep(new GlobalKeep());
             globalKeepTable.put("core", getGlobalKeep());
             originalCore = this;
         }
@@ -76,6 +87,8 @@ public class Core extends Site {
             newSite.setOwner(this);
             siteTable.put(name, newSite);
         }
+        // adopted and default definitions are looked up by site
+        clearResolvedDefinitions();
     }
 
     public Site getSite(String name) {
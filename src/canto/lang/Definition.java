@@ -90,14 +90,32 @@ abstract public class Definition extends CantoNode implements Name, Construction
     /** The context, if this definition is a copy initialized for a particular
      *  context, else null.
      */
-    protected Context initContext = null;
+    transient protected Context initContext = null;
 
     /** static data cache, unused if this definition is not declared to be static. **/
-    private static class StaticData {
-        public Object data = null;
+    private static class StaticData implements java.io.Serializable {
+        public transient Object data = null;
     }
     private StaticData staticData;
 
+    /** The last name built by joining an owner's name and this definition's name.
+     *  Full names are rebuilt for every cache lookup, so this is reused as long as
+     *  the owner's name is the same string as before, which also makes the joined
+     *  name the same string each time.
+     */
+    private static final class JoinedName {
+        final String ownerName;
+        final String name;
+        final String joinedName;
+
+        JoinedName(String ownerName, String name) {
+            this.ownerName = ownerName;
+            this.name = name;
+            this.joinedName = ownerName + '.' + name;
+        }
+    }
+    transient private JoinedName lastJoinedName = null;
+
     protected boolean hasStaticData() {
         return (staticData.data != null);
     }
@@ -927,8 +945,17 @@ abstract public class Definition extends CantoNode implements Name, Construction
         if (ownerName == null || ownerName.length() == 0) {
             return name;
         } else {
-            return ownerName + "." + name;
+            return joinName(ownerName, name);
+        }
+    }
+
+    private String joinName(String ownerName, String name) {
+        JoinedName joined = lastJoinedName;
+        if (joined == null || joined.ownerName != ownerName || joined.name != name) {
+            joined = new JoinedName(ownerName, name);
+            lastJoinedName = joined;
         }
+        return joined.joinedName;
     }
 
     /** Returns the full name, with the ownership chain adjusted to reflect the
@@ -947,7 +974,7 @@ abstract public class Definition extends CantoNode implements Name, Construction
             }
             String ownerName = contextDef.getFullNameInContext(context);
             if (ownerName != null && ownerName.length() > 0) {
-                name = ownerName + '.' + name;
+                name = joinName(ownerName, name);
             }
         }
         return name;
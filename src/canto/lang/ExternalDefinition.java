@@ -514,24 +514,15 @@ public class ExternalDefinition extends ComplexDefinition {
         }
         
         try {
-            method = clazz.getMethod(name, params);
-
-        } catch (NoSuchMethodException nsme) {
-            method = getClosestMethod(name, params, clazz);
-            if (method != null) {
-                // unfortunate that this causes a clone of the paramTypes array
-                Class<?>[] mParams = method.getParameterTypes();
-                if (mParams.length > numArgs && Context.class.isAssignableFrom(mParams[0])) {
-                    ConstructionList newArgs = new ConstructionList(numArgs + 1);
-                    newArgs.add(new PrimitiveValue(context));
-                    if (numArgs > 0) {
-                        newArgs.addAll(args);
-                    }
-                    args = newArgs;
+            method = ExternalMethods.findMethod(clazz, name, params);
+            if (method != null && method.getParameterCount() > numArgs) {
+                // the closest method takes a context as its first parameter
+                ConstructionList newArgs = new ConstructionList(numArgs + 1);
+                newArgs.add(new PrimitiveValue(context));
+                if (numArgs > 0) {
+                    newArgs.addAll(args);
                 }
-                
-            } else {    
-//               LOG.debug("No method " + name + " in class " + clazz.getName());
+                args = newArgs;
             }
 
         } catch (Exception e) {
@@ -585,11 +576,13 @@ public class ExternalDefinition extends ComplexDefinition {
         if (args == null || args.size() == 0) {
             Field field = null;
             try {
-                field = clazz.getField(name);
+                field = ExternalMethods.findField(clazz, name);
 
-            } catch (NoSuchFieldException nsme) {
-//               LOG.debug("No field " + name + " in class " + clazz.getName());
-                
+            } catch (Exception e) {
+                LOG.debug("Exception finding field " + name + " in class " + clazz.getName() + ": " + e);
+                field = null;
+            }
+            if (field == null) {
                 // no explicit method or field by the specified name.  Look
                 // for a special collection name:
                 //     -- if the name is "count", create a count definition
@@ -613,16 +606,9 @@ public class ExternalDefinition extends ComplexDefinition {
                     ResolvedInstance ri = (ResolvedInstance) parentObj;
                     Definition parentDef = ri.getDefinition();
                     return parentDef.getChild(node, args, indexes, parentArgs, ri.getResolutionContext(), generate, trySuper, parentObj, resolver);
-
-                } else {
-                    field = null;
                 }
 
-            } catch (Exception e) {
-                LOG.debug("Exception finding field " + name + " in class " + clazz.getName() + ": " + e);
-                field = null;
-            }
-            if (field != null) {
+            } else {
                 ExternalDefinition ownerInContext = new ExternalDefinition(this, context, getArguments()); 
                 Definition fieldDef = new FieldDefinition(ownerInContext, field);
                 return fieldDef.getDefInstance(null, indexes);
@@ -1172,13 +1158,9 @@ class ExternalConstruction extends Construction implements ValueGenerator {
                 }
             }
             Class<?> instanceClass = def.getInstanceClass(context);
-            try {
-                constructor = instanceClass.getConstructor(params);
-            } catch (NoSuchMethodException nsme) {
-                constructor = ExternalDefinition.getClosestConstructor(instanceClass, params, paramDefs);
-                if (constructor == null) {
-                    LOG.debug("No constructor found for class " + instanceClass.getName());
-                }
+            constructor = ExternalMethods.findConstructor(instanceClass, params);
+            if (constructor == null) {
+                LOG.debug("No constructor found for class " + instanceClass.getName());
             }
 
         } catch (Exception e) {
@@ -1262,7 +1244,7 @@ class ExternalConstruction extends Construction implements ValueGenerator {
 //       context.unpush();
         try {
             if (constructor != null) {
-                return constructor.newInstance(argObjects);
+                return ExternalMethods.newInstance(constructor, argObjects);
             } else {
                 return null;
             }
@@ -1430,10 +1412,17 @@ class MethodDefinition extends ExternalDefinition {
 class MethodConstruction extends ExternalConstruction {
     private static final Log LOG = Log.getLogger(MethodConstruction.class);
 
+    /** The most receiver classes for which a call site remembers the method. **/
+    private static final int MAX_RECEIVER_CLASSES = 4;
+
     // context-specific fields
     private Method method = null;
     private Object instance = null;
 
+    // the methods called at this site for receiver classes that don't declare the
+    // defined method, in pairs of class and method, most recent first
+    private transient volatile Object[] receiverMethods = null;
+
     public MethodConstruction(MethodDefinition def) {
         super(def);
     }
@@ -1555,6 +1544,32 @@ class MethodConstruction extends ExternalConstruction {
         return this;
     }
 
+    /** Returns the method to call on a receiver of the passed class, which doesn't
+     *  declare the method this site was defined with, or null if there isn't one.
+     */
+    private Method getReceiverMethod(Class<?> receiverClass, String name, Class<?>[] params) {
+        Object[] cached = receiverMethods;
+        if (cached != null) {
+            for (int i = 0; i < cached.length; i += 2) {
+                if (cached[i] == receiverClass) {
+                    return (Method) cached[i + 1];
+                }
+            }
+        }
+        Method receiverMethod = ExternalMethods.findMethod(receiverClass, name, params);
+        if (receiverMethod != null) {
+            int len = (cached == null ? 0 : Math.min(cached.length, (MAX_RECEIVER_CLASSES - 1) * 2));
+            Object[] updated = new Object[len + 2];
+            updated[0] = receiverClass;
+            updated[1] = receiverMethod;
+            if (len > 0) {
+                System.arraycopy(cached, 0, updated, 2, len);
+            }
+            receiverMethods = updated;
+        }
+        return receiverMethod;
+    }
+
     /** Instantiate any uninstantiated constructions among the elements in a 
      *  collection, and return the collection.  If the passed object is not a 
      *  collection, do nothing and return the passed object.
@@ -1672,16 +1687,16 @@ class MethodConstruction extends ExternalConstruction {
                 String name = method.getName();
 
                 try {
-                    runtimeMethod = runtimeClazz.getMethod(name, params);
-    
-                } catch (NoSuchMethodException nsme) {
-                    runtimeMethod = ExternalDefinition.getClosestMethod(name, params, runtimeClazz);
+                    runtimeMethod = getReceiverMethod(runtimeClazz, name, params);
                     if (runtimeMethod == null) {
                         String message = "Unable to find method " + name + " in class " + instance.getClass().getName();
                         LOG.error(message);
                         throw new Redirection(Redirection.STANDARD_ERROR, message);
                     }
-    
+
+                } catch (Redirection r) {
+                    throw r;
+
                 } catch (Exception e) {
                     String message = "Exception finding method " + name + " in class " + instance.getClass().getName() + ": " + e;
                     LOG.error(message);
@@ -1740,7 +1755,7 @@ class MethodConstruction extends ExternalConstruction {
 //        }
 
         try {
-            return runtimeMethod.invoke(instance, args);
+            return ExternalMethods.invoke(runtimeMethod, instance, args);
 
         } catch (InvocationTargetException ite) {
             Throwable t = ite.getTargetException();
@@ -1804,7 +1819,7 @@ class FieldDefinition extends ExternalDefinition {
                 } else {
                     instance = object;
                 }
-                return field.get(instance);
+                return ExternalMethods.getFieldValue(field, instance);
             } catch (Exception e) {
                 LOG.error("Exception generating data via external field: " + e);
                 throw new Redirection(Redirection.SERVER_ERROR_STATUS, Redirection.STANDARD_ERROR_PAGE, e.toString());
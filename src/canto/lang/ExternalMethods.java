@@ -0,0 +1,272 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ExternalMethods.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import canto.runtime.Log;
+import canto.runtime.RequestProfile;
+
+/**
+ * Lookup and dispatch for the Java methods, constructors and fields used by
+ * external definitions.
+ *
+ * Looking up a member by name and argument classes, including the search for the
+ * closest match when there is no exact one, is done once per class and argument
+ * shape; the result, or the lack of one, is remembered.  Each member is called
+ * through a method handle made the first time it is called, adapted to take its
+ * receiver and arguments as plain objects, so a call costs about as much as a
+ * direct one.  Exceptions thrown by the member are wrapped in an
+ * InvocationTargetException, as reflection does.
+ */
+final class ExternalMethods {
+
+    private static final Log LOG = Log.getLogger(ExternalMethods.class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /** Marks a member that was looked up and not found. **/
+    private static final Object NOT_FOUND = new Object();
+
+    /** Marks a member that can't be called through a method handle, and so is
+     *  called through reflection.
+     */
+    private static final MethodHandle REFLECTIVE = MethodHandles.constant(Object.class, null);
+
+    private static final MethodHandle WRAP_TARGET_EXCEPTION;
+    static {
+        try {
+            WRAP_TARGET_EXCEPTION = LOOKUP.findStatic(ExternalMethods.class, "wrapTargetException", MethodType.methodType(Object.class, Throwable.class));
+        } catch (ReflectiveOperationException roe) {
+            throw new ExceptionInInitializerError(roe);
+        }
+    }
+
+    /** Key for a member lookup: the member's name, the classes of the arguments
+     *  and whether the member is a method, constructor or field.
+     */
+    private static final class LookupKey {
+        final char kind;
+        final String name;
+        final Class<?>[] params;
+        final int hash;
+
+        LookupKey(char kind, String name, Class<?>[] params) {
+            this.kind = kind;
+            this.name = name;
+            this.params = params;
+            this.hash = (kind * 31 + (name == null ? 0 : name.hashCode())) * 31 + Arrays.hashCode(params);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey key = (LookupKey) obj;
+            return key.kind == kind && key.hash == hash && (key.name == null ? name == null : key.name.equals(name))
+                    && Arrays.equals(key.params, params);
+        }
+    }
+
+    /** The members looked up in each class, and the handles made for members
+     *  declared in each class.  Kept with the class so that the tables don't
+     *  keep classes from being unloaded.
+     */
+    private static final ClassValue<ConcurrentHashMap<Object, Object>> memberTables = new ClassValue<ConcurrentHashMap<Object, Object>>() {
+        protected ConcurrentHashMap<Object, Object> computeValue(Class<?> c) {
+            return new ConcurrentHashMap<Object, Object>();
+        }
+    };
+
+    private ExternalMethods() {}
+
+    /** Returns the public method of the passed class with the passed name that
+     *  best matches the passed argument classes, or null if there is none.
+     */
+    static Method findMethod(Class<?> c, String name, Class<?>[] params) {
+        ConcurrentHashMap<Object, Object> table = memberTables.get(c);
+        LookupKey key = new LookupKey('m', name, params);
+        Object method = table.get(key);
+        if (method == null) {
+            try {
+                method = c.getMethod(name, params);
+            } catch (NoSuchMethodException nsme) {
+                method = ExternalDefinition.getClosestMethod(name, params, c);
+            }
+            table.put(key, method == null ? NOT_FOUND : method);
+        }
+        return (method == NOT_FOUND ? null : (Method) method);
+    }
+
+    /** Returns the public constructor of the passed class that best matches the
+     *  passed argument classes, or null if there is none.
+     */
+    static Constructor<?> findConstructor(Class<?> c, Class<?>[] params) {
+        ConcurrentHashMap<Object, Object> table = memberTables.get(c);
+        LookupKey key = new LookupKey('c', null, params);
+        Object constructor = table.get(key);
+        if (constructor == null) {
+            try {
+                constructor = c.getConstructor(params);
+            } catch (NoSuchMethodException nsme) {
+                constructor = ExternalDefinition.getClosestConstructor(c, params, null);
+            }
+            table.put(key, constructor == null ? NOT_FOUND : constructor);
+        }
+        return (constructor == NOT_FOUND ? null : (Constructor<?>) constructor);
+    }
+
+    /** Returns the public field of the passed class with the passed name, or null
+     *  if there is none.
+     */
+    static Field findField(Class<?> c, String name) {
+        ConcurrentHashMap<Object, Object> table = memberTables.get(c);
+        LookupKey key = new LookupKey('f', name, null);
+        Object field = table.get(key);
+        if (field == null) {
+            try {
+                field = c.getField(name);
+            } catch (NoSuchFieldException nsfe) {
+                field = NOT_FOUND;
+            }
+            table.put(key, field);
+        }
+        return (field == NOT_FOUND ? null : (Field) field);
+    }
+
+    /** Calls the passed method on the passed instance, which is ignored if the
+     *  method is static.
+     */
+    static Object invoke(Method method, Object instance, Object[] args) throws Exception {
+        RequestProfile.countExternalCall();
+        MethodHandle handle = getHandle(method);
+        if (handle == REFLECTIVE) {
+            return method.invoke(instance, args);
+        }
+        // the arguments are passed as a typed local, because a conditional expression
+        // would take on the type Object at the call site and fail the exact match
+        Object[] argArray = (args == null ? NO_ARGS : args);
+        try {
+            return (Object) handle.invokeExact(instance, argArray);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /** Calls the passed constructor. **/
+    static Object newInstance(Constructor<?> constructor, Object[] args) throws Exception {
+        RequestProfile.countExternalCall();
+        MethodHandle handle = getHandle(constructor);
+        if (handle == REFLECTIVE) {
+            return constructor.newInstance(args);
+        }
+        Object[] argArray = (args == null ? NO_ARGS : args);
+        try {
+            return (Object) handle.invokeExact(argArray);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /** Returns the value of the passed field of the passed instance, which is
+     *  ignored if the field is static.
+     */
+    static Object getFieldValue(Field field, Object instance) throws Exception {
+        MethodHandle handle = getHandle(field);
+        if (handle == REFLECTIVE) {
+            return field.get(instance);
+        }
+        try {
+            return (Object) handle.invokeExact(instance);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static MethodHandle getHandle(Member member) {
+        ConcurrentHashMap<Object, Object> table = memberTables.get(member.getDeclaringClass());
+        Object handle = table.get(member);
+        if (handle == null) {
+            handle = makeHandle(member);
+            table.put(member, handle);
+        }
+        return (MethodHandle) handle;
+    }
+
+    private static MethodHandle makeHandle(Member member) {
+        boolean isStatic = Modifier.isStatic(member.getModifiers());
+        try {
+            if (member instanceof Method) {
+                Method method = (Method) member;
+                MethodHandle handle = wrapTargetExceptions(LOOKUP.unreflect(method).asFixedArity());
+                if (isStatic) {
+                    handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                }
+                return handle.asSpreader(Object[].class, method.getParameterCount()).asType(INVOKER_TYPE);
+
+            } else if (member instanceof Constructor<?>) {
+                Constructor<?> constructor = (Constructor<?>) member;
+                MethodHandle handle = wrapTargetExceptions(LOOKUP.unreflectConstructor(constructor).asFixedArity());
+                return handle.asSpreader(Object[].class, constructor.getParameterCount()).asType(CONSTRUCTOR_TYPE);
+
+            } else {
+                MethodHandle handle = LOOKUP.unreflectGetter((Field) member);
+                if (isStatic) {
+                    handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                }
+                return handle.asType(GETTER_TYPE);
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            LOG.debug("Calling " + member + " through reflection: " + e);
+            return REFLECTIVE;
+        }
+    }
+
+    /** Wraps the passed handle so that anything it throws comes out wrapped in an
+     *  InvocationTargetException, distinguishing it from a failure to convert the
+     *  arguments.
+     */
+    private static MethodHandle wrapTargetExceptions(MethodHandle handle) {
+        MethodType type = handle.type();
+        MethodHandle wrapper = WRAP_TARGET_EXCEPTION.asType(MethodType.methodType(type.returnType(), Throwable.class));
+        wrapper = MethodHandles.dropArguments(wrapper, 1, type.parameterList());
+        return MethodHandles.catchException(handle, Throwable.class, wrapper);
+    }
+
+    @SuppressWarnings("unused")
+    private static Object wrapTargetException(Throwable t) throws InvocationTargetException {
+        throw new InvocationTargetException(t);
+    }
+}
@@ -176,48 +176,55 @@ public class ForStatement extends Construction implements ConstructionContainer,
     }
 
     public Object generateData(Context context, Definition def) {
-        StringBuffer sb = null;
+        TextAccumulator text = null;
         Object data = null;
 
-        // get an iterator
-        Iterator<Construction> it = vals.iterator(context);
-        ValueSource until = vals.getUntil();
-        ValueSource where = vals.getWhere();
-        if (it != null) {
-            while (it.hasNext()) {
-                context.nextLoopIndex();
-                int n = pushParams(context, it.next());
-                if (until != null) {
-                    if (valueOf(until, context).getBoolean()) {
-                        popParams(context, n);
-                        break;
+        try {
+            // get an iterator
+            Iterator<Construction> it = vals.iterator(context);
+            ValueSource until = vals.getUntil();
+            ValueSource where = vals.getWhere();
+            if (it != null) {
+                while (it.hasNext()) {
+                    context.nextLoopIndex();
+                    int n = pushParams(context, it.next());
+                    if (until != null) {
+                        if (valueOf(until, context).getBoolean()) {
+                            popParams(context, n);
+                            break;
+                        }
                     }
-                }
-                if (where != null) {
-                    if (!valueOf(where, context).getBoolean()) {
-                        popParams(context, n);
-                        continue;
+                    if (where != null) {
+                        if (!valueOf(where, context).getBoolean()) {
+                            popParams(context, n);
+                            continue;
+                        }
                     }
-                }
-                Object nextData = body.getData(context);
-                if (nextData != null) {
-                    if (data == null) {
-                        data = nextData;
-                    } else {
-                	    if (sb == null) {
-                            sb = new StringBuffer(getTextForData(data));
+                    Object nextData = body.getData(context);
+                    if (nextData != null) {
+                        if (data == null) {
+                            data = nextData;
+                        } else {
+                            if (text == null) {
+                                text = TextAccumulator.acquire();
+                                text.append(getTextForData(data));
+                            }
+                            text.append(getTextForData(nextData));
                         }
-                        sb.append(getTextForData(nextData));
                     }
+                    popParams(context, n);
                 }
-                popParams(context, n);
+                context.resetLoopIndex();
+            }
+            if (text != null) {
+                return text.toString();
+            } else {
+                return data;
+            }
+        } finally {
+            if (text != null) {
+                text.release();
             }
-            context.resetLoopIndex();
-        }
-        if (sb != null) {
-            return sb.toString();
-        } else {
-            return data;
         }
     }
     
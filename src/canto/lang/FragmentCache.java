@@ -0,0 +1,327 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * FragmentCache.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import canto.runtime.Log;
+import canto.runtime.RequestProfile;
+
+/**
+ * A cache of the text rendered by definitions whose output depends on nothing but
+ * their arguments and global data, such as navigation bars and footers.  The text
+ * is cached across contexts and requests, keyed by the definition and its
+ * arguments, and reused instead of constructing the definition again.
+ *
+ * A definition's output is cached only if it can be shown not to depend on the
+ * context: the definition is a top-level, non-dynamic definition with no
+ * supertype, and its constructions are static text, literals, references to its
+ * own parameters and references to other top-level definitions that are global
+ * or cacheable themselves, with literal arguments if any.  It is cached only when
+ * it is instantiated with literal arguments or none.  Declaring a definition
+ * <code>dynamic</code> keeps it and every definition that refers to it out of
+ * the cache.
+ *
+ * The cache is off unless turned on by setting <code>canto.fragmentcache.max</code>,
+ * or the server's <code>--fragment-cache-max</code> flag, to the number of
+ * fragments to hold; the least recently used are evicted first.  A fragment
+ * that includes global data is not invalidated when that data is evicted from
+ * the global keep or rewritten, only when the global keep's time to live
+ * expires, so turn the cache on only for sites whose cacheable definitions
+ * read globals that don't change, or give the global keep a time to live.
+ * The cache is cleared when a site is reloaded.
+ */
+public class FragmentCache {
+
+    private static final Log LOG = Log.getLogger(FragmentCache.class);
+
+    public static final String MAX_PROPERTY = "canto.fragmentcache.max";
+    public static final int DEFAULT_MAX_ENTRIES = 0;
+
+    /** Longer fragments are not cached. **/
+    public static final int MAX_FRAGMENT_LENGTH = 65536;
+
+    /** When the cache is full, fragments are evicted until it is this fraction full. **/
+    private static final double EVICT_TO = 0.9;
+
+    private static volatile int maxEntries = Integer.getInteger(MAX_PROPERTY, DEFAULT_MAX_ENTRIES);
+
+    /** What the cache knows about a definition: whether its output may be cached,
+     *  the definitions its output depends on and whether any of them are global.
+     */
+    static final class Profile {
+        final boolean cacheable;
+        final Set<Definition> dependencies;
+        final boolean usesGlobals;
+
+        Profile(boolean cacheable, Set<Definition> dependencies, boolean usesGlobals) {
+            this.cacheable = cacheable;
+            this.dependencies = dependencies;
+            this.usesGlobals = usesGlobals;
+        }
+    }
+
+    static final Profile NOT_CACHEABLE = new Profile(false, null, false);
+
+    private static final class Key {
+        final Definition def;
+        final String args;
+        final int hash;
+
+        Key(Definition def, String args) {
+            this.def = def;
+            this.args = args;
+            this.hash = System.identityHashCode(def) * 31 + args.hashCode();
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return key.def == def && key.args.equals(args);
+        }
+    }
+
+    private static final class Entry {
+        final String text;
+        final long expires;
+        volatile long lastUsed;
+
+        Entry(String text, long expires) {
+            this.text = text;
+            this.expires = expires;
+            this.lastUsed = System.nanoTime();
+        }
+    }
+
+    private static final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    private static final ReentrantLock evictLock = new ReentrantLock();
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    /** Sets the maximum number of cached fragments; zero turns the cache off. **/
+    public static void setMaxEntries(int max) {
+        maxEntries = max;
+        if (max <= 0) {
+            entries.clear();
+        }
+    }
+
+    public static int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public static boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    public static int size() {
+        return entries.size();
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    public static long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** Discards every cached fragment.  Called when a site is reloaded. **/
+    public static void clear() {
+        entries.clear();
+    }
+
+    /** Returns the profile of the passed definition, working it out the first time. **/
+    static Profile getProfile(Definition def) {
+        Profile profile = lookupProfile(def);
+        return (profile == null ? NOT_CACHEABLE : profile);
+    }
+
+    /** Returns the profile of the passed definition, or null if it can't be worked
+     *  out yet because the definition refers to names that have not been resolved.
+     */
+    private static Profile lookupProfile(Definition def) {
+        if (!(def instanceof NamedDefinition)) {
+            return NOT_CACHEABLE;
+        }
+        NamedDefinition ndef = (NamedDefinition) def;
+        Profile profile = ndef.fragmentProfile;
+        if (profile == null) {
+            // a definition that refers back to itself is not cacheable
+            ndef.fragmentProfile = NOT_CACHEABLE;
+            profile = computeProfile(ndef);
+            ndef.fragmentProfile = profile;
+        }
+        return profile;
+    }
+
+    private static Profile computeProfile(NamedDefinition def) {
+        if (!(def.getOwner() instanceof Site) || def.isAnonymous() || def.isExternal() || def.isAlias()
+                || def.isCollection() || def.isIdentity() || def.isFormalParam() || def.getSuper() != null
+                || def.getDurability() != Definition.Durability.IN_CONTEXT || def.getCatchBlock() != null) {
+            return NOT_CACHEABLE;
+        }
+
+        List<Construction> constructions = def.getConstructions(null);
+        if (constructions == null || constructions.size() == 0) {
+            return NOT_CACHEABLE;
+        }
+
+        Set<Definition> dependencies = Collections.newSetFromMap(new IdentityHashMap<Definition, Boolean>());
+        dependencies.add(def);
+        boolean usesGlobals = false;
+        for (Construction construction: constructions) {
+            if (construction instanceof StaticText || construction instanceof PrimitiveValue) {
+                continue;
+            } else if (construction.getClass() != Instantiation.class) {
+                return NOT_CACHEABLE;
+            }
+
+            Instantiation instance = (Instantiation) construction;
+            if (instance.getKind() == Instantiation.Kind.UNRESOLVED) {
+                return null;
+            }
+            NameNode name = instance.getReferenceName();
+            if (name == null || name.numParts() != 1 || name.isSpecial() || instance.getIndexes() != null || instance.isParamChild) {
+                return NOT_CACHEABLE;
+
+            } else if (instance.isParam) {
+                if (instance.getKind() != Instantiation.Kind.PARAMETER || instance.getArguments() != null) {
+                    return NOT_CACHEABLE;
+                }
+                continue;
+
+            } else if (instance.getKind() != Instantiation.Kind.EXPLICITLY_RESOLVED || getArgumentKey(instance.getArguments()) == null) {
+                return NOT_CACHEABLE;
+            }
+
+            Definition refDef = def.getDefinitionTable().getDefinition(def, name);
+            if (!(refDef instanceof NamedDefinition) || refDef.isExternal() || refDef.isCollection() || refDef.isFormalParam()) {
+                return NOT_CACHEABLE;
+
+            } else if (refDef.isGlobal()) {
+                dependencies.add(refDef);
+                usesGlobals = true;
+
+            } else {
+                Profile refProfile = lookupProfile(refDef);
+                if (refProfile == null) {
+                    return null;
+                } else if (!refProfile.cacheable) {
+                    return NOT_CACHEABLE;
+                }
+                dependencies.addAll(refProfile.dependencies);
+                usesGlobals = usesGlobals || refProfile.usesGlobals;
+            }
+        }
+        LOG.debug("Output of " + def.getFullName() + " is cacheable");
+        return new Profile(true, Collections.unmodifiableSet(dependencies), usesGlobals);
+    }
+
+    /** Returns the key for the passed arguments, or null if any of them is not a
+     *  literal.
+     */
+    static String getArgumentKey(ConstructionList args) {
+        if (args == null || args.size() == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Construction arg: args) {
+            if (arg instanceof StaticText) {
+                sb.append('t').append(((StaticText) arg).getText());
+            } else if (arg instanceof PrimitiveValue) {
+                PrimitiveValue value = (PrimitiveValue) arg;
+                sb.append(value.getValueClass().getSimpleName()).append(':').append(value.getString());
+            } else {
+                return null;
+            }
+            sb.append('\u0000');
+        }
+        return sb.toString();
+    }
+
+    /** Returns the cached output of the passed definition for the passed argument
+     *  key, or null if there is none.
+     */
+    static String get(Definition def, String argKey) {
+        Key key = new Key(def, argKey);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expires > 0 && System.currentTimeMillis() >= entry.expires) {
+            entries.remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            RequestProfile.countCacheHit(false);
+            return null;
+        }
+        entry.lastUsed = System.nanoTime();
+        hits.increment();
+        RequestProfile.countCacheHit(true);
+        return entry.text;
+    }
+
+    static void put(Definition def, String argKey, String text, Profile profile) {
+        if (maxEntries <= 0 || text.length() > MAX_FRAGMENT_LENGTH) {
+            return;
+        }
+        long expires = 0L;
+        long ttl = GlobalKeep.getDefaultTtlMillis();
+        if (profile.usesGlobals && ttl > 0) {
+            expires = System.currentTimeMillis() + ttl;
+        }
+        entries.put(new Key(def, argKey), new Entry(text, expires));
+        evictIfFull();
+    }
+
+    private static void evictIfFull() {
+        int max = maxEntries;
+        if (entries.size() <= max || !evictLock.tryLock()) {
+            return;
+        }
+        try {
+            int excess = entries.size() - (int) (max * EVICT_TO);
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<Key, Entry>> candidates = new ArrayList<Map.Entry<Key, Entry>>(entries.entrySet());
+            candidates.sort((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed));
+            int evicted = 0;
+            for (int i = 0; i < candidates.size() && evicted < excess; i++) {
+                Map.Entry<Key, Entry> e = candidates.get(i);
+                if (entries.remove(e.getKey(), e.getValue())) {
+                    evicted++;
+                }
+            }
+            evictions.add(evicted);
+        } finally {
+            evictLock.unlock();
+        }
+    }
+}
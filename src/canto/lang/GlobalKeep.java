@@ -0,0 +1,311 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * GlobalKeep.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import canto.runtime.Log;
+import canto.runtime.RequestProfile;
+import canto.util.Holder;
+
+/**
+ * The table in which a site keeps the data of its global, static and cosmic
+ * definitions.  By default the table is unbounded and its entries never expire.
+ * It may be given a maximum number of entries, beyond which the least recently
+ * used values are evicted, and a time to live for values.  Only cached values
+ * are evicted or expire; the pointers and nested tables set up by keep
+ * directives stay until the site is reloaded.
+ *
+ * The limits for new tables are taken from the <code>canto.globalkeep.max</code>
+ * and <code>canto.globalkeep.ttl</code> (in seconds) system properties, unless
+ * set with <code>setDefaultLimits</code>.
+ */
+public class GlobalKeep extends AbstractMap<String, Object> implements ConcurrentMap<String, Object> {
+
+    private static final Log LOG = Log.getLogger(GlobalKeep.class);
+
+    public static final String MAX_PROPERTY = "canto.globalkeep.max";
+    public static final String TTL_PROPERTY = "canto.globalkeep.ttl";
+
+    /** When the table is full, values are evicted until it is this fraction full. **/
+    private static final double EVICT_TO = 0.9;
+
+    private static volatile int defaultMaxEntries = Integer.getInteger(MAX_PROPERTY, 0);
+    private static volatile long defaultTtlMillis = Long.getLong(TTL_PROPERTY, 0L) * 1000L;
+
+    /** Sets the limits for tables created from now on.  Zero means no limit. **/
+    public static void setDefaultLimits(int maxEntries, long ttlMillis) {
+        defaultMaxEntries = maxEntries;
+        defaultTtlMillis = ttlMillis;
+    }
+
+    public static int getDefaultMaxEntries() {
+        return defaultMaxEntries;
+    }
+
+    public static long getDefaultTtlMillis() {
+        return defaultTtlMillis;
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long expires;
+        volatile long lastUsed;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+            this.lastUsed = System.nanoTime();
+        }
+
+        boolean isEvictable() {
+            return value instanceof Holder;
+        }
+
+        boolean isExpired(long now) {
+            return expires > 0 && now >= expires;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public GlobalKeep() {
+        this(defaultMaxEntries, defaultTtlMillis);
+    }
+
+    public GlobalKeep(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /** Returns the entry for the passed key, or null if there is none or it has
+     *  expired, in which case it is removed.
+     */
+    private Entry liveEntry(Object key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            if (entries.remove(key, entry)) {
+                expirations.increment();
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    private Entry newEntry(Object value) {
+        if (value == null) {
+            throw new NullPointerException("null value in global keep");
+        }
+        long expires = 0L;
+        if (ttlMillis > 0 && value instanceof Holder) {
+            expires = System.currentTimeMillis() + ttlMillis;
+        }
+        return new Entry(value, expires);
+    }
+
+    private static Object valueOf(Entry entry) {
+        return (entry == null ? null : entry.value);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Entry entry = liveEntry(key);
+        if (entry == null) {
+            misses.increment();
+            RequestProfile.countKeepHit(false);
+            return null;
+        }
+        entry.lastUsed = System.nanoTime();
+        hits.increment();
+        RequestProfile.countKeepHit(true);
+        return entry.value;
+    }
+
+    /** Returns the value for the passed key without counting a hit or miss, for
+     *  reads made while storing a value rather than looking one up.
+     */
+    Object peek(Object key) {
+        return valueOf(liveEntry(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return liveEntry(key) != null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Entry old = entries.put(key, newEntry(value));
+        evictIfFull();
+        return valueOf(old);
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        Entry entry = newEntry(value);
+        while (true) {
+            Entry old = entries.putIfAbsent(key, entry);
+            if (old == null) {
+                evictIfFull();
+                return null;
+            } else if (!old.isExpired(System.currentTimeMillis())) {
+                return old.value;
+            } else if (entries.replace(key, old, entry)) {
+                expirations.increment();
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return valueOf(entries.remove(key));
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Entry entry = entries.get(key);
+        return entry != null && Objects.equals(entry.value, value) && entries.remove(key, entry);
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        Entry entry = liveEntry(key);
+        return entry != null && Objects.equals(entry.value, oldValue) && entries.replace(key, entry, newEntry(newValue));
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        Entry entry = liveEntry(key);
+        if (entry != null && entries.replace(key, entry, newEntry(value))) {
+            return entry.value;
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+                return new Iterator<Map.Entry<String, Object>>() {
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    public Map.Entry<String, Object> next() {
+                        Map.Entry<String, Entry> next = it.next();
+                        return new AbstractMap.SimpleImmutableEntry<String, Object>(next.getKey(), next.getValue().value);
+                    }
+
+                    public void remove() {
+                        it.remove();
+                    }
+                };
+            }
+
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    /** If the table has more than the maximum number of entries, evicts the least
+     *  recently used values.  Only one thread evicts at a time; the others go on
+     *  without waiting.
+     */
+    private void evictIfFull() {
+        if (maxEntries <= 0 || entries.size() <= maxEntries || !evictLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<Map.Entry<String, Entry>>();
+            for (Map.Entry<String, Entry> e: entries.entrySet()) {
+                Entry entry = e.getValue();
+                if (entry.isExpired(now)) {
+                    if (entries.remove(e.getKey(), entry)) {
+                        expirations.increment();
+                    }
+                } else if (entry.isEvictable()) {
+                    candidates.add(e);
+                }
+            }
+            int excess = entries.size() - (int) (maxEntries * EVICT_TO);
+            if (excess <= 0) {
+                return;
+            }
+            candidates.sort((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed));
+            int evicted = 0;
+            for (int i = 0; i < candidates.size() && evicted < excess; i++) {
+                Map.Entry<String, Entry> e = candidates.get(i);
+                if (entries.remove(e.getKey(), e.getValue())) {
+                    evicted++;
+                }
+            }
+            evictions.add(evicted);
+            LOG.debug("Evicted " + evicted + " values from global keep");
+        } finally {
+            evictLock.unlock();
+        }
+    }
+}
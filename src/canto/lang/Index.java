@@ -91,7 +91,12 @@ public class Index extends CantoNode {
     }
     
     public String getModifierString(Context context) {
-        String str = "[" + getKey(context) + "]";
+        return appendModifierString(new StringBuilder(), context).toString();
+    }
+
+    /** Appends the modifier string to the passed builder and returns the builder. **/
+    StringBuilder appendModifierString(StringBuilder sb, Context context) {
+        sb.append('[').append(getKey(context)).append(']');
         
         // find loop parameters
         CantoNode node = (CantoNode) getChild(0);
@@ -99,11 +104,11 @@ public class Index extends CantoNode {
             Instantiation.Kind kind = ((Instantiation) node).getKind();
             if (kind == Instantiation.Kind.FOR_PARAMETER || kind == Instantiation.Kind.FOR_PARAMETER_CHILD) {
                 Context resolutionContext = ((node instanceof ResolvedInstance) ? ((ResolvedInstance)node).getResolutionContext() : context);
-                str = str + "#" + resolutionContext.getLoopIndex();                  
+                sb.append('#').append(resolutionContext.getLoopIndex());                  
             }
         }
         
-        return str;
+        return sb;
     }
     public int getIndex(Context context) {
         return getIndexValue(context).getInt();
@@ -9,6 +9,8 @@
 package canto.lang;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import canto.runtime.*;
 import canto.util.Holder;
@@ -91,6 +93,54 @@ public class Instantiation extends Construction implements ValueGenerator /*, Co
     protected ConstructionList args = null;
     protected IndexList indexes = null;
 
+    //
+    // Inline cache for definition lookups
+    //
+
+    private static final int LOOKUP_CACHE_SIZE = 4;
+
+    /** Incremented whenever definitions may have been added, removed or replaced,
+     *  which invalidates every lookup cache entry created before.
+     */
+    private static final AtomicInteger lookupEpoch = new AtomicInteger();
+
+    /** Invalidates the cached lookups of every instantiation.  Called when a site
+     *  is reloaded.
+     */
+    public static void invalidateLookupCaches() {
+        lookupEpoch.incrementAndGet();
+        ScopeShape.reset();
+    }
+
+    private static final LongAdder lookupCacheHits = new LongAdder();
+
+    /** Returns the number of definition lookups answered from a lookup cache. **/
+    public static long getLookupCacheHits() {
+        return lookupCacheHits.sum();
+    }
+
+    private static final class LookupCacheEntry {
+        final ScopeShape shape;
+        final int size;
+        final boolean localScope;
+        final int epoch;
+        final Definition def;
+
+        LookupCacheEntry(ScopeShape shape, int size, boolean localScope, int epoch, Definition def) {
+            this.shape = shape;
+            this.size = size;
+            this.localScope = localScope;
+            this.epoch = epoch;
+            this.def = def;
+        }
+    }
+
+    /** Definitions previously found by lookup, keyed by the shape of the context
+     *  they were found in.
+     */
+    transient private volatile LookupCacheEntry[] lookupCache = null;
+    transient private int nextLookupCacheEntry = 0;
+
     public Instantiation() {
         super();
     }
@@ -776,6 +826,30 @@ public class Instantiation extends Construction implements ValueGenerator /*, Co
            if (isParam || isParamChild) {
                return context.getParameterDefinition((NameNode) reference, isContainerParameter(context));
        
+           } else if (resolver == null && isLookupCacheable()) {
+               Scope top = context.peek();
+               if (top.isContextualShape()) {
+                   return (Definition) lookup((NameNode) reference, context, false, resolver, localScope);
+               }
+               ScopeShape shape = top.getShape();
+               int size = context.size();
+               int epoch = lookupEpoch.get();
+               LookupCacheEntry[] entries = lookupCache;
+               if (entries != null) {
+                   for (LookupCacheEntry entry: entries) {
+                       if (entry != null && entry.shape == shape && entry.size == size
+                               && entry.localScope == localScope && entry.epoch == epoch) {
+                           lookupCacheHits.increment();
+                           return entry.def;
+                       }
+                   }
+               }
+               Definition def = (Definition) lookup((NameNode) reference, context, false, resolver, localScope);
+               if (def != null && !def.isFormalParam() && !def.isExternal() && !(def instanceof PartialDefinition)) {
+                   cacheLookup(new LookupCacheEntry(shape, size, localScope, epoch, def));
+               }
+               return def;
+
            } else {
                return (Definition) lookup((NameNode) reference, context, false, resolver, localScope);
            }
@@ -784,6 +858,30 @@ public class Instantiation extends Construction implements ValueGenerator /*, Co
        }
    }
 
+   /** Returns true if the result of looking up this instantiation's name depends
+    *  only on the definitions on the context stack, and not on arguments, indexes
+    *  or anything else that varies from one evaluation to the next.
+    */
+   private boolean isLookupCacheable() {
+       if (!(reference instanceof NameNode) || args != null || indexes != null) {
+           return false;
+       }
+       NameNode name = (NameNode) reference;
+       return (name.numParts() == 1 && !name.hasArguments() && !name.hasIndexes() && !name.isSpecial());
+   }
+
+   private synchronized void cacheLookup(LookupCacheEntry entry) {
+       LookupCacheEntry[] entries = lookupCache;
+       if (entries == null) {
+           entries = new LookupCacheEntry[LOOKUP_CACHE_SIZE];
+       } else {
+           entries = entries.clone();
+       }
+       entries[nextLookupCacheEntry] = entry;
+       nextLookupCacheEntry = (nextLookupCacheEntry + 1) % LOOKUP_CACHE_SIZE;
+       lookupCache = entries;
+   }
+
    /** Returns the fully dereferenced definition associated with this instance in the given context. */
    public Definition getUltimateDefinition(Context context) {
        Definition def = getDefinition(context);
@@ -56,6 +56,7 @@ public class NamedDefinition extends Definition {
     private boolean ownerOfDefs = false;
     private List<KeepNode> keeps = null;
     transient private List<KeepNode> keepsAndSuperKeeps = null;
+    transient FragmentCache.Profile fragmentProfile = null;
 
     public NamedDefinition(NameNode name) {
         super(name);
@@ -1793,15 +1794,21 @@ public class NamedDefinition extends Definition {
         this.keeps = keeps;
     }
 
-    /** Returns the definitions named in keep directives. This requires that the keep statement
-     *  list returned by getKeeps is in order from subclass up through superclasses.
+    /** Returns the definitions named in keep directives, followed by the child
+     *  definitions declared with a keep prefix, in this definition and then in its
+     *  superdefinitions, in the order they are declared.  This requires that the keep
+     *  statement list returned by getKeeps is in order from subclass up through
+     *  superclasses.
      **/
     public Definition[] keep_defs(Context context) {
         List<KeepNode> keeps = getKeeps();
         int size = (keeps == null ? 0 : keeps.size());
-        HashMap<String, Definition> defMap = new HashMap<String, Definition>(size);
+        LinkedHashMap<String, Definition> defMap = new LinkedHashMap<String, Definition>(size);
         if (keeps != null) {
             for (KeepNode k : keeps) {
+                if (isKeepPrefix(k)) {
+                    continue;
+                }
                 Definition[] kdefs = k.getDefs(context);
                 for (Definition d : kdefs) {
                     if (defMap.get(d.getName()) == null) {
@@ -1810,11 +1817,32 @@ public class NamedDefinition extends Definition {
                 }
             }
         }
+        for (NamedDefinition def = this; def != null; def = def.getSuperDefinition()) {
+            if (def.childDefs != null) {
+                for (Definition child : def.childDefs) {
+                    if (child instanceof NamedDefinition && ((NamedDefinition) child).keeps != null) {
+                        defMap.putIfAbsent(child.getName(), child);
+                    }
+                }
+            }
+        }
         Definition[] defs = new Definition[defMap.size()];
         
         return defMap.values().toArray(defs);
     }
 
+    /** Returns true if the passed keep node is the keep prefix of this definition
+     *  or a superdefinition, rather than a keep statement among its children.
+     */
+    private boolean isKeepPrefix(KeepNode k) {
+        for (NamedDefinition def = this; def != null; def = def.getSuperDefinition()) {
+            if (k.getDefName() != null && k.getDefName() == def.getNameNode()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public int resolve(ParameterList forParams) {
         int unresolved = super.resolve(forParams);
@@ -0,0 +1,106 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * OutputSink.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ *  An OutputSink receives the text of a construction list as it is produced,
+ *  rather than after the whole list has been concatenated into a single string.
+ *  A sink is handed to a Context for a particular definition (typically a page)
+ *  via <code>Context.setOutputSink</code>; the first construction of that
+ *  definition claims it.
+ *
+ *  Nothing is written until the construction produces a second piece of output,
+ *  so a definition that yields a single value (a collection, an object) is still
+ *  returned as data and not forced into text.
+ *
+ *  If the sink is also given the byte stream under its output, and the charset
+ *  the output is encoded in, static text is written to the stream as bytes that
+ *  are encoded once and kept with the text.
+ */
+public class OutputSink {
+
+    private Appendable out;
+    private OutputStream bytesOut = null;
+    private Charset charset = null;
+    private boolean streaming = false;
+
+    public OutputSink(Appendable out) {
+        this.out = out;
+    }
+
+    /** Constructs a sink that writes text to the passed output and static text
+     *  to the passed byte stream, which must be the stream the output writes to
+     *  and not buffer text ahead of it, encoded in the passed charset.
+     */
+    public OutputSink(Appendable out, OutputStream bytesOut, Charset charset) {
+        this.out = out;
+        this.bytesOut = bytesOut;
+        this.charset = charset;
+    }
+
+    /** Returns true if any output has been written to this sink. **/
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /** Writes text to the underlying output. **/
+    public void write(String str) throws Redirection {
+        if (str == null || str.length() == 0) {
+            return;
+        }
+        try {
+            out.append(str);
+            streaming = true;
+        } catch (IOException ioe) {
+            throw new Redirection(Redirection.STANDARD_ERROR, "Exception writing output: " + ioe.toString());
+        }
+    }
+
+    /** Writes static text, as encoded bytes if this sink has a byte stream. **/
+    public void write(StaticText text) throws Redirection {
+        if (bytesOut == null) {
+            write(text.getText());
+            return;
+        }
+        String str = text.getText();
+        if (str == null || str.length() == 0) {
+            return;
+        }
+        try {
+            text.writeEncodedText(bytesOut, charset);
+            streaming = true;
+        } catch (IOException ioe) {
+            throw new Redirection(Redirection.STANDARD_ERROR, "Exception writing output: " + ioe.toString());
+        }
+    }
+
+    /** Writes the string value of the passed data to the underlying output. **/
+    public void write(Object data) throws Redirection {
+        if (data != null) {
+            write(PrimitiveValue.getStringFor(data));
+        }
+        // a leading value that converts to an empty string still starts the stream
+        streaming = true;
+    }
+
+    public void flush() throws Redirection {
+        if (out instanceof Flushable) {
+            try {
+                ((Flushable) out).flush();
+            } catch (IOException ioe) {
+                throw new Redirection(Redirection.STANDARD_ERROR, "Exception flushing output: " + ioe.toString());
+            }
+        }
+    }
+}
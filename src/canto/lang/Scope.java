@@ -9,8 +9,11 @@
 package canto.lang;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import canto.runtime.Log;
+import canto.util.EmptyList;
 import canto.util.StateFactory;
 import canto.util.Holder;
 
@@ -20,16 +23,83 @@ import canto.util.Holder;
 public class Scope {
     private static final Log LOG = Log.getLogger(Scope.class);
     
-    protected static int scopesCreated = 0;
-    public static int getNumEntriesCreated() {
-        return scopesCreated;
+    protected static final LongAdder scopesCreated = new LongAdder();
+    public static long getNumEntriesCreated() {
+        return scopesCreated.sum();
     }
-    protected static int scopesCloned = 0;
-    public static int getNumEntriesCloned() {
-        return scopesCloned;
+    protected static final LongAdder scopesCloned = new LongAdder();
+    public static long getNumEntriesCloned() {
+        return scopesCloned.sum();
     }
 
     private final static int MAX_POINTER_CHAIN_LENGTH = 10; 
+
+    /** Parameter and argument lists are shared between scopes and with the code
+     *  that pushes them, and are never changed in place; a scope that needs to
+     *  change its lists replaces them with copies (see Context.pushParam).  These
+     *  are the lists for scopes without parameters or arguments.
+     */
+    private final static ParameterList EMPTY_PARAMS = new ParameterList(new EmptyList<DefParameter>());
+    private final static ConstructionList EMPTY_ARGS = new ConstructionList(new EmptyList<Construction>());
+
+    /** Locks guarding updates of the concurrent keep tables that read an entry
+     *  before writing it, striped by table and key so that updates of different
+     *  entries don't contend.
+     */
+    private final static Object[] KEEP_LOCKS = new Object[64];
+    static {
+        for (int i = 0; i < KEEP_LOCKS.length; i++) {
+            KEEP_LOCKS[i] = new Object();
+        }
+    }
+
+    /** Returns the lock guarding the entry for the passed key in the passed keep
+     *  table.  Tables that are not concurrent, such as a Canto table named in a
+     *  keep directive, are locked as a whole.
+     */
+    static Object keepLock(Map<String, ?> table, String key) {
+        if (table instanceof ConcurrentMap) {
+            int h = System.identityHashCode(table) * 31 + key.hashCode();
+            return KEEP_LOCKS[(h ^ (h >>> 16)) & (KEEP_LOCKS.length - 1)];
+        } else {
+            return table;
+        }
+    }
+
+    /** Puts a value in a keep table, locking the table only if it is not concurrent.
+     *  A concurrent table can't hold nulls, so a null value removes the entry,
+     *  which reads the same.
+     */
+    static <E> void keepPut(Map<String, E> table, String key, E value) {
+        if (table instanceof ConcurrentMap) {
+            if (value == null) {
+                table.remove(key);
+            } else {
+                table.put(key, value);
+            }
+        } else {
+            synchronized (table) {
+                table.put(key, value);
+            }
+        }
+    }
+
+    /** Puts all the passed values in a keep table, leaving out nulls if the table
+     *  is concurrent.
+     */
+    static <E> void keepPutAll(Map<String, E> table, Map<String, E> values) {
+        if (table instanceof ConcurrentMap) {
+            for (Map.Entry<String, E> entry: values.entrySet()) {
+                if (entry.getValue() != null) {
+                    table.put(entry.getKey(), entry.getValue());
+                }
+            }
+        } else {
+            synchronized (table) {
+                table.putAll(values);
+            }
+        }
+    }
     
     public Definition def;
     public Definition superdef;
@@ -47,50 +117,49 @@ public class Scope {
     private Map<String, Object> keepKeep = null;
  
     
-    int refCount = 0;   // number of previouss by other scopes to this one
+    int refCount = 0;   // number of references to this scope from its own context
+
+    // the context that made this scope, the only one that may recycle it
+    Context owner = null;
+
+    // true once another context refers to this scope, after which it is never
+    // recycled.  Other contexts may be on other threads, so they mark the scope
+    // rather than changing its refCount.
+    private volatile boolean shared = false;
     private int contextState = -1;
     private int loopIx = -1;
     private StateFactory loopIndexFactory;
-    int origParamsSize;
-    int origArgsSize;
 
-    
-    public Scope(Definition def, Definition superdef, ParameterList params, ConstructionList args, Map<String, Object> cache, Map<String, Object> globalKeep) {
-        scopesCreated++;
+    // true if params and args were made for this scope alone, and so may be
+    // changed in place
+    private boolean ownsLists = false;
 
-        this.def = def;
-        this.superdef = superdef;
-        this.params = (params != null ? (ParameterList) params.clone() : new ParameterList(Context.newArrayList(0, DefParameter.class)));
-        this.args = (args != null ? (ConstructionList) args.clone() : new ConstructionList(Context.newArrayList(0, Construction.class)));
-        origParamsSize = this.params.size();
-        origArgsSize = this.args.size();
-
-        // fill out the argument list with nulls if it's shorter than the parameter list
-        while (origArgsSize < origParamsSize) {
-            this.args.add(ConstructionList.MISSING_ARG());
-            origArgsSize++;
-        }
-        loopIndexFactory = new StateFactory();
+    // the definitions in this scope and the scopes below it, computed on
+    // demand; null means not yet computed
+    private ScopeShape shape = null;
 
-        this.cache = cache;
-        this.globalKeep = globalKeep;
+    
+    public Scope(Definition def, Definition superdef, ParameterList params, ConstructionList args, Map<String, Object> cache, Map<String, Object> globalKeep) {
+        scopesCreated.increment();
+        init(def, superdef, params, args, cache, globalKeep);
     }
 
     protected Scope(Scope scope, boolean copyKeep) {
-        scopesCreated++;
-        scopesCloned++;
+        scopesCreated.increment();
+        scopesCloned.increment();
 
         def = scope.def;
         superdef = scope.superdef;
-        params = (scope.params != null ? (ParameterList) scope.params.clone() : new ParameterList(Context.newArrayList(0, DefParameter.class)));
-        args = (scope.args != null ? (ConstructionList) scope.args.clone() : new ConstructionList(Context.newArrayList(0, Construction.class)));
+        params = (scope.params != null ? scope.params : EMPTY_PARAMS);
+        args = (scope.args != null ? scope.args : EMPTY_ARGS);
+        scope.ownsLists = false;
 
         // don't clone the previous to avoid duplicating references.  If the
         // clone needs to point somewhere, it has to be done explicitly.
 
         contextState = scope.contextState;
         loopIx = scope.loopIx;
-        loopIndexFactory = scope.loopIndexFactory;
+        loopIndexFactory = scope.getLoopIndexFactory();
 
         // the keep map is always shared
         keepMap = scope.keepMap;
@@ -105,25 +174,69 @@ public class Scope {
         }
     }
 
+    /** Sets up this scope for the passed definition and arguments, discarding
+     *  anything left from previous use.  The parameter and argument lists are
+     *  shared, not copied; see <code>EMPTY_PARAMS</code>.
+     */
     void init(Definition def, Definition superdef, ParameterList params, ConstructionList args, Map<String, Object> cache, Map<String, Object> globalKeep) {
         this.def = def;
         this.superdef = superdef;
-        this.params = (params != null ? (ParameterList) params.clone() : new ParameterList(Context.newArrayList(0, DefParameter.class)));
-        this.args = (args != null ? (ConstructionList) args.clone() : new ConstructionList(Context.newArrayList(0, Construction.class)));
+        shape = null;
+        this.params = (params != null ? params : EMPTY_PARAMS);
+        this.args = (args != null ? args : EMPTY_ARGS);
 
-        origParamsSize = this.params.size();
-        origArgsSize = this.args.size();
+        ownsLists = false;
 
         // fill out the argument list with nulls if it's shorter than the parameter list
-        while (origArgsSize < origParamsSize) {
-            this.args.add(ConstructionList.MISSING_ARG());
-            origArgsSize++;
+        int numParams = this.params.size();
+        if (this.args.size() < numParams) {
+            ConstructionList paddedArgs = new ConstructionList(this.args);
+            while (paddedArgs.size() < numParams) {
+                paddedArgs.add(ConstructionList.MISSING_ARG());
+            }
+            this.args = paddedArgs;
         }
 
+        contextState = -1;
+        loopIx = -1;
+        loopIndexFactory = null;
+
         this.cache = cache;
+        this.globalKeep = globalKeep;
+        this.keepMap = null;
         this.keepKeep = null;
     }
 
+    /** Adds a parameter and its argument to this scope, first copying the lists
+     *  if they are shared.
+     */
+    void addParam(DefParameter param, Construction arg) {
+        if (!ownsLists) {
+            copyLists();
+        }
+        params.add(param);
+        args.add(arg);
+    }
+
+    /** Removes the last parameter and argument added to this scope. **/
+    void removeParam() {
+        int n = params.size();
+        if (n > 0) {
+            if (!ownsLists) {
+                copyLists();
+            }
+            params.remove(n - 1);
+            // this scope may have started with fewer args than params
+            args.remove(args.size() - 1);
+        }
+    }
+
+    private void copyLists() {
+        params = new ParameterList(Context.newArrayList(params));
+        args = new ConstructionList(Context.newArrayList(args));
+        ownsLists = true;
+    }
+
     public Object get(String key) {
         if (cache == null) {
             return null;
@@ -134,39 +247,36 @@ public class Scope {
     
     public void put(String key, Object value) {
         if (cache == null) {
-            cache = new HashMap<String, Object>();
+            cache = Context.newConcurrentMap(Object.class);
+        }
+        // the keep is concurrent, and so can't hold nulls; a missing entry
+        // reads the same
+        if (value == null) {
+            cache.remove(key);
+        } else {
+            cache.put(key, value);
         }
-        cache.put(key, value);
     }
 
     void copy(Scope scope, boolean copyKeep) {
         if (refCount > 0) {
             throw new RuntimeException("Attempt to copy over scope with non-zero refCount");
+        } else if (shared) {
+            throw new RuntimeException("Attempt to copy over scope shared with another context");
         }
 
         def = scope.def;
         superdef = scope.superdef;
-        if (params != null) {
-            params.clear();
-            if (scope.params != null) {
-                params.addAll(scope.params);
-            }
-        } else {
-            params = (scope.params != null ? (ParameterList) scope.params.clone() : new ParameterList(Context.newArrayList(0, DefParameter.class)));
-        }
-
-        if (args != null) {
-            args.clear();
-            if (scope.args != null) {
-                args.addAll(scope.args);
-            }
-        } else {
-            args = (scope.args != null ? (ConstructionList) scope.args.clone() : new ConstructionList(Context.newArrayList(0, Construction.class)));
-        }
+        shape = null;
+        params = (scope.params != null ? scope.params : EMPTY_PARAMS);
+        args = (scope.args != null ? scope.args : EMPTY_ARGS);
+        ownsLists = false;
+        scope.ownsLists = false;
 
         contextState = scope.contextState;
         loopIx = scope.loopIx;
-        loopIndexFactory = scope.loopIndexFactory;
+        loopIndexFactory = scope.getLoopIndexFactory();
+        globalKeep = scope.globalKeep;
 
         // for now, let everybody write (yikes!)
         //scope.readOnlyKeep = (cache != null ? cache : readOnlyKeep);
@@ -199,9 +309,7 @@ public class Scope {
     void addKeeps(Scope scope) {
         if (cache != null) {
             if (scope.cache != null && scope.cache != cache) {
-                synchronized (cache) {
-                    cache.putAll(scope.cache);
-                }
+                keepPutAll(cache, scope.cache);
             }
         } else {
             cache = scope.cache;
@@ -209,9 +317,7 @@ public class Scope {
 
         if (keepKeep != null) {
             if (scope.keepKeep != null && scope.keepKeep != keepKeep) {
-                synchronized (keepKeep) {
-                    keepKeep.putAll(scope.keepKeep);
-                }
+                keepPutAll(keepKeep, scope.keepKeep);
             }
         } else {
             keepKeep = scope.keepKeep;
@@ -219,9 +325,7 @@ public class Scope {
 
         if (keepMap != null) {
             if (scope.keepMap != null && scope.keepMap != keepMap) {
-                synchronized (keepMap) {
-                    keepMap.putAll(scope.keepMap);
-                }
+                keepPutAll(keepMap, scope.keepMap);
             }
         } else {
             keepMap = scope.keepMap;
@@ -229,27 +333,31 @@ public class Scope {
 
     }
 
+    /** Drops everything this scope refers to, so that it can be reused.  Lists
+     *  and tables are released rather than emptied, because they may be shared
+     *  with other scopes or held by instances made in this scope.
+     */
     public void clear() {
         if (refCount > 0) {
             throw new RuntimeException("Attempt to clear scope with non-zero refCount");
+        } else if (shared) {
+            throw new RuntimeException("Attempt to clear scope shared with another context");
         }
 
         def = null;
         superdef = null;
-        if (params != null) {
-            params.clear();
-        }
-        if (args != null) {
-            args.clear();
-        }
-        origParamsSize = 0;
-        origArgsSize = 0;
+        params = null;
+        args = null;
+        ownsLists = false;
         
         setPrevious(null);
 
         keepMap = null;
         cache = null;
         keepKeep = null;
+        globalKeep = null;
+        loopIndexFactory = null;
+        owner = null;
     }
 
     private Map<String, Object> getGlobalKeep() {
@@ -262,46 +370,41 @@ public class Scope {
         }
 
         if (keepMap == null) {
-            keepMap = Context.newHashMap(Pointer.class);
-        }
-
-        synchronized (keepMap) {
-            String key = (keyObj == null ? null : (keyObj instanceof Value ? ((Value) keyObj).getString() : keyObj.toString())); 
-            if (key != null) {
-                if (!key.endsWith(".")) {
-                    if (ri != null) {
-                        Pointer p = new Pointer(ri, riAs, keyObj, table);
-                        String keepKey = ri.getName();
-                        keepMap.put(keepKey, p);
-                        keepMap.put(key, p);
-
-                        String contextKey = def.getFullName() + '.' + keepKey;
-                        contextKey = contextKey.substring(contextKey.indexOf('.') + 1);
-                        Pointer contextp = new Pointer(ri, riAs, contextKey, contextKeep);
-                        contextKeepMap.put(contextKey, contextp);
-                    }
-                } else {
-                    if (ri != null) {
-                        String name = ri.getName();
-                        String keepKey = key + name;
-                        Pointer p = new Pointer(ri, keepKey, table);
-                        keepMap.put(keepKey, p);
-
-                        String contextKey = def.getFullName() + '.' + keepKey;
-                        contextKey = contextKey.substring(contextKey.indexOf('.') + 1);
-                        Pointer contextp = new Pointer(ri, contextKey, contextKeep);
-                        contextKeepMap.put(contextKey, contextp);
-                    }
-                }
+            keepMap = Context.newConcurrentMap(Pointer.class);
+        }
 
+        String key = (keyObj == null ? null : (keyObj instanceof Value ? ((Value) keyObj).getString() : keyObj.toString())); 
+        if (key != null) {
+            if (!key.endsWith(".")) {
+                if (ri != null) {
+                    Pointer p = new Pointer(ri, riAs, keyObj, table);
+                    String keepKey = ri.getName();
+                    keepPut(keepMap, keepKey, p);
+                    keepPut(keepMap, key, p);
+
+                    String contextKey = def.getFullName() + '.' + keepKey;
+                    contextKey = contextKey.substring(contextKey.indexOf('.') + 1);
+                    Pointer contextp = new Pointer(ri, riAs, contextKey, contextKeep);
+                    keepPut(contextKeepMap, contextKey, contextp);
+                }
+            } else {
+                if (ri != null) {
+                    String name = ri.getName();
+                    String keepKey = key + name;
+                    Pointer p = new Pointer(ri, keepKey, table);
+                    keepPut(keepMap, keepKey, p);
+
+                    String contextKey = def.getFullName() + '.' + keepKey;
+                    contextKey = contextKey.substring(contextKey.indexOf('.') + 1);
+                    Pointer contextp = new Pointer(ri, contextKey, contextKeep);
+                    keepPut(contextKeepMap, contextKey, contextp);
+                }
             }
         }
     }
 
     public void removeKeep(String name) {
-        synchronized (keepMap) {
-            keepMap.remove(name);
-        }
+        keepMap.remove(name);
     }
 
     /** Returns true if a parameter of the specified name is present in this scope. */
@@ -362,7 +465,7 @@ public class Scope {
         Map<String, Object> c = cache;
         Map<String, Object> globalKeep = getGlobalKeep();
         
-        if (globalKeep != null && globalKey != null && globalKeep.get(globalKey) != null) {
+        if (globalKeep != null && globalKey != null && globalKeep.containsKey(globalKey)) {
             c = globalKeep;
         }
         if (c == null && (keepMap == null || keepMap.get(key) == null)) {
@@ -504,7 +607,7 @@ public class Scope {
 
         // continue up the context chain
         if (data == null && (def == null || !getDefHolder) && !local && previous != null && !this.def.hasChildDefinition(key, localAllowed) && !NameNode.isSpecialName(key)) {
-            return previous.get(key, globalKey, args, getDefHolder, false, (localAllowed && previous.def.getOwner().equals(this.def)));
+            return previous.get(key, globalKey, args, getDefHolder, false, (localAllowed && this.def.equals(previous.def.getOwner())));
         }
 
         // return either the definition or the data, depending on the passed flag
@@ -553,7 +656,7 @@ public class Scope {
         boolean kept = false;
         Definition nominalDef = holder.nominalDef;
         Map<String, Object> localKeep = getKeep();
-        synchronized (localKeep) {
+        synchronized (keepLock(localKeep, key)) {
             if (localPut(localKeep, keepMap, key, holder, true)) {
                 kept = true;
             }
@@ -562,8 +665,8 @@ public class Scope {
         if (nominalDef != null) {
             if (nominalDef.isGlobal() && nominalDef.getName().equals(key)) {
                 if (globalKeep != null) {
-                    synchronized (globalKeep) {
-                        String globalKey = makeGlobalKey(nominalDef.getFullNameInContext(context));
+                    String globalKey = makeGlobalKey(nominalDef.getFullNameInContext(context));
+                    synchronized (keepLock(globalKeep, globalKey)) {
                         localPut(globalKeep, null, globalKey, holder, true);
                     }
                 } else {
@@ -609,8 +712,8 @@ public class Scope {
                     if (scope != null && ownerKeep != null) {
                         String ownerKey = ownerName + "." + key;
                         if (keep != null || ownerKeep.containsKey(ownerKey)) {
-                            synchronized (ownerKeep) {
-                                scope.localPut(ownerKeep, null, ownerName + "." + key, holder, false);
+                            synchronized (keepLock(ownerKeep, ownerKey)) {
+                                scope.localPut(ownerKeep, null, ownerKey, holder, false);
                             }
                         }
                     }
@@ -656,10 +759,17 @@ public class Scope {
     }
 
 
+    /** Reads a table on the way to storing a value in it, without counting the
+     *  read as a global keep hit or miss.
+     */
+    private static Object peek(Map<String, Object> cache, String key) {
+        return (cache instanceof GlobalKeep ? ((GlobalKeep) cache).peek(key) : cache.get(key));
+    }
+
     private boolean localPut(Map<String, Object> cache, Map<String, Pointer> keepMap, String key, Holder holder, boolean updateContainerChild) {
         boolean kept = false;
         Pointer p = null;
-        Object oldData = cache.get(key);
+        Object oldData = peek(cache, key);
 
         // if this is the first scope, set up any required pointers for keep tables
         // and modifiers, save the data and return
@@ -671,23 +781,21 @@ public class Scope {
                 if (p != null) {
                     Map<String, Object> keepTable = p.cache;
                     if (keepTable != cache || !key.equals(p.getKey())) {
-                        synchronized (keepTable) {
-                            p = new Pointer(p.ri, p.riAs, p.getKey(), keepTable);
-
-                            // two scenarios: keep as and cached identity.  With keep as, we want the
-                            // pointer def; with cached identity, we want the holder def.  We can tell
-                            // cached identities because the def and nominalDef in the holder are different.
-                            Definition newDef;
-                            if (holder.def != null && !holder.def.equals(holder.nominalDef)) {
-                                newDef = holder.def; 
-                            } else {
-                                newDef = p.riAs.getDefinition();
-                            }
-                            ConstructionList newArgs = (newDef == holder.def ? holder.args : null);
-                            Holder newHolder = new Holder(holder.nominalDef, holder.nominalArgs, newDef, newArgs, null, holder.data, holder.resolvedInstance);
-                            keepTable.put(p.getKey(), newHolder);
-                            newData = p;
+                        p = new Pointer(p.ri, p.riAs, p.getKey(), keepTable);
+
+                        // two scenarios: keep as and cached identity.  With keep as, we want the
+                        // pointer def; with cached identity, we want the holder def.  We can tell
+                        // cached identities because the def and nominalDef in the holder are different.
+                        Definition newDef;
+                        if (holder.def != null && !holder.def.equals(holder.nominalDef)) {
+                            newDef = holder.def; 
+                        } else {
+                            newDef = p.riAs.getDefinition();
                         }
+                        ConstructionList newArgs = (newDef == holder.def ? holder.args : null);
+                        Holder newHolder = new Holder(holder.nominalDef, holder.nominalArgs, newDef, newArgs, null, holder.data, holder.resolvedInstance);
+                        keepPut(keepTable, p.getKey(), newHolder);
+                        newData = p;
                     }
 
                     kept = true;
@@ -723,14 +831,9 @@ public class Scope {
                 p = (Pointer) nextData;
                 nextKeep = p.cache;
                 nextKey = p.getKey();
-                nextData = nextKeep.get(nextKey);
-            }
-            synchronized (nextKeep) {
-                //if (def != null) {
-                //    data = new Holder(def, args, context, data);
-                //}
-                nextKeep.put(nextKey, holder);
+                nextData = peek(nextKeep, nextKey);
             }
+            keepPut(nextKeep, nextKey, holder);
     
         }
         // if the key has multiple parts, it represents a container and child.  If we 
@@ -744,7 +847,7 @@ public class Scope {
             if (ix > 0) {
                 String prefix = key.substring(0, ix);
                 String childKey = key.substring(ix + 1);
-                Object keepObj = cache.get(prefix + ".keep");
+                Object keepObj = peek(cache, prefix + ".keep");
                 if (keepObj instanceof Holder) {
                     keepObj = ((Holder) keepObj).data;
                 }
@@ -782,10 +885,18 @@ public class Scope {
         }
     }
 
+    /** Loop modifiers for the most common loop indexes, built once. **/
+    private static final String[] LOOP_MODIFIERS = new String[256];
+    static {
+        for (int i = 0; i < LOOP_MODIFIERS.length; i++) {
+            LOOP_MODIFIERS[i] = "#" + i;
+        }
+    }
+
     private String getLoopModifier() {
         int loopIx = getLoopIndex();
         if (loopIx >= 0) {
-            return "#" + String.valueOf(loopIx);
+            return (loopIx < LOOP_MODIFIERS.length ? LOOP_MODIFIERS[loopIx] : "#" + loopIx);
         } else {
             return null;
         }
@@ -793,7 +904,7 @@ public class Scope {
 
     public Map<String, Object> getKeep() {
         if (cache == null) {
-            cache = Context.newHashMap(Object.class);
+            cache = Context.newConcurrentMap(Object.class);
         }
         return cache;
     }
@@ -801,7 +912,7 @@ public class Scope {
     @SuppressWarnings("unchecked")
     Map<String, Object> getKeepKeep() {
         if (keepMap == null) {
-            keepMap = Context.newHashMap(Pointer.class);
+            keepMap = Context.newConcurrentMap(Pointer.class);
         }
 
         if (keepKeep == null) {
@@ -810,23 +921,28 @@ public class Scope {
             if (containerScope != null && containerScope != this) {
                 String key = def.getName() + ".keep";
                 Map<String, Object> containerKeep = containerScope.getKeep();
-                synchronized (containerKeep) {
-                    keepKeep = (Map<String, Object>) containerKeep.get(key);
-                    if (keepKeep == null) {
-                        Map<String, Object> containerKeepKeep = containerScope.getKeepKeep();
-                        keepKeep = (Map<String, Object>) containerKeepKeep.get(key);
+                keepKeep = (Map<String, Object>) containerKeep.get(key);
+                if (keepKeep == null) {
+                    // the container's keep keep is got before locking, so that
+                    // no other lock is taken while holding this one
+                    Map<String, Object> containerKeepKeep = containerScope.getKeepKeep();
+                    synchronized (keepLock(containerKeep, key)) {
+                        keepKeep = (Map<String, Object>) containerKeep.get(key);
                         if (keepKeep == null) {
-                            keepKeep = Context.newHashMap(Object.class);
-                            if (def.getDurability() != Definition.Durability.DYNAMIC) {
-                                containerKeep.put(key, keepKeep);
-                                containerKeepKeep.put(key, keepKeep);
+                            keepKeep = (Map<String, Object>) containerKeepKeep.get(key);
+                            if (keepKeep == null) {
+                                keepKeep = Context.newConcurrentMap(Object.class);
+                                if (def.getDurability() != Definition.Durability.DYNAMIC) {
+                                    containerKeep.put(key, keepKeep);
+                                    containerKeepKeep.put(key, keepKeep);
+                                }
+                                keepKeep.put("from", keepMap);
                             }
-                            keepKeep.put("from", keepMap);
                         }
                     }
                 }
             } else {
-                keepKeep = Context.newHashMap(Object.class);
+                keepKeep = Context.newConcurrentMap(Object.class);
             }            
         } else {
             // make sure the keep cache is cached in the owner scope 
@@ -850,24 +966,24 @@ public class Scope {
     @SuppressWarnings("unchecked")
     void addKeepKeep(Map<String, Object> cache) {
         if (keepKeep == null) {
-            keepKeep = Context.newHashMap(Object.class);
+            keepKeep = Context.newConcurrentMap(Object.class);
         }
         Set<Map.Entry<String, Object>> entrySet = cache.entrySet();
         Iterator<Map.Entry<String, Object>> it = entrySet.iterator();
         while (it.hasNext()) {
             Map.Entry<String, Object> scope = it.next();
             String key = scope.getKey();
-            if (!key.equals("from")) {
-                keepKeep.put(scope.getKey(), scope.getValue());
+            if (!key.equals("from") && scope.getValue() != null) {
+                keepKeep.put(key, scope.getValue());
             }
         }
         if (keepMap == null) {
-            keepMap = Context.newHashMap(Pointer.class);
+            keepMap = Context.newConcurrentMap(Pointer.class);
             keepKeep.put("from", keepMap);
         }
         Map<String, Pointer> map = (Map<String, Pointer>) cache.get("from");
         if (map != null) {
-            keepMap.putAll(map);
+            keepPutAll(keepMap, map);
         }
     }
 
@@ -940,7 +1056,17 @@ public class Scope {
     }
 
     void advanceLoopIndex() {
-        loopIx = loopIndexFactory.nextState();
+        loopIx = getLoopIndexFactory().nextState();
+    }
+
+    /** Returns the factory for loop indexes, which is made when first needed
+     *  and shared with copies of this scope.
+     */
+    private StateFactory getLoopIndexFactory() {
+        if (loopIndexFactory == null) {
+            loopIndexFactory = new StateFactory();
+        }
+        return loopIndexFactory;
     }
 
     void resetLoopIndex() {
@@ -957,13 +1083,44 @@ public class Scope {
 
     void setPrevious(Scope scope) {
         // decrement the ref count in the old previous
-        if (previous != null) {
+        if (previous != null && previous.owner == owner) {
             previous.refCount--;
         }
         previous = scope;
         if (previous != null) {
-            previous.refCount++;
+            if (previous.owner == owner) {
+                previous.refCount++;
+            } else {
+                previous.share();
+            }
         }
+        shape = null;
+    }
+
+    /** Returns the shape of the definitions in this scope and all the scopes
+     *  below it.  Name resolution depends only on the definitions on the stack,
+     *  so a name that resolves to a definition in a scope with a given shape
+     *  resolves to the same definition in any other scope with that shape, unless
+     *  the shape is contextual (see <code>isContextualShape</code>).
+     */
+    ScopeShape getShape() {
+        ScopeShape s = shape;
+        if (s == null) {
+            s = (previous == null ? ScopeShape.root() : previous.getShape()).child(def, superdef);
+            shape = s;
+        }
+        return s;
+    }
+
+    /** Returns true if the stack at this scope includes an alias or identity, which
+     *  may resolve differently depending on arguments even when the shape matches.
+     */
+    boolean isContextualShape() {
+        return getShape().isContextual();
+    }
+
+    void resetShape() {
+        shape = null;
     }
     void incRefCount() {
         refCount++;
@@ -973,6 +1130,17 @@ public class Scope {
         refCount--;
     }
 
+    /** Marks this scope as referred to by a context other than its owner. **/
+    void share() {
+        if (!shared) {
+            shared = true;
+        }
+    }
+
+    boolean isShared() {
+        return shared;
+    }
+
     static String makeGlobalKey(String fullName) {
         return fullName;
     }
@@ -0,0 +1,161 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ScopeShape.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The definitions and superdefinitions in a scope and all the scopes below it.
+ *
+ * Shapes are interned: the shape of a scope is a child of the shape of the
+ * scope below it, and there is only one child for a given definition and
+ * superdefinition, compared by identity.  So two scopes have the same shape
+ * object exactly when the same definitions are on the stack at and below them,
+ * and shapes may be compared with <code>==</code>.
+ *
+ * Shapes hold on to the definitions in them.  They are discarded, and new ones
+ * started, when lookup caches are invalidated or when too many have been made,
+ * which can happen when definitions are created on the fly.  A scope keeps the
+ * shape it already has, so this costs nothing but cache misses.
+ */
+final class ScopeShape {
+
+    /** Past this many children, they are kept in a map rather than a list. **/
+    private static final int MAX_LISTED_CHILDREN = 8;
+
+    /** Past this many shapes, they are discarded and new ones started. **/
+    private static final int MAX_SHAPES = 1 << 16;
+
+    private static final ScopeShape[] NO_CHILDREN = new ScopeShape[0];
+
+    private static volatile ScopeShape root = new ScopeShape(null, null, null);
+
+    /** Returns the shape below the bottom scope of every stack. **/
+    static ScopeShape root() {
+        return root;
+    }
+
+    /** Discards every shape made so far. **/
+    static void reset() {
+        root = new ScopeShape(null, null, null);
+    }
+
+    /** A definition and superdefinition, compared by identity. **/
+    private static final class Key {
+        private final Definition def;
+        private final Definition superdef;
+
+        Key(Definition def, Definition superdef) {
+            this.def = def;
+            this.superdef = superdef;
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(def) * 31 + System.identityHashCode(superdef);
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return key.def == def && key.superdef == superdef;
+        }
+    }
+
+    private final Definition def;
+    private final Definition superdef;
+    private final boolean contextual;
+
+    /** The number of shapes under the root, counted in the root. **/
+    private final AtomicInteger count;
+
+    private volatile ScopeShape[] children = NO_CHILDREN;
+    private volatile Map<Key, ScopeShape> childMap = null;
+
+    private ScopeShape(ScopeShape parent, Definition def, Definition superdef) {
+        this.def = def;
+        this.superdef = superdef;
+        this.contextual = (parent != null && parent.contextual) || isContextual(def) || isContextual(superdef);
+        this.count = (parent == null ? new AtomicInteger() : parent.count);
+    }
+
+    private static boolean isContextual(Definition def) {
+        return def != null && (def.isAlias() || def.isIdentity());
+    }
+
+    /** Returns the shape of a scope for the passed definition and superdefinition
+     *  pushed on a scope with this shape.
+     */
+    ScopeShape child(Definition def, Definition superdef) {
+        Map<Key, ScopeShape> map = childMap;
+        if (map != null) {
+            ScopeShape shape = map.get(new Key(def, superdef));
+            if (shape != null) {
+                return shape;
+            }
+        } else {
+            for (ScopeShape shape: children) {
+                if (shape.def == def && shape.superdef == superdef) {
+                    return shape;
+                }
+            }
+        }
+        return addChild(def, superdef);
+    }
+
+    private synchronized ScopeShape addChild(Definition def, Definition superdef) {
+        Key key = new Key(def, superdef);
+        if (childMap != null) {
+            ScopeShape shape = childMap.get(key);
+            if (shape == null) {
+                shape = newChild(def, superdef);
+                childMap.put(key, shape);
+            }
+            return shape;
+        }
+        for (ScopeShape shape: children) {
+            if (shape.def == def && shape.superdef == superdef) {
+                return shape;
+            }
+        }
+        ScopeShape shape = newChild(def, superdef);
+        if (children.length < MAX_LISTED_CHILDREN) {
+            ScopeShape[] newChildren = Arrays.copyOf(children, children.length + 1);
+            newChildren[children.length] = shape;
+            children = newChildren;
+        } else {
+            Map<Key, ScopeShape> map = new ConcurrentHashMap<Key, ScopeShape>();
+            for (ScopeShape child: children) {
+                map.put(new Key(child.def, child.superdef), child);
+            }
+            map.put(key, shape);
+            childMap = map;
+            children = NO_CHILDREN;
+        }
+        return shape;
+    }
+
+    private ScopeShape newChild(Definition def, Definition superdef) {
+        if (count.incrementAndGet() > MAX_SHAPES && root.count == count) {
+            reset();
+        }
+        return new ScopeShape(this, def, superdef);
+    }
+
+    /** Returns true if the stack includes an alias or identity, which may resolve
+     *  differently depending on arguments even when the shape matches.
+     */
+    boolean isContextual() {
+        return contextual;
+    }
+}
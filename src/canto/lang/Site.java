@@ -9,6 +9,7 @@
 package canto.lang;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import canto.runtime.Log;
 
@@ -23,13 +24,19 @@ public class Site extends ComplexDefinition {
     public static Access defaultExternalAccess = Access.PUBLIC;
     public static Durability defaultExternalDurability = Durability.DYNAMIC;
 
+    /** Marks a name remembered as not defined in a definition table. **/
+    private static final Object NOT_DEFINED = new Object();
+
+    /** The most lookups remembered for any one owner. **/
+    private static final int MAX_RESOLVED_NAMES = 4096;
+
     protected String domainName = Name.SITE;
     protected String sitePrefix = "";
     protected List<Name> adopts = null;
     protected List<ExternStatement> externs = null;
-    protected Core core = null;
-    protected site_config siteConfig = null;
-    protected Map<String, Object> globalKeep = null;
+    transient protected Core core = null;
+    transient protected site_config siteConfig = null;
+    transient protected Map<String, Object> globalKeep = null;
 
     private boolean closed = false;
 
@@ -68,12 +75,7 @@ public class Site extends ComplexDefinition {
         
         String name = getName();
         Map<String, Map<String, Object>> globalKeepTable = core.getGlobalKeepTable();
-        Map<String, Object> globalKeep = globalKeepTable.get(name);
-        if (globalKeep == null) {
-            globalKeep = new HashMap<String, Object>();
-            globalKeepTable.put(name,  globalKeep);
-        }
-        setGlobalKeep(globalKeep);
+        setGlobalKeep(globalKeepTable.computeIfAbsent(name, k -> new GlobalKeep()));
     }
 
     public DefinitionTable setNewDefinitionTable() {
@@ -174,6 +176,18 @@ public class Site extends ComplexDefinition {
         if (siteConfig == null) {
             siteConfig = site.siteConfig;
         }
+        clearResolvedDefinitions();
+    }
+
+    /** Discards the remembered results of definition lookups in this site's
+     *  definition table.  Called when a change to the site's externs or adopted
+     *  sites, or a reload, could change what a name resolves to.
+     */
+    public void clearResolvedDefinitions() {
+        DefinitionTable defTable = getDefinitionTable();
+        if (defTable instanceof DefinitionHash) {
+            ((DefinitionHash) defTable).clearResolved();
+        }
     }
 
 
@@ -198,6 +212,7 @@ public class Site extends ComplexDefinition {
                     externs.addAll(externList);
                 }
             }
+            clearResolvedDefinitions();
         }
     }
 
@@ -419,6 +434,7 @@ public class Site extends ComplexDefinition {
             adopts = new ArrayList<Name>();
         }
         adopts.add(adopt);
+        clearResolvedDefinitions();
     } 
 
     /** Returns the external definition for the indicated name. */
@@ -463,6 +479,7 @@ public class Site extends ComplexDefinition {
             externs = new ArrayList<ExternStatement>();
         }
         externs.add(extern);
+        clearResolvedDefinitions();
     }
 
     public boolean isExtern(Name name) {
@@ -495,10 +512,79 @@ public class Site extends ComplexDefinition {
 
         private static final long serialVersionUID = 1L;
 
+        /** The results of getDefinition, including names found not to be defined,
+         *  by owner and name.  The owner is keyed by the site itself for sites and
+         *  by its full name otherwise.
+         */
+        private transient volatile ConcurrentHashMap<Object, ConcurrentHashMap<String, Object>> resolved = null;
+
         public DefinitionHash() {
             super();
         }
 
+        /** Discards every remembered lookup. **/
+        void clearResolved() {
+            resolved = null;
+        }
+
+        @Override
+        public Definition put(String key, Definition def) {
+            Definition oldDef = super.put(key, def);
+            clearResolved();
+            return oldDef;
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Definition> defs) {
+            super.putAll(defs);
+            clearResolved();
+        }
+
+        @Override
+        public Definition remove(Object key) {
+            Definition oldDef = super.remove(key);
+            clearResolved();
+            return oldDef;
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            clearResolved();
+        }
+
+        /** Returns true if the result of looking up the passed name on behalf of
+         *  the passed owner is remembered.
+         */
+        boolean isResolved(Definition owner, String name) {
+            ConcurrentHashMap<Object, ConcurrentHashMap<String, Object>> resolvedByOwner = resolved;
+            if (resolvedByOwner == null) {
+                return false;
+            }
+            Object ownerKey = (owner instanceof Site ? owner : (owner == null ? "" : owner.getFullName()));
+            ConcurrentHashMap<String, Object> names = resolvedByOwner.get(ownerKey);
+            return (names != null && names.containsKey(name));
+        }
+
+        /** Returns the remembered lookups for the passed owner. **/
+        private ConcurrentHashMap<String, Object> getResolved(Definition owner, String ownerName) {
+            ConcurrentHashMap<Object, ConcurrentHashMap<String, Object>> resolvedByOwner = resolved;
+            if (resolvedByOwner == null) {
+                resolvedByOwner = new ConcurrentHashMap<Object, ConcurrentHashMap<String, Object>>();
+                resolved = resolvedByOwner;
+            }
+            Object ownerKey = (owner instanceof Site ? owner : ownerName);
+            ConcurrentHashMap<String, Object> names = resolvedByOwner.get(ownerKey);
+            if (names == null) {
+                names = new ConcurrentHashMap<String, Object>();
+                ConcurrentHashMap<String, Object> existing = resolvedByOwner.putIfAbsent(ownerKey, names);
+                if (existing != null) {
+                    names = existing;
+                }
+            }
+            return names;
+        }
+
         public void addDefinition(Definition def, boolean replace) throws DuplicateDefinitionException {
         	String fullName = def.getFullName();
             if (fullName == null || fullName.length() == 0) {
@@ -546,6 +632,19 @@ public class Site extends ComplexDefinition {
         public Definition getDefinition(Definition owner, NameNode node) {
             String ownerName = (owner == null ? "" : owner.getFullName());
             String name = node.getName();
+
+            // lookups are remembered, except on behalf of external objects, whose
+            // children depend on the object
+            ConcurrentHashMap<String, Object> resolvedNames = null;
+            if (!(owner instanceof ExternalDefinition)) {
+                resolvedNames = getResolved(owner, ownerName);
+                Object resolvedDef = resolvedNames.get(name);
+                if (resolvedDef != null) {
+                    return (resolvedDef == NOT_DEFINED ? null : (Definition) resolvedDef);
+                }
+            }
+            String resolvedName = name;
+
             boolean nameHasPrefix = false;
             boolean ownerHasPrefix = false;
             if (sitePrefix.length() > 0) {
@@ -593,8 +692,9 @@ public class Site extends ComplexDefinition {
             if (entry == null) {
                 entry = getExternalDefinition(owner, node, null, null);
                 if (entry != null) {
-                    // Removed commented vlog call
-//                       put(name, entry);
+                    // external definitions are created for the node, so they
+                    // aren't remembered
+                    return (Definition) entry;
 
                 } else {
                     
@@ -621,15 +721,19 @@ public class Site extends ComplexDefinition {
                 }
             }
 
-            if (entry == null) {
-                return null;
-            } else if (entry instanceof List) {
-                return (Definition) ((List<Definition>) entry).get(0);
+            if (entry instanceof List) {
+                entry = ((List<Definition>) entry).get(0);
           //  } else if (entry instanceof ExternalDefinition) {
           //      // not the best place to handle this -- better would be a
           //      // refactoring of arguments outside of ExternalDefinition
           //      entry = fixArgs((ExternalDefinition) entry, node.getArguments());
             }
+            if (resolvedNames != null) {
+                if (resolvedNames.size() >= MAX_RESOLVED_NAMES) {
+                    resolvedNames.clear();
+                }
+                resolvedNames.put(resolvedName, entry == null ? NOT_DEFINED : entry);
+            }
             return (Definition) entry;
         }
 
@@ -0,0 +1,340 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * SiteCache.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import canto.Version;
+import canto.parser.CantoParser;
+import canto.runtime.Log;
+
+/**
+ * A cache of precompiled sites.  A site is stored in serialized form right after
+ * it is parsed, before it is added to a core, under a key computed from the source
+ * text, the Canto version and the parser.  The next time the same source is loaded
+ * the site is read back from the cache instead of being parsed again.
+ *
+ * Node classes do not declare a serialVersionUID, so changing any of them makes
+ * the sites cached by an older build unreadable.  An unreadable entry is treated
+ * as a miss and replaced.
+ *
+ * Caching is off unless the <code>canto.sitecache</code> system property names
+ * the directory to keep the cache in; <code>none</code> or an empty value
+ * leaves it off.  Cached sites are deserialized when sources are loaded, so the
+ * directory should be writable only by the user running Canto.
+ *
+ * Keys begin with a hash of the build, so entries cached by other builds, which
+ * can never be read again, are recognized and deleted whenever a site is
+ * cached.  At the same time the least recently used entries past the maximum,
+ * <code>canto.sitecache.max</code> (default 256), are deleted, so a cache does
+ * not keep growing as sources are edited.
+ */
+public class SiteCache {
+
+    private static final Log LOG = Log.getLogger(SiteCache.class);
+
+    public static final String DIR_PROPERTY = "canto.sitecache";
+    public static final String NO_CACHE = "none";
+    public static final String FILE_EXTENSION = ".site";
+    public static final String MAX_PROPERTY = "canto.sitecache.max";
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /** Shared objects that nodes may refer to and compare by identity, including
+     *  the special names in Name.  These are written to the cache as references
+     *  and resolved to the same objects when read back.
+     */
+    private static final List<Object> SHARED_OBJECTS = new ArrayList<Object>(List.of(
+        PrimitiveType.BOOLEAN, PrimitiveType.BYTE, PrimitiveType.CHAR, PrimitiveType.DOUBLE,
+        PrimitiveType.FLOAT, PrimitiveType.INT, PrimitiveType.LONG, PrimitiveType.SHORT,
+        PrimitiveType.STRING, PrimitiveType.NUMBER, PrimitiveType.VOID, DefaultType.TYPE,
+        NameNode.ANY, NullValue.NULL_VALUE,
+        TableElement.DEFAULT_KEY, TableElement.UNINITIALIZED_KEY
+    ));
+
+    private static final Map<Object, Integer> SHARED_INDEXES = new IdentityHashMap<Object, Integer>();
+    static {
+        for (Field field: Name.class.getFields()) {
+            if (field.getType() == String.class) {
+                try {
+                    SHARED_OBJECTS.add(field.get(null));
+                } catch (IllegalAccessException iae) {
+                    throw new RuntimeException("Unable to read Name." + field.getName());
+                }
+            }
+        }
+        for (int i = 0; i < SHARED_OBJECTS.size(); i++) {
+            SHARED_INDEXES.putIfAbsent(SHARED_OBJECTS.get(i), i);
+        }
+    }
+
+    /** Only Canto classes and the core Java classes they are built from may be
+     *  read from the cache.
+     */
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter("canto.**;java.lang.*;java.util.*;!*");
+
+    private static SiteCache defaultCache = null;
+    private static boolean defaultCacheChecked = false;
+
+    /** Returns the cache in the directory named by the <code>canto.sitecache</code>
+     *  property, or null if no directory is configured.
+     */
+    public static synchronized SiteCache getDefault() {
+        if (!defaultCacheChecked) {
+            defaultCacheChecked = true;
+            String dir = System.getProperty(DIR_PROPERTY);
+            if (dir != null && dir.trim().length() > 0 && !dir.trim().equalsIgnoreCase(NO_CACHE)) {
+                defaultCache = new SiteCache(Path.of(dir.trim()));
+            }
+        }
+        return defaultCache;
+    }
+
+    private final Path dir;
+    private final String buildId;
+    private final String buildPrefix;
+    private volatile int maxEntries = Integer.getInteger(MAX_PROPERTY, DEFAULT_MAX_ENTRIES);
+
+    public SiteCache(Path dir) {
+        this.dir = dir;
+        this.buildId = Version.getVersion() + '/' + parserId();
+        this.buildPrefix = toHex(newDigest().digest(buildId.getBytes(StandardCharsets.UTF_8))).substring(0, 16) + '-';
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /** Sets the number of entries kept when the cache is pruned. **/
+    public void setMaxEntries(int max) {
+        maxEntries = max;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /** Returns the key under which a site built from the passed source is cached. **/
+    public String getKey(byte[] source) {
+        MessageDigest digest = newDigest();
+        digest.update(buildId.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(source);
+        return buildPrefix + toHex(digest.digest());
+    }
+
+    /** Returns the site cached under the passed key, or null if there isn't one. **/
+    public Site get(String key) {
+        Path path = dir.resolve(key + FILE_EXTENSION);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            Object obj = new SiteInputStream(in).readObject();
+            if (obj instanceof Site) {
+                touch(path);
+                return (Site) obj;
+            }
+            LOG.info("Discarding cached site " + path + ": not a site");
+
+        } catch (NoSuchFileException nsfe) {
+            return null;
+
+        } catch (Exception e) {
+            LOG.info("Discarding cached site " + path + ": " + e);
+        }
+
+        delete(path);
+        return null;
+    }
+
+    /** Caches the passed site under the passed key.  The site must not have been
+     *  added to a core yet.  Failure to cache the site is logged but otherwise
+     *  ignored.
+     */
+    public void put(String key, Site site) {
+        Path path = dir.resolve(key + FILE_EXTENSION);
+        Path tempPath = null;
+        try {
+            Files.createDirectories(dir);
+            tempPath = Files.createTempFile(dir, key, ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+                ObjectOutputStream objOut = new SiteOutputStream(out);
+                objOut.writeObject(site);
+                objOut.flush();
+            }
+            try {
+                Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tempPath = null;
+            prune();
+
+        } catch (Exception e) {
+            LOG.warn("Unable to cache site " + site.getName() + " in " + dir + ": " + e);
+
+        } finally {
+            if (tempPath != null) {
+                try {
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException ioe) {
+                    ;
+                }
+            }
+        }
+    }
+
+    /** Deletes the entries cached by other builds, and the least recently used
+     *  entries past the maximum.  Failure to delete an entry is logged but
+     *  otherwise ignored.
+     */
+    public void prune() {
+        List<Path> current = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + FILE_EXTENSION)) {
+            for (Path path: stream) {
+                if (path.getFileName().toString().startsWith(buildPrefix)) {
+                    current.add(path);
+                } else {
+                    delete(path);
+                }
+            }
+        } catch (NoSuchFileException nsfe) {
+            return;
+        } catch (IOException ioe) {
+            LOG.warn("Unable to prune site cache " + dir + ": " + ioe);
+            return;
+        }
+
+        int excess = current.size() - Math.max(maxEntries, 0);
+        if (excess > 0) {
+            Map<Path, Long> lastUsed = new HashMap<Path, Long>();
+            for (Path path: current) {
+                try {
+                    lastUsed.put(path, Files.getLastModifiedTime(path).toMillis());
+                } catch (IOException ioe) {
+                    lastUsed.put(path, 0L);
+                }
+            }
+            current.sort((a, b) -> Long.compare(lastUsed.get(a), lastUsed.get(b)));
+            for (int i = 0; i < excess; i++) {
+                delete(current.get(i));
+            }
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ioe) {
+            LOG.warn("Unable to delete cached site " + path + ": " + ioe);
+        }
+    }
+
+    /** Marks a cached site as just used, so pruning keeps it. **/
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ioe) {
+            ;
+        }
+    }
+
+    /** Returns a hash of the parser and visitor classes, so that sites cached by
+     *  a build with a different grammar are not used.
+     */
+    private static String parserId() {
+        MessageDigest digest = newDigest();
+        for (Class<?> c: new Class<?>[] { CantoParser.class, CantoVisitor.class }) {
+            try (InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class")) {
+                if (in != null) {
+                    digest.update(in.readAllBytes());
+                }
+            } catch (IOException ioe) {
+                LOG.warn("Unable to read " + c.getName() + ": " + ioe);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException("SHA-256 not available: " + nsae);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b: bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /** Stands in for a shared object in the cache. **/
+    private static class SharedObject implements Serializable {
+        private final int index;
+
+        SharedObject(int index) {
+            this.index = index;
+        }
+    }
+
+    private static class SiteOutputStream extends ObjectOutputStream {
+        SiteOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            Integer index = SHARED_INDEXES.get(obj);
+            return (index != null ? new SharedObject(index) : obj);
+        }
+    }
+
+    private static class SiteInputStream extends ObjectInputStream {
+        SiteInputStream(InputStream in) throws IOException {
+            super(in);
+            setObjectInputFilter(FILTER);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            if (obj instanceof SharedObject) {
+                return SHARED_OBJECTS.get(((SharedObject) obj).index);
+            }
+            return obj;
+        }
+    }
+}
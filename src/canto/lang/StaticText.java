@@ -8,26 +8,67 @@
 
 package canto.lang;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.*;
 
 
 /**
  * StaticText holds a chunk of text.
+ *
+ * The trimmed text is computed when the text or trimming is set, rather than
+ * each time it is output.  When the text is written to a byte stream it is
+ * encoded once, in the stream's charset, and the bytes are kept for later writes.
  */
 public class StaticText extends Construction {
 
     private String text;
     private boolean trimLeading = false;
     private boolean trimTrailing = false;
+    private String trimmedText;
+
+    /** The trimmed text encoded in the charset it was last written in. **/
+    private static final class EncodedText {
+        final Charset charset;
+        final byte[] bytes;
+
+        EncodedText(Charset charset, byte[] bytes) {
+            this.charset = charset;
+            this.bytes = bytes;
+        }
+    }
+
+    private transient volatile EncodedText encodedText;
 
     public StaticText() {}
 
     public StaticText(String text) {
         this.text = text;
+        updateTrimmedText();
     }
 
     public void setText(String text) {
         this.text = text;
+        updateTrimmedText();
+    }
+
+    private void updateTrimmedText() {
+        trimmedText = (text == null ? null : trim(text));
+        encodedText = null;
+    }
+
+    /** Writes the trimmed text to the passed stream, encoded in the passed
+     *  charset.  The encoded text is kept, so writing it again in the same
+     *  charset costs no encoding or allocation.
+     */
+    void writeEncodedText(OutputStream out, Charset charset) throws IOException {
+        EncodedText encoded = encodedText;
+        if (encoded == null || !encoded.charset.equals(charset)) {
+            encoded = new EncodedText(charset, trimmedText.getBytes(charset));
+            encodedText = encoded;
+        }
+        out.write(encoded.bytes);
     }
 
     public boolean isPrimitive() {
@@ -51,15 +92,15 @@ public class StaticText extends Construction {
     }
 
     public String getText(Context context) throws Redirection {
-        return trim(text);
+        return trimmedText;
     }
 
     public Object getData(Context context) throws Redirection {
-        return trim(text);
+        return trimmedText;
     }
 
     public Object getData(Context context, Definition def) {
-        return trim(text);
+        return trimmedText;
     }
 
     public boolean isAbstract(Context context) {
@@ -67,7 +108,7 @@ public class StaticText extends Construction {
     }
     
     public String getText() {
-        return trim(text);
+        return trimmedText;
     }
 
     /** Gets the length of this element */
@@ -103,10 +144,12 @@ public class StaticText extends Construction {
 
     public void setTrimLeadingWhitespace(boolean trim) {
         trimLeading = trim;
+        updateTrimmedText();
     }
 
     public void setTrimTrailingWhitespace(boolean trim) {
         trimTrailing = trim;
+        updateTrimmedText();
     }
 
     /** Clean the text as returned by the parser.  All leading and trailing
@@ -119,7 +162,7 @@ public class StaticText extends Construction {
         }
 
         StringTokenizer toker = new StringTokenizer(str, "\n\r\f", true);   // returns delimiters
-        StringBuffer retstr = new StringBuffer();
+        StringBuilder retstr = new StringBuilder(str.length());
         while (toker.hasMoreTokens()) {
             String tok = toker.nextToken();
             if (tok.length() > 1) {
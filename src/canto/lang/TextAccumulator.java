@@ -0,0 +1,90 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * TextAccumulator.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ *  A TextAccumulator collects the pieces of text produced by a construction list
+ *  and joins them into a single string at the end, copying each character once.
+ *  Pieces are held by reference, so appending never copies or grows a character
+ *  buffer, and no locking is involved.
+ *
+ *  The joined string is what the construction returns, so output nested several
+ *  levels deep is still copied once at each level, when the string containing it
+ *  is joined.  Only streaming to an <code>OutputSink</code> avoids that.
+ *
+ *  Accumulators are thread-confined and recycled through a per-thread pool; call
+ *  <code>acquire</code> to get one and <code>release</code> when done with it.
+ */
+final class TextAccumulator {
+
+    private static final int INITIAL_CHUNKS = 16;
+    private static final int MAX_RETAINED_CHUNKS = 1024;
+    private static final int MAX_POOLED = 32;
+
+    private static final ThreadLocal<ArrayDeque<TextAccumulator>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /** Returns an empty accumulator from the current thread's pool. **/
+    static TextAccumulator acquire() {
+        TextAccumulator acc = POOL.get().pollLast();
+        return (acc != null ? acc : new TextAccumulator());
+    }
+
+    private String[] chunks = new String[INITIAL_CHUNKS];
+    private int count = 0;
+    private int length = 0;
+
+    private TextAccumulator() {}
+
+    TextAccumulator append(String str) {
+        if (str != null && str.length() > 0) {
+            if (count == chunks.length) {
+                chunks = Arrays.copyOf(chunks, count * 2);
+            }
+            chunks[count++] = str;
+            length += str.length();
+        }
+        return this;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /** Returns the accumulated text.  The accumulator is unchanged. **/
+    public String toString() {
+        switch (count) {
+            case 0:
+                return "";
+            case 1:
+                return chunks[0];
+            case 2:
+                return chunks[0].concat(chunks[1]);
+            default:
+                return String.join("", Arrays.copyOf(chunks, count));
+        }
+    }
+
+    /** Clears this accumulator and returns it to the current thread's pool. **/
+    void release() {
+        if (chunks.length > MAX_RETAINED_CHUNKS) {
+            chunks = new String[INITIAL_CHUNKS];
+        } else {
+            Arrays.fill(chunks, 0, count, null);
+        }
+        count = 0;
+        length = 0;
+        ArrayDeque<TextAccumulator> pool = POOL.get();
+        if (pool.size() < MAX_POOLED) {
+            pool.addLast(this);
+        }
+    }
+}
@@ -38,6 +38,11 @@ public interface site_config {
      *  respond to for this site.  If null the globally defined value is used.
      **/
     public Object[] listen_to();    
+
+    /** The names of pages whose responses the server may cache.  Only
+     *  public pages defined as static or global are cached.
+     **/
+    public Object[] cached_pages();
 }
 
 
@@ -144,7 +144,14 @@ public class Array {
         }
     }
     
+    /** Returns the array in the passed string.  An array made up only of data is
+     *  read directly into a list; anything else is parsed as Canto source.
+     */
     public static Object parse(Context context, String str) throws Redirection {
+        List<Object> list = DataLiteralReader.readArray(str);
+        if (list != null) {
+            return list;
+        }
         try {
             CantoBuilder builder = new CantoBuilder(str);
             CollectionDefinition collectionDef = builder.buildCollectionDefinition();
@@ -32,7 +32,7 @@ public class CantoContext implements canto_context {
     private Context context;
     private Site site;
     private boolean initialized;
-    private boolean inUse = false;
+    private volatile boolean inUse = false;
 
     public CantoContext(CantoDomain cantoSite) {
         site = (Site) cantoSite.getMainOwner();
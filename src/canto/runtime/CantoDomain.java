@@ -235,6 +235,13 @@ public class CantoDomain implements canto_domain {
         
         loader.load();
         loaded = true;
+
+        // definitions looked up or output cached before the reload may have been superseded
+        Instantiation.invalidateLookupCaches();
+        core.clearResolvedDefinitions();
+        FragmentCache.clear();
+        ResponseCache.clear();
+
         sources = loader.getSources();
         exceptions = loader.getExceptions();
         
@@ -13,6 +13,9 @@ import java.net.InetSocketAddress;
 import org.eclipse.jetty.server.*;
 import org.eclipse.jetty.session.*;
 import org.eclipse.jetty.util.*;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.VirtualThreadPool;
 
 
 /**
@@ -20,16 +23,26 @@ import org.eclipse.jetty.util.*;
  */
 
 public class CantoJettyServer extends Server implements CantoStandaloneServer {
+    private static final Log LOG = Log.getLogger(CantoJettyServer.class);
 
     private String virtualHost = null;
     private CantoServer cantoServer = null;
     
 	public CantoJettyServer(InetSocketAddress addr, CantoServer server) throws Exception {
-	    super(addr);
+	    this(addr, server, null);
+	}
+
+	/** Constructs a server which handles requests on the passed thread pool.  If
+	 *  the pool is null, Jetty's default pool is used.
+	 */
+	public CantoJettyServer(InetSocketAddress addr, CantoServer server, ThreadPool threadPool) throws Exception {
+	    super(threadPool);
 	    this.cantoServer = server;
 
 	    // Create a ServerConnector to accept connections from clients.
-	    Connector connector = new ServerConnector(this);
+	    ServerConnector connector = new ServerConnector(this);
+	    connector.setHost(addr.getHostString());
+	    connector.setPort(addr.getPort());
 
 	    // Add the Connector to the Server
 	    addConnector(connector);
@@ -65,6 +78,34 @@ public class CantoJettyServer extends Server implements CantoStandaloneServer {
 	    idMgr.setSessionHouseKeeper(houseKeeper);
 	}
 	
+    /** Creates the thread pool for handling requests.  If virtual threads are
+     *  requested and the JVM supports them, each request runs on its own virtual
+     *  thread, and maxThreads (if positive) limits how many run at once.  Otherwise
+     *  requests run on a pool of platform threads, of at most maxThreads threads
+     *  (if positive) and a queue of at most maxQueued waiting jobs (if positive).
+     *  Returns null if all the settings are defaults.
+     */
+    public static ThreadPool createThreadPool(boolean virtualThreads, int maxThreads, int maxQueued) {
+        if (virtualThreads) {
+            if (VirtualThreads.areSupported()) {
+                VirtualThreadPool pool = new VirtualThreadPool();
+                pool.setName("canto-vt");
+                if (maxThreads > 0) {
+                    pool.setMaxConcurrentTasks(maxThreads);
+                }
+                return pool;
+            }
+            LOG.warn("Virtual threads are not supported by this JVM (Java " + Runtime.version().feature() + "); using platform threads");
+        }
+        if (maxThreads <= 0 && maxQueued <= 0) {
+            return null;
+        }
+        QueuedThreadPool pool = (maxQueued > 0 ? new QueuedThreadPool(maxThreads > 0 ? maxThreads : 200, 8, 60000, new BlockingArrayQueue<Runnable>(maxQueued))
+                                               : new QueuedThreadPool(maxThreads));
+        pool.setName("canto");
+        return pool;
+    }
+
     @Override
     public void startServer() throws Exception {
         start();
@@ -8,9 +8,11 @@
 
 package canto.runtime;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.InetSocketAddress;
 import java.util.Date;
@@ -22,12 +24,16 @@ import canto.lang.Construction;
 import canto.lang.Context;
 import canto.lang.Definition;
 import canto.lang.ExternalDefinition;
+import canto.lang.FragmentCache;
+import canto.lang.GlobalKeep;
 import canto.lang.Instantiation;
 import canto.lang.Redirection;
 import canto.lang.canto_domain;
 import canto.lang.canto_server;
 import canto.lang.site_config;
 
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.server.Session;
@@ -46,10 +52,14 @@ public class CantoServer implements canto_server {
 
     public static final String REQUEST_STATE_ATTRIBUTE = "canto_request_state";
 
+    /** The response header a request profile is sent in, when profiling is on. **/
+    public static final String PROFILE_HEADER = "X-Canto-Profile";
+
     /** Status codes **/
     
     public static final int OK = 200;
     public static final int NO_CONTENT = 204;
+    public static final int NOT_MODIFIED = 304;
     public static final int BAD_REQUEST = 400;
     public static final int NOT_FOUND = 404;
     public static final int SERVER_ERROR = 500;
@@ -90,6 +100,15 @@ public class CantoServer implements canto_server {
     private boolean verbose = false;
     private String cantoPath = ".";
     private boolean debuggingEnabled = false;
+    private boolean streamOutput = false;
+    private boolean compressOutput = true;
+    private boolean profileRequests = false;
+    private boolean virtualThreads = false;
+    private int maxThreads = 0;
+    private int maxQueued = 0;
+    private int globalKeepMax = 0;
+    private long globalKeepTtl = 0L;
+    private int fragmentCacheMax = FragmentCache.DEFAULT_MAX_ENTRIES;
     protected String fileHandlerName = null;
     private long asyncTimeout = 0l;
 
@@ -119,6 +138,17 @@ public class CantoServer implements canto_server {
      *                                                                                    current content is preserved, and messages are appended to the end of the file.  </td>
      *  <td>  -verbose                        </td><td>  not verbose            </td><td> Verbose output messages for debugging.  </td>.
      *  <td>  -debug                          </td><td>  debugging not enabled  </td><td> Enable the built-in debugger.  </td>.
+     *  <td>  -stream                         </td><td>  pages are buffered     </td><td> Write page output as it is constructed.  </td>.
+     *  <td>  -no-compression                 </td><td>  compression negotiated </td><td> Never compress responses.  </td>.
+     *  <td>  -profile                        </td><td>  not profiled           </td><td> Profile each request and report the profile in an X-Canto-Profile header,
+     *                                                                                    the log and the status page.  </td>.
+     *  <td>  -virtual-threads                </td><td>  platform threads       </td><td> Handle each request on a virtual thread (Java 21 and later).  </td>.
+     *  <td>  -max-threads <n>                </td><td>  Jetty default          </td><td> Maximum number of request threads (with virtual threads, the maximum
+     *                                                                                    number of requests handled at once).  </td>.
+     *  <td>  -max-queued <n>                 </td><td>  unbounded              </td><td> Maximum number of requests waiting for a platform thread.  </td>.
+     *  <td>  -global-keep-max <n>            </td><td>  unbounded              </td><td> Maximum number of values kept for global definitions in each site.  </td>.
+     *  <td>  -global-keep-ttl <seconds>      </td><td>  no expiration          </td><td> Time to live for values kept for global definitions.  </td>.
+     *  <td>  -fragment-cache-max <n>         </td><td>  1000                   </td><td> Maximum number of cached definition outputs; 0 turns the cache off.  </td>.
      *
      */
     public static void main(String[] args) {
@@ -188,6 +218,31 @@ public class CantoServer implements canto_server {
             System.out.println("                               end of the file./n");
             System.out.println("-v, --verbose                  Verbose output messages for debugging.\n");
             System.out.println("--debug                        Enable the built-in debugger.\n");
+            System.out.println("-st, --stream                  Write page output to the response as it is");
+            System.out.println("                               constructed rather than after the whole page");
+            System.out.println("                               has been built.\n");
+            System.out.println("-nc, --no-compression          Never compress responses.  By default responses");
+            System.out.println("                               are compressed with gzip or deflate if the client");
+            System.out.println("                               accepts it.\n");
+            System.out.println("-pr, --profile                 Profile each request: time, CPU time, bytes");
+            System.out.println("                               allocated, scopes pushed, cache hits and external");
+            System.out.println("                               calls.  The profile is sent in an X-Canto-Profile");
+            System.out.println("                               header, logged, and totaled by page on $stat.\n");
+            System.out.println("-vt, --virtual-threads         Handle each request on its own virtual thread.");
+            System.out.println("                               Requires Java 21 or later; ignored otherwise.\n");
+            System.out.println("-mt, --max-threads <n>         Maximum number of threads handling requests.  With");
+            System.out.println("                               virtual threads, the maximum number of requests");
+            System.out.println("                               handled at once.\n");
+            System.out.println("-mq, --max-queued <n>          Maximum number of requests waiting for a thread");
+            System.out.println("                               (platform threads only).\n");
+            System.out.println("-gm, --global-keep-max <n>     Maximum number of values kept for global, static");
+            System.out.println("                               and cosmic definitions in each site.  The least");
+            System.out.println("                               recently used values are evicted first.\n");
+            System.out.println("-gt, --global-keep-ttl <secs>  Time to live for values kept for global, static");
+            System.out.println("                               and cosmic definitions.\n");
+            System.out.println("-fm, --fragment-cache-max <n>  Maximum number of cached outputs of definitions");
+            System.out.println("                               that depend only on their arguments and global");
+            System.out.println("                               data (default 0, which turns the cache off).\n");
             System.out.println("-?                             This screen.\n\n");
             System.out.println("Flags may be abbreviated to their initial letters, e.g. -a instead of -address,");
             System.out.println("or -la instead of -log.append.\n");
@@ -207,7 +262,7 @@ public class CantoServer implements canto_server {
                 loadSite();
 
                 InetSocketAddress addr = address == null ? new InetSocketAddress(port) : new InetSocketAddress(address, port);
-                standaloneServer = new CantoJettyServer(addr, this);
+                standaloneServer = new CantoJettyServer(addr, this, CantoJettyServer.createThreadPool(virtualThreads, maxThreads, maxQueued));
                 standaloneServer.setVirtualHost(virtualHost);
 
             } catch (Exception e) {
@@ -332,6 +387,68 @@ public class CantoServer implements canto_server {
             } else if (arg.equals("--debug")) {
                 initParams.put("debug", "true");
 
+            } else if (arg.equals("--stream") || arg.equals("-st")) {
+                initParams.put("stream", "true");
+
+            } else if (arg.equals("--no-compression") || arg.equals("-nc")) {
+                initParams.put("compression", "false");
+
+            } else if (arg.equals("--profile") || arg.equals("-pr")) {
+                initParams.put("profile", "true");
+
+            } else if (arg.equals("--virtual-threads") || arg.equals("-vt")) {
+                initParams.put("virtualthreads", "true");
+
+            } else if (arg.equals("--max-threads") || arg.equals("-mt")) {
+                if (noNextArg || !isPositiveNumber(nextArg)) {
+                    numProblems++;
+                    String msg = "max threads must be a positive number";
+                    initParams.put("problem" + numProblems, msg);
+                } else {
+                    initParams.put("maxthreads", nextArg);
+                    i++;
+                }
+
+            } else if (arg.equals("--max-queued") || arg.equals("-mq")) {
+                if (noNextArg || !isPositiveNumber(nextArg)) {
+                    numProblems++;
+                    String msg = "max queued must be a positive number";
+                    initParams.put("problem" + numProblems, msg);
+                } else {
+                    initParams.put("maxqueued", nextArg);
+                    i++;
+                }
+
+            } else if (arg.equals("--global-keep-max") || arg.equals("-gm")) {
+                if (noNextArg || !isPositiveNumber(nextArg)) {
+                    numProblems++;
+                    String msg = "global keep max must be a positive number";
+                    initParams.put("problem" + numProblems, msg);
+                } else {
+                    initParams.put("globalkeepmax", nextArg);
+                    i++;
+                }
+
+            } else if (arg.equals("--global-keep-ttl") || arg.equals("-gt")) {
+                if (noNextArg || !isPositiveNumber(nextArg)) {
+                    numProblems++;
+                    String msg = "global keep ttl must be a positive number of seconds";
+                    initParams.put("problem" + numProblems, msg);
+                } else {
+                    initParams.put("globalkeepttl", nextArg);
+                    i++;
+                }
+
+            } else if (arg.equals("--fragment-cache-max") || arg.equals("-fm")) {
+                if (noNextArg || !isPositiveNumber(nextArg)) {
+                    numProblems++;
+                    String msg = "fragment cache max must be a positive number or 0";
+                    initParams.put("problem" + numProblems, msg);
+                } else {
+                    initParams.put("fragmentcachemax", nextArg);
+                    i++;
+                }
+
             } else {
                 numProblems++;
                 String msg = "unrecognized option: " + arg;
@@ -410,6 +527,23 @@ public class CantoServer implements canto_server {
         }
 
         debuggingEnabled = isTrue(initParams.get("debug"));
+        streamOutput = isTrue(initParams.get("stream"));
+        virtualThreads = isTrue(initParams.get("virtualthreads"));
+        compressOutput = (initParams.get("compression") == null || isTrue(initParams.get("compression")));
+        profileRequests = isTrue(initParams.get("profile"));
+        RequestProfile.setEnabled(profileRequests);
+        String maxThreadsStr = initParams.get("maxthreads");
+        maxThreads = (maxThreadsStr != null ? Integer.parseInt(maxThreadsStr) : 0);
+        String maxQueuedStr = initParams.get("maxqueued");
+        maxQueued = (maxQueuedStr != null ? Integer.parseInt(maxQueuedStr) : 0);
+        String globalKeepMaxStr = initParams.get("globalkeepmax");
+        globalKeepMax = (globalKeepMaxStr != null ? Integer.parseInt(globalKeepMaxStr) : GlobalKeep.getDefaultMaxEntries());
+        String globalKeepTtlStr = initParams.get("globalkeepttl");
+        globalKeepTtl = (globalKeepTtlStr != null ? Long.parseLong(globalKeepTtlStr) * 1000L : GlobalKeep.getDefaultTtlMillis());
+        GlobalKeep.setDefaultLimits(globalKeepMax, globalKeepTtl);
+        String fragmentCacheMaxStr = initParams.get("fragmentcachemax");
+        fragmentCacheMax = (fragmentCacheMaxStr != null ? Integer.parseInt(fragmentCacheMaxStr) : FragmentCache.getMaxEntries());
+        FragmentCache.setMaxEntries(fragmentCacheMax);
     }
 
     /** Compile the Canto source files found at the locations specified in <code>cantopath</code>
@@ -421,6 +555,7 @@ public class CantoServer implements canto_server {
      */
     public canto_domain compile(String siteName, String cantopath) {
         CantoSite site = new CantoSite(siteName, this);
+        site.setStreamOutput(streamOutput);
         site.loadPath(cantopath, "*.canto");
         return site;
     }
@@ -552,20 +687,43 @@ public class CantoServer implements canto_server {
 
         int status = 500;
         CantoContext cantoContext = null;
+        RequestProfile profile = RequestProfile.start();
         try {
+            Map<String, String> params = new HashMap<String, String>();
+            Request.getParameters(request).stream().forEach(p -> params.put(p.getName(), p.getValue()));
+
+            ContentEncoding encoding = null;
+            if (compressOutput) {
+                response.getHeaders().add(HttpHeader.VARY, HttpHeader.ACCEPT_ENCODING.asString());
+                encoding = ContentEncoding.negotiate(request.getHeaders().get(HttpHeader.ACCEPT_ENCODING));
+            }
+
+            // a cached response is sent without constructing the page or
+            // touching the session
+            String cacheKey = null;
+            if (ResponseCache.isEnabled() && HttpMethod.GET.is(request.getMethod()) && site.isCachedPage(pageName)) {
+                cacheKey = ResponseCache.getKey(site.getName(), pageName, params);
+                ResponseCache.Entry entry = ResponseCache.get(cacheKey);
+                if (entry != null) {
+                    status = respondWithCachedEntry(entry, encoding, request, response, callback);
+                    return;
+                }
+            }
+
             Session session = request.getSession(true);
             CantoSession cantoSession = session != null ? new CantoSession(session) : new CantoSession();
             Construction sessionArg = createSessionArg(site, cantoSession);
             Construction requestArg = createRequestArg(site, new CantoRequest(request));
-            Map<String, String> params = new HashMap<String, String>();
-            Request.getParameters(request).stream().forEach(p -> params.put(p.getName(), p.getValue()));
             Construction requestParams = createParamsArg(site, params);
     
             // contexts are stored under a name that is not a legal name
             // in Canto, so that it won't collide with cached Canto values.
             cantoContext = (CantoContext) cantoSession.getAttribute("@");
 
-            PrintStream out = new PrintStream(Response.asBufferedOutputStream(request, response));
+            // the output of a cacheable page is collected so it can be cached
+            // before it is sent
+            ByteArrayOutputStream cacheOut = (cacheKey != null ? new ByteArrayOutputStream() : null);
+            PrintStream out = new PrintStream(cacheOut != null ? cacheOut : getResponseStream(encoding, request, response));
             
             // if the CantoContext for this session is null, then it's a new
             // session; create a new context, save it in the current session
@@ -575,24 +733,44 @@ public class CantoServer implements canto_server {
             // if it's not in use; otherwise create a new context and use that.
             
             if (cantoContext == null) {
-                cantoContext = (CantoContext) site.context();
-                site.getPropertyInContext("session_init", cantoContext.getContext());
-                cantoSession.setAttribute("@", cantoContext);
+                // only creating the session context is serialized, so that
+                // simultaneous first requests call session_init once
+                synchronized (session != null ? session : cantoSession) {
+                    cantoContext = (CantoContext) cantoSession.getAttribute("@");
+                    if (cantoContext == null) {
+                        cantoContext = (CantoContext) site.context();
+                        site.getPropertyInContext("session_init", cantoContext.getContext());
+                        cantoSession.setAttribute("@", cantoContext);
+                    }
+                }
             }
 
+            // each request runs in its own copy of the session context, confined
+            // to this thread, so concurrent requests in a session don't wait on
+            // each other
             cantoContext = new CantoContext(cantoContext);
-            
-            Context context = null;
-            synchronized (cantoContext) {
-                cantoContext.setInUse(true);
-                context = cantoContext.getContext();
+            cantoContext.setInUse(true);
+            Context context = cantoContext.getContext();
+            status = site.respond(pageName, requestParams, requestArg, sessionArg, context, out);
+            if (profile != null) {
+                addProfileHeader(profile, response);
             }
-            
-            synchronized (context) {
-                status = site.respond(pageName, requestParams, requestArg, sessionArg, context, out);
+            if (cacheOut != null) {
+                out.close();
+                byte[] body = cacheOut.toByteArray();
+                ResponseCache.Entry entry = (status == OK ? ResponseCache.put(cacheKey, body) : null);
+                if (entry != null) {
+                    status = respondWithCachedEntry(entry, encoding, request, response, callback);
+                    return;
+                }
+                response.setStatus(status);
+                OutputStream responseOut = getResponseStream(encoding, request, response);
+                responseOut.write(body);
+                responseOut.close();
+            } else {
+                response.setStatus(status);
+                out.close();
             }
-            response.setStatus(status);
-            out.close();
             callback.succeeded();
 
         } catch (Redirection r) {
@@ -624,13 +802,106 @@ public class CantoServer implements canto_server {
 
         } finally {
             if (cantoContext != null) {
-                synchronized (cantoContext) {
-                    cantoContext.setInUse(false);
-                }
+                cantoContext.setInUse(false);
+            }
+            if (profile != null) {
+                profile.end();
             }
         }
     }
+
+    /** Sends the profile of the request so far in a header, unless the response
+     *  has already been committed, as a streamed page may have been.
+     */
+    private static void addProfileHeader(RequestProfile profile, Response response) {
+        if (!response.isCommitted()) {
+            profile.sample();
+            response.getHeaders().put(PROFILE_HEADER, profile.toHeaderValue());
+        }
+    }
     
+    /** Sends a cached response with the passed coding, or a Not Modified status if
+     *  the request's If-None-Match header matches the ETag of that version of the
+     *  response.  Returns the status.
+     */
+    private static int respondWithCachedEntry(ResponseCache.Entry entry, ContentEncoding encoding, Request request, Response response, Callback callback) throws IOException {
+        String etag = entry.getETag(encoding);
+        response.getHeaders().put(HttpHeader.ETAG, etag);
+        if (ResponseCache.matches(request.getHeaders().get(HttpHeader.IF_NONE_MATCH), etag)) {
+            response.setStatus(NOT_MODIFIED);
+            callback.succeeded();
+            return NOT_MODIFIED;
+        }
+        response.setStatus(OK);
+        if (entry.isEncoded(encoding)) {
+            response.getHeaders().put(HttpHeader.CONTENT_ENCODING, encoding.getToken());
+        }
+        OutputStream out = Response.asBufferedOutputStream(request, response);
+        out.write(entry.getBody(encoding));
+        out.close();
+        callback.succeeded();
+        return OK;
+    }
+
+    /** Returns the stream to write the response body to, compressing it with the
+     *  passed coding if it isn't null.
+     */
+    private static OutputStream getResponseStream(ContentEncoding encoding, Request request, Response response) {
+        if (encoding == null) {
+            return Response.asBufferedOutputStream(request, response);
+        } else {
+            return new CompressingResponseStream(encoding, request, response);
+        }
+    }
+
+    /** A stream that compresses the response body as it is written.  The
+     *  compressor and the Content-Encoding header are only set up when the first
+     *  byte is written, so that an error or redirect sent instead of the body is
+     *  not affected.
+     */
+    private static class CompressingResponseStream extends OutputStream {
+        private final ContentEncoding encoding;
+        private final Request request;
+        private final Response response;
+        private OutputStream out = null;
+
+        CompressingResponseStream(ContentEncoding encoding, Request request, Response response) {
+            this.encoding = encoding;
+            this.request = request;
+            this.response = response;
+        }
+
+        private OutputStream getOut() throws IOException {
+            if (out == null) {
+                response.getHeaders().put(HttpHeader.CONTENT_ENCODING, encoding.getToken());
+                out = encoding.wrap(Response.asBufferedOutputStream(request, response));
+            }
+            return out;
+        }
+
+        public void write(int b) throws IOException {
+            getOut().write(b);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                getOut().write(b, off, len);
+            }
+        }
+
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
     public static String getPageName(CantoSite site, Request request) {
         // this works on Resin
         String requestName = Request.getPathInContext(request);
@@ -762,6 +1033,15 @@ public class CantoServer implements canto_server {
         LOG.info("             address = " + showAddress + (port > 0 ? "" : (":" + Integer.toString(port))));
         LOG.info("             timeout = " + (asyncTimeout > 0 ? Long.toString(asyncTimeout) : "none"));
         LOG.info("             debuggingEnabled = " + debuggingEnabled);
+        LOG.info("             streamOutput = " + streamOutput);
+        LOG.info("             compressOutput = " + compressOutput);
+        LOG.info("             profileRequests = " + profileRequests);
+        LOG.info("             virtualThreads = " + virtualThreads);
+        LOG.info("             maxThreads = " + (maxThreads > 0 ? Integer.toString(maxThreads) : "default"));
+        LOG.info("             maxQueued = " + (maxQueued > 0 ? Integer.toString(maxQueued) : "unbounded"));
+        LOG.info("             globalKeepMax = " + (globalKeepMax > 0 ? Integer.toString(globalKeepMax) : "unbounded"));
+        LOG.info("             globalKeepTtl = " + (globalKeepTtl > 0 ? (globalKeepTtl / 1000L) + "s" : "none"));
+        LOG.info("             fragmentCacheMax = " + (fragmentCacheMax > 0 ? Integer.toString(fragmentCacheMax) : "off"));
         LOG.info("Site " + siteName + " launched at " + (new Date()).toString());
     }
 
@@ -840,6 +1120,13 @@ public class CantoServer implements canto_server {
         public Object[] listen_to() {
             return site_config.getChildArray("listen_to");
         };    
+
+        /** The names of pages whose responses the server may cache.  Only
+         *  public pages defined as static or global are cached.
+         **/
+        public Object[] cached_pages() {
+            return site_config.getChildArray("cached_pages");
+        }
     }
     
     
@@ -9,6 +9,7 @@
 package canto.runtime;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.*;
 
 import canto.lang.*;
@@ -46,13 +47,15 @@ public class CantoSite extends CantoDomain {
     private String siteName;
     private String cantoPath = null;
 
-    private Map<String, Integer> pageTracker;
-    private Map<String, Integer> fileTracker;
-    private Map<String, Integer> redirectTracker;
+    private RequestStats pageStats;
+    private RequestStats fileStats;
+    private RequestStats redirectStats;
     private long loadTime;
     private boolean hasGeneralResponse = false;
+    private boolean streamOutput = false;
     private Set<String> ignoreExtensions = null;
     private Set<String> handleAsObjectExtensions = null;
+    private Set<String> cachedPages = null;
 
     /** Constructs a new CantoSite object, which can load and compile Canto source code
      *  defining a group of related site objects and respond to queries.
@@ -125,8 +128,42 @@ public class CantoSite extends CantoDomain {
                 handleAsObjectExtensions.add(it.next().toString());
             }
         }
+        site_config sc = getSiteConfig();
+        Object[] pages = (sc != null ? sc.cached_pages() : null);
+        if (pages != null && pages.length > 0) {
+            Set<String> eligiblePages = new HashSet<String>();
+            for (Object page: pages) {
+                String name = page.toString();
+                Definition def = getDefinition(cleanForCanto(name));
+                if (def == null || def.getAccess() != Definition.Access.PUBLIC) {
+                    LOG.warn("Not caching responses for " + name + ": not a public page");
+                } else if (def.getDurability() != Definition.Durability.STATIC && def.getDurability() != Definition.Durability.GLOBAL) {
+                    LOG.warn("Not caching responses for " + name + ": page is not static or global");
+                } else {
+                    eligiblePages.add(name);
+                }
+            }
+            cachedPages = eligiblePages;
+        }
+    }
+
+    /** Returns true if responses for the passed page may be cached. **/
+    public boolean isCachedPage(String pageName) {
+        return (cachedPages != null && pageName != null && cachedPages.contains(pageName));
     }
     
+    /** If true, page output is written to the response as it is constructed,
+     *  rather than after the entire page has been built.  Once output has been
+     *  streamed, a redirection can no longer replace it.
+     */
+    public void setStreamOutput(boolean streamOutput) {
+        this.streamOutput = streamOutput;
+    }
+
+    public boolean getStreamOutput() {
+        return streamOutput;
+    }
+
     public boolean isDebuggingEnabled() {
         return debuggingEnabled;
     }
@@ -136,9 +173,9 @@ public class CantoSite extends CantoDomain {
     }
 
     public void clearStats() {
-        pageTracker = new TreeMap<String, Integer>();
-        fileTracker = new TreeMap<String, Integer>();
-        redirectTracker = new TreeMap<String, Integer>();
+        pageStats = new RequestStats();
+        fileStats = new RequestStats();
+        redirectStats = new RequestStats();
     }
 
     public String getPageName(String requestName) {
@@ -301,11 +338,15 @@ public class CantoSite extends CantoDomain {
             boolean handleAsObj = (pageName.charAt(0) == '$' || handleAsObject(pageName));
 
             if (pageName.equalsIgnoreCase("$stat")) {
-                recordRequest("$stat", pageTracker);
+                recordRequest("$stat", pageStats);
                 printStatus(out);
 
+            } else if (pageName.equalsIgnoreCase("$stat.json")) {
+                recordRequest("$stat.json", pageStats);
+                printStatusJson(out);
+
             //} else if (pageName.equalsIgnoreCase("$source")) {
-            //    recordRequest("$source", pageTracker);
+            //    recordRequest("$source", pageStats);
             //    printSource(out);
 
             } else if (hasGeneralResponse || handleAsObj || pageName.indexOf(".$") > -1) {
@@ -338,7 +379,7 @@ public class CantoSite extends CantoDomain {
                 // record the page name (which has the $ prefix) rather than the
                 // object name in order to preserve the differentiation between
                 // pages and objects.
-                recordRequest(pageName, pageTracker);
+                long startTime = startRequest(pageName);
                 try {
 
                     String scopeName = null;
@@ -397,11 +438,7 @@ public class CantoSite extends CantoDomain {
                     out.println(str);
                     currentSiteName = siteName; //for logging
                     LOG.info("----------------- requested object: " + pageName + " ------------------");
-                    LOG.info("Created " + Context.getNumContextsCreated() + " Contexts (" + Context.getNumClonedContexts() + " of them cloned) and " + Context.getNumEntriesCreated() + " entries (" + Context.getNumEntriesCloned() + " of them cloned).");
-                    LOG.info("Created " + Context.getNumHashMapsCreated() + " HashMaps.");
-                    LOG.info("Created " + Context.getNumArrayListsCreated() + " ArrayLists, " + Context.getTotalListSize() + " total initial allocation.");
-                    long consumedMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - loadedConsumedMemory;
-                    LOG.info(consumedMemory + " additional bytes of memory consumed since site was loaded.");
+                    logResourceUsage();
 
                 } catch (Redirection r) {
                     String location = r.getLocation();
@@ -413,8 +450,11 @@ public class CantoSite extends CantoDomain {
                         }
                         r.setLocation(location);
                     }
-                    recordRequest(location, redirectTracker);
+                    recordRequest(location, redirectStats);
                     throw r;
+
+                } finally {
+                    pageStats.record(pageName, System.nanoTime() - startTime, RequestProfile.current());
                 }
             } else {
                 return CantoServer.NOT_FOUND;
@@ -426,7 +466,7 @@ public class CantoSite extends CantoDomain {
     public int respond(Instantiation page, Context context, PrintStream out) throws Redirection {
         
         String pageName = page.getName();
-        recordRequest(pageName, pageTracker);
+        long startTime = startRequest(pageName);
         try {
             Object pageData = null;
             Definition pageDef = page.getDefinition(context);
@@ -437,19 +477,33 @@ public class CantoSite extends CantoDomain {
                 LOG.info("Page " + pageName + " is not public.");
                 return CantoServer.NOT_FOUND;
             }
+            OutputSink sink = null;
+            if (streamOutput) {
+                // PrintStream writes text in the default charset, and passes bytes
+                // straight through to the stream under it
+                sink = new OutputSink(out, out, Charset.defaultCharset());
+                context.setOutputSink(pageDef, sink);
+            }
             Site pageSite = pageDef.getSite();
-            if (pageSite != null && !pageSite.equals(context.peek().def) && !(pageSite instanceof Core)) {
-                context.push(pageSite, null, null, true);
-                pageData = pageDef.instantiate(page.getArguments(), null, context);
-                context.pop();
-            } else {
-                pageData = page.instantiate(context, pageDef);
+            try {
+                if (pageSite != null && !pageSite.equals(context.peek().def) && !(pageSite instanceof Core)) {
+                    context.push(pageSite, null, null, true);
+                    pageData = pageDef.instantiate(page.getArguments(), null, context);
+                    context.pop();
+                } else {
+                    pageData = page.instantiate(context, pageDef);
+                }
+            } finally {
+                if (sink != null) {
+                    context.setOutputSink(null, null);
+                }
             }
-            if (pageData == null) {
+            boolean streamed = (sink != null && sink.isStreaming());
+            if (pageData == null && !streamed) {
                 LOG.info("Page " + pageName + " is empty.");
                 return CantoServer.NO_CONTENT;
             }
-            String str = getStringForData(pageData);
+            String str = (pageData == null ? "" : getStringForData(pageData));
 
             // for server-to-server communications, we want to send the response exactly as
             // it has been constructed, so we make sure not to add a newline
@@ -460,11 +514,7 @@ public class CantoSite extends CantoDomain {
             }
             currentSiteName = siteName; //for logging
             LOG.info("----------------- requested page: " + pageName + " ------------------");
-            LOG.info("Created " + Context.getNumContextsCreated() + " Contexts (" + Context.getNumClonedContexts() + " of them cloned) and " + Context.getNumEntriesCreated() + " entries (" + Context.getNumEntriesCloned() + " of them cloned).");
-            LOG.info("Created " + Context.getNumHashMapsCreated() + " HashMaps.");
-            LOG.info("Created " + Context.getNumArrayListsCreated() + " ArrayLists, " + Context.getTotalListSize() + " total initial allocation.");
-            long consumedMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - loadedConsumedMemory;
-            LOG.info(consumedMemory + " bytes of memory consumed since site was loaded.");
+            logResourceUsage();
 
         } catch (Redirection r) {
             String location = r.getLocation();
@@ -472,8 +522,11 @@ public class CantoSite extends CantoDomain {
                 location = Redirection.STANDARD_ERROR_PAGE;
                 r.setLocation(location);
             }
-            recordRequest(location, redirectTracker);
+            recordRequest(location, redirectStats);
             throw r;
+
+        } finally {
+            pageStats.record(pageName, System.nanoTime() - startTime, RequestProfile.current());
         }
         return CantoServer.OK;
     }
@@ -481,7 +534,7 @@ public class CantoSite extends CantoDomain {
     public boolean respondWithFile(File file, String mimeType, OutputStream out) {
         // Just record the request and return false, indicating that the caller should
         // handle the file transfer using an appropriate default mechanism
-        recordRequest(file.getName(), fileTracker);
+        recordRequest(file.getName(), fileStats);
         return false;
     }
     
@@ -623,16 +676,34 @@ public class CantoSite extends CantoDomain {
     
     
     
-    private static final Integer ONE = Integer.valueOf(1);
-    private void recordRequest(String name, Map<String, Integer> tracker) {
+    private void recordRequest(String name, RequestStats stats) {
         LOG.debug("------------------------------------------------------------\nRequesting: " + name);
-        Integer hitCount = (Integer) tracker.get(name);
-        if (hitCount != null) {
-            int n = hitCount.intValue();
-            tracker.put(name, Integer.valueOf(n + 1));
-        } else {
-            tracker.put(name, ONE);
+        stats.record(name);
+    }
+
+    /** Logs what the current request has cost so far if it is being profiled,
+     *  and otherwise the process-wide totals.
+     */
+    private void logResourceUsage() {
+        RequestProfile profile = RequestProfile.current();
+        if (profile != null) {
+            profile.sample();
+            LOG.info("Request profile: " + profile);
+            return;
         }
+        LOG.info("Created " + Context.getNumContextsCreated() + " Contexts (" + Context.getNumClonedContexts() + " of them cloned) and " + Context.getNumEntriesCreated() + " entries (" + Context.getNumEntriesCloned() + " of them cloned, " + Context.getNumEntriesRecycled() + " reused).");
+        LOG.info("Created " + Context.getNumHashMapsCreated() + " HashMaps.");
+        LOG.info("Created " + Context.getNumArrayListsCreated() + " ArrayLists, " + Context.getTotalListSize() + " total initial allocation.");
+        long consumedMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - loadedConsumedMemory;
+        LOG.info(consumedMemory + " bytes of memory consumed since site was loaded.");
+    }
+
+    /** Logs a request whose latency is to be recorded, and returns the time it
+     *  started.
+     */
+    private long startRequest(String name) {
+        LOG.debug("------------------------------------------------------------\nRequesting: " + name);
+        return System.nanoTime();
     }
 
     private void printStatus(OutputStream out) {
@@ -647,7 +718,7 @@ public class CantoSite extends CantoDomain {
         writer.println("<h3>Resource Usage</h3>");
         long memory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
         writer.println("<p>" + memory + " bytes of memory in use.<br>");
-        writer.println("Created " + Context.getNumContextsCreated() + " Contexts (" + Context.getNumClonedContexts() + " of them cloned) and " + Context.getNumEntriesCreated() + " entries (" + Context.getNumEntriesCloned() + " of them cloned).<br>");
+        writer.println("Created " + Context.getNumContextsCreated() + " Contexts (" + Context.getNumClonedContexts() + " of them cloned) and " + Context.getNumEntriesCreated() + " entries (" + Context.getNumEntriesCloned() + " of them cloned, " + Context.getNumEntriesRecycled() + " reused).<br>");
         writer.println("Created " + Context.getNumHashMapsCreated() + " HashMaps.<br>");
         writer.println("Created " + Context.getNumArrayListsCreated() + " ArrayLists, " + Context.getTotalListSize() + " total initial allocation.</p>");
 
@@ -683,15 +754,24 @@ public class CantoSite extends CantoDomain {
 
         writer.println("<h3>Output</h3>");
 
-        writer.println("<p><table border=\"1\" cellpadding=\"8\"><tr><th align=\"left\">Page</th><th align=\"left\">Requests</th></tr>");
-        printTrackerRows(writer, pageTracker);
+        writer.println("<p><table border=\"1\" cellpadding=\"8\"><tr><th align=\"left\">Page</th><th align=\"left\">Requests</th>"
+                       + "<th align=\"left\">Mean ms</th><th align=\"left\">50% ms</th><th align=\"left\">90% ms</th>"
+                       + "<th align=\"left\">99% ms</th><th align=\"left\">Max ms</th></tr>");
+        printStatsRows(writer, pageStats);
         writer.println("</table></p>");
         writer.println("<p><table border=\"1\" cellpadding=\"8\"><tr><th align=\"left\">File</th><th align=\"left\">Requests</th></tr>");
-        printTrackerRows(writer, fileTracker);
+        printStatsRows(writer, fileStats);
         writer.println("</table></p>");
         writer.println("<p><table border=\"1\" cellpadding=\"8\"><tr><th align=\"left\">Redirected to</th><th align=\"left\">Redirections</th></tr>");
-        printTrackerRows(writer, redirectTracker);
+        printStatsRows(writer, redirectStats);
         writer.println("</table></p>");
+        if (RequestProfile.isEnabled()) {
+            writer.println("<p><table border=\"1\" cellpadding=\"8\"><tr><th align=\"left\">Page</th><th align=\"left\">Profiled</th>"
+                           + "<th align=\"left\">Mean CPU ms</th><th align=\"left\">Mean bytes allocated</th><th align=\"left\">Scopes</th>"
+                           + "<th align=\"left\">Cache hits/misses</th><th align=\"left\">Keep hits/misses</th><th align=\"left\">External calls</th></tr>");
+            printProfileRows(writer, pageStats);
+            writer.println("</table></p>");
+        }
 
         writer.println("<h3>Sites</h3>");
         Iterator<Site> sites = core.getSites();
@@ -704,6 +784,13 @@ public class CantoSite extends CantoDomain {
                 CantoNode contents = site.getContents();
                 int numTLDs = contents.getNumChildren();
                 writer.println("<p>site " + site.getName() + ": " + numDefs + " definition" + (numDefs == 1 ? "" : "s") + " (top level: " + numTLDs + ")</p>");
+                if (site.getGlobalKeep() instanceof GlobalKeep) {
+                    GlobalKeep globalKeep = (GlobalKeep) site.getGlobalKeep();
+                    writer.println("<blockquote>global keep: " + globalKeep.size() + " entries"
+                                   + (globalKeep.getMaxEntries() > 0 ? " (max " + globalKeep.getMaxEntries() + ")" : "")
+                                   + ", " + globalKeep.getHits() + " hits, " + globalKeep.getMisses() + " misses, "
+                                   + globalKeep.getEvictions() + " evictions, " + globalKeep.getExpirations() + " expirations</blockquote>");
+                }
 //                out.println("<blockquote>");
 //                for (int i = 0; i < numTLDs; i++) {
 //                    CantoNode node = contents.getChild(i);
@@ -719,20 +806,128 @@ public class CantoSite extends CantoDomain {
             writer.println("<p>No sites.</p>");
         }
 
+        if (FragmentCache.isEnabled()) {
+            writer.println("<p>fragment cache: " + FragmentCache.size() + " entries (max " + FragmentCache.getMaxEntries() + "), "
+                           + FragmentCache.getHits() + " hits, " + FragmentCache.getMisses() + " misses, "
+                           + FragmentCache.getEvictions() + " evictions</p>");
+        }
+
+        if (cachedPages != null && ResponseCache.isEnabled()) {
+            writer.println("<p>response cache: " + ResponseCache.size() + " entries (max " + ResponseCache.getMaxEntries() + "), "
+                           + ResponseCache.getHits() + " hits, " + ResponseCache.getMisses() + " misses, "
+                           + ResponseCache.getNotModified() + " not modified, " + ResponseCache.getEvictions() + " evictions</p>");
+        }
+
         writer.println("<h3>Objects</h3>");
         writer.println("<p>" + totalDefs + " definition" + (totalDefs == 1 ? "" : "s") + "</p>");
         writer.println("<hr><p><i>" + CantoServer.NAME_AND_VERSION + "</i></p></body></html>");
+        writer.flush();
+    }
+
+    private void printStatsRows(PrintWriter out, RequestStats stats) {
+        boolean timed = (stats == pageStats);
+        for (Map.Entry<String, RequestStats.Entry> mapEntry: stats.getEntries().entrySet()) {
+            RequestStats.Entry entry = mapEntry.getValue();
+            out.print("<tr><td>" + mapEntry.getKey() + "</td><td>" + entry.getRequests() + "</td>");
+            if (timed) {
+                LatencyHistogram latencies = entry.getLatencies();
+                if (latencies != null) {
+                    out.print("<td>" + RequestStats.millis(Math.round(latencies.getMean())) + "</td>"
+                              + "<td>" + RequestStats.millis(latencies.getPercentile(50)) + "</td>"
+                              + "<td>" + RequestStats.millis(latencies.getPercentile(90)) + "</td>"
+                              + "<td>" + RequestStats.millis(latencies.getPercentile(99)) + "</td>"
+                              + "<td>" + RequestStats.millis(latencies.getMax()) + "</td>");
+                } else {
+                    out.print("<td></td><td></td><td></td><td></td><td></td>");
+                }
+            }
+            out.println("</tr>");
+        }
     }
 
-    private void printTrackerRows(PrintWriter out, Map<String, Integer> tracker) {
-        Set<Map.Entry<String, Integer>> entries = tracker.entrySet();
-        Iterator<Map.Entry<String, Integer>> it = entries.iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, Integer> entry = (Map.Entry<String, Integer>) it.next();
-            String key = (String) entry.getKey();
-            int hits = ((Integer) entry.getValue()).intValue();
-            out.println("<tr><td>" + key + "</td><td>" + hits + "</td></tr>");
+    private void printProfileRows(PrintWriter out, RequestStats stats) {
+        for (Map.Entry<String, RequestStats.Entry> mapEntry: stats.getEntries().entrySet()) {
+            RequestStats.ProfileTotals profiles = mapEntry.getValue().getProfiles();
+            long n = profiles.getCount();
+            if (n > 0) {
+                out.println("<tr><td>" + mapEntry.getKey() + "</td><td>" + n + "</td>"
+                            + "<td>" + RequestStats.millis(profiles.getCpuNanos() / n / 1000L) + "</td>"
+                            + "<td>" + profiles.getAllocatedBytes() / n + "</td>"
+                            + "<td>" + profiles.getScopes() + "</td>"
+                            + "<td>" + profiles.getCacheHits() + "/" + profiles.getCacheMisses() + "</td>"
+                            + "<td>" + profiles.getKeepHits() + "/" + profiles.getKeepMisses() + "</td>"
+                            + "<td>" + profiles.getExternalCalls() + "</td></tr>");
+            }
+        }
+    }
+
+    /** Writes the figures on the status page as a JSON object, for monitoring
+     *  tools.  Latencies are in milliseconds.
+     */
+    private void printStatusJson(OutputStream out) throws Redirection {
+        Map<String, Object> status = new LinkedHashMap<String, Object>();
+        status.put("site", siteName);
+        status.put("loaded", loadTime);
+        status.put("memory_in_use", Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+
+        Map<String, Object> counters = new LinkedHashMap<String, Object>();
+        counters.put("contexts_created", Context.getNumContextsCreated());
+        counters.put("contexts_cloned", Context.getNumClonedContexts());
+        counters.put("entries_created", Context.getNumEntriesCreated());
+        counters.put("entries_cloned", Context.getNumEntriesCloned());
+        counters.put("entries_reused", Context.getNumEntriesRecycled());
+        counters.put("hash_maps_created", Context.getNumHashMapsCreated());
+        counters.put("array_lists_created", Context.getNumArrayListsCreated());
+        counters.put("total_list_size", Context.getTotalListSize());
+        status.put("counters", counters);
+
+        status.put("pages", pageStats.toTable());
+        status.put("files", fileStats.toTable());
+        status.put("redirects", redirectStats.toTable());
+
+        Map<String, Object> keeps = new LinkedHashMap<String, Object>();
+        Iterator<Site> sites = core.getSites();
+        while (sites.hasNext()) {
+            Site site = sites.next();
+            if (site.getGlobalKeep() instanceof GlobalKeep) {
+                GlobalKeep globalKeep = (GlobalKeep) site.getGlobalKeep();
+                Map<String, Object> keep = new LinkedHashMap<String, Object>();
+                keep.put("entries", globalKeep.size());
+                keep.put("hits", globalKeep.getHits());
+                keep.put("misses", globalKeep.getMisses());
+                keep.put("evictions", globalKeep.getEvictions());
+                keep.put("expirations", globalKeep.getExpirations());
+                keeps.put(site.getName(), keep);
+            }
+        }
+        status.put("global_keeps", keeps);
+
+        if (FragmentCache.isEnabled()) {
+            Map<String, Object> cache = new LinkedHashMap<String, Object>();
+            cache.put("entries", FragmentCache.size());
+            cache.put("hits", FragmentCache.getHits());
+            cache.put("misses", FragmentCache.getMisses());
+            cache.put("evictions", FragmentCache.getEvictions());
+            status.put("fragment_cache", cache);
+        }
+        if (cachedPages != null && ResponseCache.isEnabled()) {
+            Map<String, Object> cache = new LinkedHashMap<String, Object>();
+            cache.put("entries", ResponseCache.size());
+            cache.put("hits", ResponseCache.getHits());
+            cache.put("misses", ResponseCache.getMisses());
+            cache.put("not_modified", ResponseCache.getNotModified());
+            cache.put("evictions", ResponseCache.getEvictions());
+            status.put("response_cache", cache);
+        }
+
+        PrintWriter writer = new PrintWriter(out);
+        try {
+            new JsonSerializer(null, writer).writeValue(status);
+        } catch (IOException ioe) {
+            // not thrown by PrintWriter
         }
+        writer.println();
+        writer.flush();
     }
 
 }
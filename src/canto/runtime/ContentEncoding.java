@@ -0,0 +1,116 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ContentEncoding.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings the server can apply to responses, negotiated from the request's
+ * Accept-Encoding header.  gzip is preferred over deflate when the client accepts
+ * both equally.
+ */
+public enum ContentEncoding {
+
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    /** Responses smaller than this are not worth compressing. **/
+    public static final int MIN_COMPRESSED_SIZE = 256;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    /** Returns the value of the Content-Encoding header for this coding. **/
+    public String getToken() {
+        return token;
+    }
+
+    /** Wraps the passed stream in a compressing stream.  Flushing the returned
+     *  stream flushes everything written so far, so streamed output reaches the
+     *  client as it is produced.
+     */
+    public OutputStream wrap(OutputStream out) throws IOException {
+        if (this == GZIP) {
+            return new GZIPOutputStream(out, BUFFER_SIZE, true);
+        } else {
+            return new DeflaterOutputStream(out, true);
+        }
+    }
+
+    /** Returns the passed bytes compressed with this coding. **/
+    public byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (OutputStream out = wrap(bytesOut)) {
+            out.write(bytes);
+        } catch (IOException ioe) {
+            throw new RuntimeException("Unable to compress response: " + ioe);
+        }
+        return bytesOut.toByteArray();
+    }
+
+    /** Returns the coding to use for a request with the passed Accept-Encoding
+     *  header, or null if the response should not be compressed.
+     */
+    public static ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.length() == 0) {
+            return null;
+        }
+        // quality values for gzip, deflate and *; -1 means not listed
+        float[] q = { -1f, -1f, -1f };
+        for (String item: acceptEncoding.split(",")) {
+            String coding = item;
+            float itemQ = 1f;
+            int ix = item.indexOf(';');
+            if (ix >= 0) {
+                coding = item.substring(0, ix);
+                itemQ = parseQ(item.substring(ix + 1));
+            }
+            coding = coding.trim();
+            if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) {
+                q[0] = itemQ;
+            } else if (coding.equalsIgnoreCase("deflate")) {
+                q[1] = itemQ;
+            } else if (coding.equals("*")) {
+                q[2] = itemQ;
+            }
+        }
+        float gzipQ = (q[0] >= 0f ? q[0] : Math.max(q[2], 0f));
+        float deflateQ = (q[1] >= 0f ? q[1] : Math.max(q[2], 0f));
+        if (gzipQ > 0f && gzipQ >= deflateQ) {
+            return GZIP;
+        } else if (deflateQ > 0f) {
+            return DEFLATE;
+        } else {
+            return null;
+        }
+    }
+
+    private static float parseQ(String params) {
+        for (String param: params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim());
+                } catch (NumberFormatException nfe) {
+                    return 0f;
+                }
+            }
+        }
+        return 1f;
+    }
+}
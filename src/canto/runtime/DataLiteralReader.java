@@ -0,0 +1,379 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * DataLiteralReader.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads table and array literals made up only of data, such as serialized keep
+ * state, directly into maps and lists, without building and resolving a Canto
+ * collection definition.
+ *
+ * The reader understands tables (<code>{ "key": value, ... }</code>), arrays
+ * (<code>[ value, ... ]</code>), quoted strings, integer and decimal numbers,
+ * <code>true</code>, <code>false</code> and <code>null</code>.  As in Canto
+ * source, escape sequences in strings are kept as written, except when reading
+ * JSON, such as the output of <code>JsonSerializer</code>, whose escape
+ * sequences are decoded.  Tables become maps
+ * that keep their keys in order, arrays become lists, integers become Integer,
+ * or Long if they don't fit, and decimals become Double.  Anything else, such
+ * as names, expressions or comments, is not read; the caller falls back to the
+ * Canto parser.
+ */
+final class DataLiteralReader {
+
+    /** Deeper nesting is left to the Canto parser. **/
+    private static final int MAX_DEPTH = 256;
+
+    /** Signals that the input is not a data literal this reader understands. **/
+    @SuppressWarnings("serial")
+    private static final class NotALiteral extends RuntimeException {
+        NotALiteral() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final NotALiteral NOT_A_LITERAL = new NotALiteral();
+
+    private final String str;
+    private final int len;
+    private final boolean decode;
+    private int pos = 0;
+
+    private DataLiteralReader(String str, boolean decode) {
+        this.str = str;
+        this.len = str.length();
+        this.decode = decode;
+    }
+
+    /** Returns the table in the passed string, or null if the string is not a
+     *  table literal made up only of data.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> readTable(String str) {
+        return (Map<String, Object>) read(str, '{', false);
+    }
+
+    /** Returns the table in the passed JSON string, with the escape sequences
+     *  in its strings decoded, or null if the string is not a table literal
+     *  made up only of data.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> readJsonTable(String str) {
+        return (Map<String, Object>) read(str, '{', true);
+    }
+
+    /** Returns the array in the passed string, or null if the string is not an
+     *  array literal made up only of data.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> readArray(String str) {
+        return (List<Object>) read(str, '[', false);
+    }
+
+    /** Returns the passed string with its JSON escape sequences decoded.
+     *  Anything that isn't a valid escape sequence is kept as written.
+     */
+    static String unescape(String str) {
+        int ix = str.indexOf('\\');
+        if (ix < 0) {
+            return str;
+        }
+        int len = str.length();
+        StringBuilder sb = new StringBuilder(len);
+        sb.append(str, 0, ix);
+        while (ix < len) {
+            char c = str.charAt(ix);
+            if (c != '\\' || ix + 1 >= len) {
+                sb.append(c);
+                ix++;
+                continue;
+            }
+            char e = str.charAt(ix + 1);
+            switch (e) {
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                    sb.append(e);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    int code = (ix + 6 <= len ? hexValue(str, ix + 2, ix + 6) : -1);
+                    if (code >= 0) {
+                        sb.append((char) code);
+                        ix += 6;
+                        continue;
+                    }
+                    // fall through
+                default:
+                    sb.append(c).append(e);
+                    break;
+            }
+            ix += 2;
+        }
+        return sb.toString();
+    }
+
+    private static int hexValue(String str, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(str.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private static Object read(String str, char open, boolean decode) {
+        if (str == null) {
+            return null;
+        }
+        DataLiteralReader reader = new DataLiteralReader(str, decode);
+        try {
+            reader.skipWhitespace();
+            if (reader.peek() != open) {
+                return null;
+            }
+            Object data = reader.readValue(0);
+            reader.skipWhitespace();
+            return (reader.pos == reader.len ? data : null);
+
+        } catch (NotALiteral nal) {
+            return null;
+        }
+    }
+
+    private Object readValue(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw NOT_A_LITERAL;
+        }
+        skipWhitespace();
+        char c = peek();
+        switch (c) {
+            case '{':
+                return readTableValue(depth);
+            case '[':
+                return readArrayValue(depth);
+            case '"':
+            case '\'':
+                return readString();
+            case 't':
+                readWord("true");
+                return Boolean.TRUE;
+            case 'f':
+                readWord("false");
+                return Boolean.FALSE;
+            case 'n':
+                readWord("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw NOT_A_LITERAL;
+        }
+    }
+
+    private Map<String, Object> readTableValue(int depth) {
+        pos++;
+        Map<String, Object> table = new LinkedHashMap<String, Object>();
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return table;
+        }
+        while (true) {
+            char c = peek();
+            if (c != '"' && c != '\'') {
+                throw NOT_A_LITERAL;
+            }
+            String key = readString();
+            skipWhitespace();
+            if (peek() != ':') {
+                throw NOT_A_LITERAL;
+            }
+            pos++;
+            table.put(key, readValue(depth + 1));
+            skipWhitespace();
+            c = peek();
+            pos++;
+            if (c == ',') {
+                skipWhitespace();
+                // a trailing comma is allowed, as in Canto source
+                if (peek() == '}') {
+                    pos++;
+                    return table;
+                }
+            } else if (c == '}') {
+                return table;
+            } else {
+                throw NOT_A_LITERAL;
+            }
+        }
+    }
+
+    private List<Object> readArrayValue(int depth) {
+        pos++;
+        List<Object> array = new ArrayList<Object>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue(depth + 1));
+            skipWhitespace();
+            char c = peek();
+            pos++;
+            if (c == ',') {
+                skipWhitespace();
+                if (peek() == ']') {
+                    pos++;
+                    return array;
+                }
+            } else if (c == ']') {
+                return array;
+            } else {
+                throw NOT_A_LITERAL;
+            }
+        }
+    }
+
+    private String readString() {
+        char quote = str.charAt(pos++);
+        int start = pos;
+        while (pos < len) {
+            char c = str.charAt(pos);
+            if (c == quote) {
+                String value = str.substring(start, pos++);
+                return (decode ? unescape(value) : value);
+            } else if (c == '\\') {
+                pos += 2;
+            } else if (c == '\n' || c == '\r') {
+                throw NOT_A_LITERAL;
+            } else {
+                pos++;
+            }
+        }
+        throw NOT_A_LITERAL;
+    }
+
+    private void readWord(String word) {
+        if (!str.startsWith(word, pos)) {
+            throw NOT_A_LITERAL;
+        }
+        pos += word.length();
+        if (pos < len && Character.isJavaIdentifierPart(str.charAt(pos))) {
+            throw NOT_A_LITERAL;
+        }
+    }
+
+    private Object readNumber() {
+        int start = pos;
+        boolean negative = (str.charAt(pos) == '-');
+        if (negative) {
+            pos++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (pos < len && isDigit(str.charAt(pos))) {
+            value = value * 10 + (str.charAt(pos++) - '0');
+            digits++;
+        }
+        if (digits == 0) {
+            throw NOT_A_LITERAL;
+        }
+        boolean decimal = false;
+        if (pos < len && str.charAt(pos) == '.') {
+            pos++;
+            decimal = true;
+            if (!skipDigits()) {
+                throw NOT_A_LITERAL;
+            }
+        }
+        if (pos < len && (str.charAt(pos) == 'e' || str.charAt(pos) == 'E')) {
+            pos++;
+            decimal = true;
+            if (pos < len && (str.charAt(pos) == '+' || str.charAt(pos) == '-')) {
+                pos++;
+            }
+            if (!skipDigits()) {
+                throw NOT_A_LITERAL;
+            }
+        }
+        // type suffixes, hex digits and the like are left to the Canto parser
+        if (pos < len && (Character.isJavaIdentifierPart(str.charAt(pos)) || str.charAt(pos) == '.')) {
+            throw NOT_A_LITERAL;
+        }
+
+        if (decimal) {
+            return Double.valueOf(str.substring(start, pos));
+        } else if (digits > 18) {
+            throw NOT_A_LITERAL;
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return Integer.valueOf((int) value);
+        } else {
+            return Long.valueOf(value);
+        }
+    }
+
+    private boolean skipDigits() {
+        int start = pos;
+        while (pos < len && isDigit(str.charAt(pos))) {
+            pos++;
+        }
+        return pos > start;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private char peek() {
+        if (pos >= len) {
+            throw NOT_A_LITERAL;
+        }
+        return str.charAt(pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < len) {
+            char c = str.charAt(pos);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+}
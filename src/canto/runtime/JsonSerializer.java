@@ -0,0 +1,331 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * JsonSerializer.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import canto.lang.CantoArray;
+import canto.lang.CollectionDefinition;
+import canto.lang.CollectionInstance;
+import canto.lang.Construction;
+import canto.lang.Context;
+import canto.lang.Definition;
+import canto.lang.NameNode;
+import canto.lang.NamedDefinition;
+import canto.lang.Redirection;
+import canto.lang.ResolvedInstance;
+import canto.lang.Value;
+
+/**
+ * Writes Canto objects as JSON, for the <code>serialize</code> method of
+ * <code>serializable</code> in core.
+ *
+ * An object is written as a JSON object whose members are its kept children, or
+ * the children named by the caller.  Arrays and tables are written as JSON
+ * arrays and objects, children that are themselves serializable are written as
+ * nested objects, numbers and booleans are written as they are and everything
+ * else is written as a string.  Output is written to the Writer as it is
+ * produced.
+ */
+public class JsonSerializer {
+
+    private static final Log LOG = Log.getLogger(JsonSerializer.class);
+
+    /** The name of the core type whose instances are written as objects. **/
+    public static final String SERIALIZABLE = "serializable";
+
+    /** Deeper nesting, which can only come from a cycle, is written as null. **/
+    private static final int MAX_DEPTH = 64;
+
+    private final Context context;
+    private final Writer out;
+    private int depth = 0;
+
+    public JsonSerializer(Context context, Writer out) {
+        this.context = context;
+        this.out = out;
+    }
+
+    /** Returns the JSON for the object defined by the passed definition, in the
+     *  passed context.  If names are passed, as an array or list, only the
+     *  children with those names are written.  Called by <code>serialize</code>
+     *  in core.
+     */
+    public static String serialize(Context context, Definition def, Object childNames) throws Redirection {
+        StringWriter writer = new StringWriter();
+        try {
+            new JsonSerializer(context, writer).writeObject(def, toNames(childNames));
+        } catch (IOException ioe) {
+            // not thrown by StringWriter
+            throw new Redirection(Redirection.STANDARD_ERROR, "Exception serializing " + def.getName() + ": " + ioe);
+        }
+        writer.write('\n');
+        return writer.toString();
+    }
+
+    private static Object[] toNames(Object names) {
+        if (names instanceof CantoArray) {
+            names = ((CantoArray) names).getArrayObject();
+        }
+        if (names instanceof Object[]) {
+            return (Object[]) names;
+        } else if (names instanceof List<?>) {
+            return ((List<?>) names).toArray();
+        } else {
+            return null;
+        }
+    }
+
+    /** Writes the object defined by the passed definition, whose instance is
+     *  in the current context, as a JSON object.  Its members are the children
+     *  with the passed names, or the kept children if no names are passed.
+     */
+    public void writeObject(Definition def, Object[] childNames) throws IOException, Redirection {
+        out.write("{ ");
+        if (childNames != null && childNames.length > 0) {
+            for (int i = 0; i < childNames.length; i++) {
+                String name = String.valueOf(childNames[i]);
+                if (i > 0) {
+                    out.write(", ");
+                }
+                writeString(name);
+                out.write(": ");
+                Definition childDef = def.getChildDefinition(new NameNode(name), context);
+                if (childDef == null) {
+                    out.write("null");
+                } else {
+                    writeDefinition(childDef);
+                }
+            }
+        } else if (def instanceof NamedDefinition) {
+            Definition[] keepDefs = ((NamedDefinition) def).keep_defs(context);
+            for (int i = 0; i < keepDefs.length; i++) {
+                if (i > 0) {
+                    out.write(", ");
+                }
+                writeString(keepDefs[i].getName());
+                out.write(": ");
+                writeDefinition(keepDefs[i]);
+            }
+        }
+        out.write(" }");
+    }
+
+    /** Writes the value of the passed definition in the current context. **/
+    public void writeDefinition(Definition def) throws IOException, Redirection {
+        if (!enter(def.getName())) {
+            return;
+        }
+        try {
+            if (def instanceof CollectionDefinition && def.is_array()) {
+                writeArray(((CollectionDefinition) def).get_array(context).iterator());
+
+            } else if (def instanceof CollectionDefinition && def.is_table()) {
+                writeTable(((CollectionDefinition) def).get_table(context));
+
+            } else if (def.is_a(SERIALIZABLE)) {
+                context.push(def, null, null);
+                try {
+                    writeObject(def, null);
+                } finally {
+                    context.pop();
+                }
+
+            } else {
+                Object value = (def instanceof NamedDefinition ? ((NamedDefinition) def).get(context) : def.instantiate(context));
+                if (value instanceof Definition) {
+                    writeString(((Definition) value).getName());
+                } else {
+                    writeValue(value);
+                }
+            }
+        } finally {
+            depth--;
+        }
+    }
+
+    /** Writes the passed value. **/
+    public void writeValue(Object value) throws IOException, Redirection {
+        if (value == null) {
+            out.write("null");
+
+        } else if (value instanceof Definition) {
+            writeDefinition((Definition) value);
+
+        } else if (value instanceof CantoObjectWrapper) {
+            CantoObjectWrapper wrapper = (CantoObjectWrapper) value;
+            writeInstance(wrapper.getDefinition(), wrapper.getResolutionContext(), value);
+
+        } else if (value instanceof ResolvedInstance) {
+            ResolvedInstance instance = (ResolvedInstance) value;
+            writeInstance(instance.getDefinition(), instance.getResolutionContext(), value);
+
+        } else if (value instanceof CollectionInstance) {
+            writeValue(((CollectionInstance) value).getCollectionObject());
+
+        } else if (value instanceof CantoArray) {
+            writeValue(((CantoArray) value).getArrayObject());
+
+        } else if (value instanceof Value) {
+            Object data = ((Value) value).getData();
+            if (data == value) {
+                writeString(((Value) value).getString());
+            } else {
+                writeValue(data);
+            }
+
+        } else if (value instanceof Map<?, ?>) {
+            writeTable((Map<?, ?>) value);
+
+        } else if (value instanceof List<?>) {
+            writeArray(((List<?>) value).iterator());
+
+        } else if (value.getClass().isArray()) {
+            int len = Array.getLength(value);
+            writeArray(new Iterator<Object>() {
+                int i = 0;
+                public boolean hasNext() {
+                    return i < len;
+                }
+                public Object next() {
+                    return Array.get(value, i++);
+                }
+            });
+
+        } else if (value instanceof Boolean) {
+            out.write(value.toString());
+
+        } else if (value instanceof Number) {
+            writeNumber((Number) value);
+
+        } else {
+            writeString(Construction.getStringForData(value));
+        }
+    }
+
+    /** Writes an instance carried with its own context, as an object if it is
+     *  serializable and otherwise as its data.
+     */
+    private void writeInstance(Definition def, Context instanceContext, Object instance) throws IOException, Redirection {
+        if (def != null && def.is_a(SERIALIZABLE)) {
+            new JsonSerializer(instanceContext, out).writeObject(def, null);
+        } else {
+            Object data = (instance instanceof CantoObjectWrapper ? ((CantoObjectWrapper) instance).getData()
+                                                                  : ((ResolvedInstance) instance).generateData());
+            if (data == instance) {
+                writeString(String.valueOf(data));
+            } else {
+                writeValue(data);
+            }
+        }
+    }
+
+    private void writeArray(Iterator<?> it) throws IOException, Redirection {
+        if (!enter("array")) {
+            return;
+        }
+        try {
+            out.write("[ ");
+            for (int i = 0; it.hasNext(); i++) {
+                if (i > 0) {
+                    out.write(", ");
+                }
+                writeValue(it.next());
+            }
+            out.write(" ]");
+        } finally {
+            depth--;
+        }
+    }
+
+    private void writeTable(Map<?, ?> table) throws IOException, Redirection {
+        if (!enter("table")) {
+            return;
+        }
+        try {
+            out.write("{ ");
+            int i = 0;
+            for (Map.Entry<?, ?> entry: table.entrySet()) {
+                if (i++ > 0) {
+                    out.write(", ");
+                }
+                writeString(String.valueOf(entry.getKey()));
+                out.write(": ");
+                writeValue(entry.getValue());
+            }
+            out.write(" }");
+        } finally {
+            depth--;
+        }
+    }
+
+    /** Goes one level deeper, unless the nesting is already too deep, in which
+     *  case null is written and false returned.
+     */
+    private boolean enter(String name) throws IOException {
+        if (depth >= MAX_DEPTH) {
+            LOG.error("Nesting too deep serializing " + name);
+            out.write("null");
+            return false;
+        }
+        depth++;
+        return true;
+    }
+
+    private void writeNumber(Number number) throws IOException {
+        if ((number instanceof Double && !Double.isFinite(number.doubleValue()))
+                || (number instanceof Float && !Float.isFinite(number.floatValue()))) {
+            // JSON has no representation for NaN or infinity
+            out.write("null");
+        } else {
+            out.write(number.toString());
+        }
+    }
+
+    /** Writes the passed string as a quoted JSON string. **/
+    public void writeString(String str) throws IOException {
+        out.write('"');
+        if (str != null) {
+            int len = str.length();
+            int start = 0;
+            for (int i = 0; i < len; i++) {
+                char c = str.charAt(i);
+                String escape = null;
+                switch (c) {
+                    case '"':  escape = "\\\""; break;
+                    case '\\': escape = "\\\\"; break;
+                    case '\n': escape = "\\n"; break;
+                    case '\r': escape = "\\r"; break;
+                    case '\t': escape = "\\t"; break;
+                    case '\b': escape = "\\b"; break;
+                    case '\f': escape = "\\f"; break;
+                    default:
+                        // other control characters, and the line separators that
+                        // would break a JSON string embedded in a script
+                        if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                            escape = String.format("\\u%04x", (int) c);
+                        }
+                }
+                if (escape != null) {
+                    out.write(str, start, i - start);
+                    out.write(escape);
+                    start = i + 1;
+                }
+            }
+            out.write(str, start, len - start);
+        }
+        out.write('"');
+    }
+}
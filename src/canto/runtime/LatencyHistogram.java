@@ -0,0 +1,124 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * LatencyHistogram.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies, in microseconds, that may be recorded on any number
+ * of threads at once without locking.
+ *
+ * Values are counted in buckets laid out as in HdrHistogram: values below 16
+ * have a bucket each, and every power of two above that is split into 16
+ * buckets, so a percentile is accurate to within 1/16 (about 6%) of its value.
+ * Values above an hour are counted in the top bucket.  The exact count, total
+ * and maximum are kept as well.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** The highest value with a bucket of its own; a little over an hour. **/
+    private static final long MAX_VALUE = (1L << 32) - 1;
+
+    private static final int NUM_BUCKETS = bucketFor(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Records a latency in nanoseconds. **/
+    public void recordNanos(long nanos) {
+        record(nanos / 1000L);
+    }
+
+    /** Records a latency in microseconds. **/
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts.incrementAndGet(bucketFor(Math.min(micros, MAX_VALUE)));
+        count.increment();
+        total.add(micros);
+        if (micros > max.get()) {
+            max.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    private static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (magnitude + 1) * SUB_BUCKETS + (int) (value >>> magnitude) - SUB_BUCKETS;
+    }
+
+    /** Returns the highest value counted in the passed bucket. **/
+    private static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << magnitude;
+        return lowest + (1L << magnitude) - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /** Returns the sum of the recorded values, in microseconds. **/
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /** Returns the largest recorded value, in microseconds. **/
+    public long getMax() {
+        return max.get();
+    }
+
+    /** Returns the mean of the recorded values, in microseconds, or zero if
+     *  nothing has been recorded.
+     */
+    public double getMean() {
+        long n = count.sum();
+        return (n == 0 ? 0.0 : (double) total.sum() / n);
+    }
+
+    /** Returns the value, in microseconds, at or below which the passed percentage
+     *  of the recorded values fall, or zero if nothing has been recorded.  The
+     *  value is the top of the bucket the percentile falls in, but never more
+     *  than the maximum.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[NUM_BUCKETS];
+        long n = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0.0), 100.0) / 100.0 * n);
+        rank = Math.max(rank, 1L);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,241 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * RequestProfile.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The cost of a single request: wall and CPU time, bytes allocated, scopes
+ * pushed, fragment cache and global keep hits and misses, and calls to
+ * external Java code.
+ *
+ * Profiling is off unless turned on with <code>setEnabled</code>, which the
+ * server does for the <code>--profile</code> flag.  A profile is started on the
+ * thread handling the request and counts only what happens on that thread,
+ * which is where the request is constructed, so concurrent requests don't
+ * affect each other's figures.  While profiling is off the counting methods
+ * return at once.
+ */
+public final class RequestProfile {
+
+    private static volatile boolean enabled = false;
+
+    private static final ThreadLocal<RequestProfile> CURRENT = new ThreadLocal<RequestProfile>();
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /** Turns request profiling on or off. **/
+    public static void setEnabled(boolean enable) {
+        if (enable) {
+            try {
+                if (THREADS.isCurrentThreadCpuTimeSupported() && !THREADS.isThreadCpuTimeEnabled()) {
+                    THREADS.setThreadCpuTimeEnabled(true);
+                }
+                if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+                    if (threads.isThreadAllocatedMemorySupported() && !threads.isThreadAllocatedMemoryEnabled()) {
+                        threads.setThreadAllocatedMemoryEnabled(true);
+                    }
+                }
+            } catch (UnsupportedOperationException | SecurityException e) {
+                // the figures that can't be measured are reported as unavailable
+            }
+        }
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Starts a profile for a request handled by the current thread and returns
+     *  it, or returns null if profiling is off.
+     */
+    public static RequestProfile start() {
+        if (!enabled) {
+            return null;
+        }
+        RequestProfile profile = new RequestProfile();
+        CURRENT.set(profile);
+        return profile;
+    }
+
+    /** Returns the profile of the request being handled by the current thread,
+     *  or null if it is not being profiled.
+     */
+    public static RequestProfile current() {
+        return (enabled ? CURRENT.get() : null);
+    }
+
+    public static void countScope() {
+        if (enabled) {
+            RequestProfile profile = CURRENT.get();
+            if (profile != null) {
+                profile.scopes++;
+            }
+        }
+    }
+
+    public static void countCacheHit(boolean hit) {
+        if (enabled) {
+            RequestProfile profile = CURRENT.get();
+            if (profile != null) {
+                if (hit) {
+                    profile.cacheHits++;
+                } else {
+                    profile.cacheMisses++;
+                }
+            }
+        }
+    }
+
+    public static void countKeepHit(boolean hit) {
+        if (enabled) {
+            RequestProfile profile = CURRENT.get();
+            if (profile != null) {
+                if (hit) {
+                    profile.keepHits++;
+                } else {
+                    profile.keepMisses++;
+                }
+            }
+        }
+    }
+
+    public static void countExternalCall() {
+        if (enabled) {
+            RequestProfile profile = CURRENT.get();
+            if (profile != null) {
+                profile.externalCalls++;
+            }
+        }
+    }
+
+
+    private final long startWall;
+    private final long startCpu;
+    private final long startAllocated;
+
+    private boolean ended = false;
+    private long wallNanos = 0L;
+    private long cpuNanos = -1L;
+    private long allocatedBytes = -1L;
+    private int scopes = 0;
+    private int cacheHits = 0;
+    private int cacheMisses = 0;
+    private int keepHits = 0;
+    private int keepMisses = 0;
+    private int externalCalls = 0;
+
+    private RequestProfile() {
+        startWall = System.nanoTime();
+        startCpu = cpuTime();
+        startAllocated = allocatedBytes();
+    }
+
+    private static long cpuTime() {
+        try {
+            return THREADS.getCurrentThreadCpuTime();
+        } catch (UnsupportedOperationException uoe) {
+            return -1L;
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            try {
+                return ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes();
+            } catch (UnsupportedOperationException uoe) {
+                ;
+            }
+        }
+        return -1L;
+    }
+
+    /** Updates the times and allocated bytes to the present, unless the profile
+     *  has ended.  Called on the thread the profile was started on.
+     */
+    public void sample() {
+        if (ended) {
+            return;
+        }
+        wallNanos = System.nanoTime() - startWall;
+        long cpu = cpuTime();
+        cpuNanos = (startCpu >= 0 && cpu >= 0 ? cpu - startCpu : -1L);
+        long allocated = allocatedBytes();
+        allocatedBytes = (startAllocated >= 0 && allocated >= 0 ? allocated - startAllocated : -1L);
+    }
+
+    /** Takes a final sample and stops counting for this profile. **/
+    public void end() {
+        sample();
+        ended = true;
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /** Returns the CPU time used by the request, or -1 if it can't be measured. **/
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /** Returns the bytes allocated by the request, or -1 if they can't be measured. **/
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public int getScopes() {
+        return scopes;
+    }
+
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public int getKeepHits() {
+        return keepHits;
+    }
+
+    public int getKeepMisses() {
+        return keepMisses;
+    }
+
+    public int getExternalCalls() {
+        return externalCalls;
+    }
+
+    /** Returns the profile in the form of a response header value. **/
+    public String toHeaderValue() {
+        return "wall=" + RequestStats.millis(wallNanos / 1000L)
+               + (cpuNanos >= 0 ? "; cpu=" + RequestStats.millis(cpuNanos / 1000L) : "")
+               + (allocatedBytes >= 0 ? "; alloc=" + allocatedBytes : "")
+               + "; scopes=" + scopes
+               + "; cache=" + cacheHits + "/" + cacheMisses
+               + "; keep=" + keepHits + "/" + keepMisses
+               + "; external=" + externalCalls;
+    }
+
+    public String toString() {
+        return RequestStats.millis(wallNanos / 1000L) + " ms"
+               + (cpuNanos >= 0 ? " (" + RequestStats.millis(cpuNanos / 1000L) + " ms CPU)" : "")
+               + (allocatedBytes >= 0 ? ", " + allocatedBytes + " bytes allocated" : "")
+               + ", " + scopes + " scopes pushed, fragment cache " + cacheHits + " hits " + cacheMisses + " misses"
+               + ", global keep " + keepHits + " hits " + keepMisses + " misses, " + externalCalls + " external calls";
+    }
+}
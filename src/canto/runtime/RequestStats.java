@@ -0,0 +1,202 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * RequestStats.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counts, and for timed requests latencies and request profiles, kept
+ * by name for the status page.  Requests may be recorded on any number of
+ * threads at once.
+ */
+public class RequestStats {
+
+    /** The totals of the profiles recorded for one name. **/
+    public static class ProfileTotals {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder scopes = new LongAdder();
+        private final LongAdder cacheHits = new LongAdder();
+        private final LongAdder cacheMisses = new LongAdder();
+        private final LongAdder keepHits = new LongAdder();
+        private final LongAdder keepMisses = new LongAdder();
+        private final LongAdder externalCalls = new LongAdder();
+
+        void add(RequestProfile profile) {
+            count.increment();
+            // figures that can't be measured are -1, and are left out
+            cpuNanos.add(Math.max(profile.getCpuNanos(), 0L));
+            allocatedBytes.add(Math.max(profile.getAllocatedBytes(), 0L));
+            scopes.add(profile.getScopes());
+            cacheHits.add(profile.getCacheHits());
+            cacheMisses.add(profile.getCacheMisses());
+            keepHits.add(profile.getKeepHits());
+            keepMisses.add(profile.getKeepMisses());
+            externalCalls.add(profile.getExternalCalls());
+        }
+
+        /** Returns the number of profiled requests. **/
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos.sum();
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+
+        public long getScopes() {
+            return scopes.sum();
+        }
+
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses.sum();
+        }
+
+        public long getKeepHits() {
+            return keepHits.sum();
+        }
+
+        public long getKeepMisses() {
+            return keepMisses.sum();
+        }
+
+        public long getExternalCalls() {
+            return externalCalls.sum();
+        }
+    }
+
+    /** The count, latencies and profile totals for one name. **/
+    public static class Entry {
+        private final LongAdder requests = new LongAdder();
+        private volatile LatencyHistogram latencies = null;
+        private final ProfileTotals profiles = new ProfileTotals();
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public ProfileTotals getProfiles() {
+            return profiles;
+        }
+
+        /** Returns the latencies of the timed requests, or null if no request
+         *  under this name has been timed.
+         */
+        public LatencyHistogram getLatencies() {
+            return latencies;
+        }
+
+        private LatencyHistogram latencies() {
+            LatencyHistogram histogram = latencies;
+            if (histogram == null) {
+                synchronized (this) {
+                    histogram = latencies;
+                    if (histogram == null) {
+                        histogram = new LatencyHistogram();
+                        latencies = histogram;
+                    }
+                }
+            }
+            return histogram;
+        }
+    }
+
+    // sorted, so that the status page lists names in order
+    private final Map<String, Entry> entries = new ConcurrentSkipListMap<String, Entry>();
+
+    private Entry entryFor(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(name, n -> new Entry());
+        }
+        return entry;
+    }
+
+    /** Counts a request under the passed name. **/
+    public void record(String name) {
+        entryFor(name).requests.increment();
+    }
+
+    /** Counts a request under the passed name and records how long it took. **/
+    public void record(String name, long nanos) {
+        record(name, nanos, null);
+    }
+
+    /** Counts a request under the passed name and records how long it took,
+     *  and its profile if it was profiled.
+     */
+    public void record(String name, long nanos, RequestProfile profile) {
+        Entry entry = entryFor(name);
+        entry.requests.increment();
+        entry.latencies().recordNanos(nanos);
+        if (profile != null) {
+            profile.sample();
+            entry.profiles.add(profile);
+        }
+    }
+
+    /** Returns the entries, sorted by name. **/
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    /** Returns the statistics as a table of plain values, by name, suitable for
+     *  writing as JSON.  Latencies are in milliseconds.
+     */
+    public Map<String, Object> toTable() {
+        Map<String, Object> table = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Entry> mapEntry: entries.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            Map<String, Object> row = new LinkedHashMap<String, Object>();
+            row.put("requests", entry.getRequests());
+            LatencyHistogram latencies = entry.getLatencies();
+            if (latencies != null) {
+                row.put("mean_ms", millis(Math.round(latencies.getMean())));
+                row.put("p50_ms", millis(latencies.getPercentile(50)));
+                row.put("p90_ms", millis(latencies.getPercentile(90)));
+                row.put("p99_ms", millis(latencies.getPercentile(99)));
+                row.put("max_ms", millis(latencies.getMax()));
+            }
+            ProfileTotals profiles = entry.getProfiles();
+            long n = profiles.getCount();
+            if (n > 0) {
+                Map<String, Object> profile = new LinkedHashMap<String, Object>();
+                profile.put("requests", n);
+                profile.put("mean_cpu_ms", millis(profiles.getCpuNanos() / n / 1000L));
+                profile.put("mean_allocated_bytes", profiles.getAllocatedBytes() / n);
+                profile.put("scopes", profiles.getScopes());
+                profile.put("cache_hits", profiles.getCacheHits());
+                profile.put("cache_misses", profiles.getCacheMisses());
+                profile.put("keep_hits", profiles.getKeepHits());
+                profile.put("keep_misses", profiles.getKeepMisses());
+                profile.put("external_calls", profiles.getExternalCalls());
+                row.put("profile", profile);
+            }
+            table.put(mapEntry.getKey(), row);
+        }
+        return table;
+    }
+
+    /** Converts microseconds to milliseconds, to three decimal places. **/
+    static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,256 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ResponseCache.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache of whole page responses, used by the server for pages that a site lists
+ * in the <code>cached_pages</code> property of its <code>site_config</code>.  Only
+ * public pages defined as static or global are eligible.  A response is cached
+ * under the site name, page name and request parameters, together with a strong
+ * ETag computed from its content, so that repeated requests and conditional
+ * requests can be answered without constructing the page.  Compressed copies
+ * of a response are kept with it, so each is only compressed once.
+ *
+ * The cache holds at most <code>canto.responsecache.max</code> responses (default
+ * 1000), evicting the least recently used first.  It is cleared when a site is
+ * reloaded.
+ */
+public class ResponseCache {
+
+    private static final Log LOG = Log.getLogger(ResponseCache.class);
+
+    public static final String MAX_PROPERTY = "canto.responsecache.max";
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /** Larger responses are not cached. **/
+    public static final int MAX_RESPONSE_SIZE = 1024 * 1024;
+
+    /** When the cache is full, responses are evicted until it is this fraction full. **/
+    private static final double EVICT_TO = 0.9;
+
+    private static volatile int maxEntries = Integer.getInteger(MAX_PROPERTY, DEFAULT_MAX_ENTRIES);
+
+    /** A cached response.  Compressed versions of the body are made the first
+     *  time they are requested and kept with it.
+     */
+    public static final class Entry {
+        public final byte[] body;
+        public final String etag;
+        private final byte[][] encodedBodies = new byte[ContentEncoding.values().length][];
+        volatile long lastUsed;
+
+        Entry(byte[] body, String etag) {
+            this.body = body;
+            this.etag = etag;
+            this.lastUsed = System.nanoTime();
+        }
+
+        /** Returns true if the body is sent with the passed coding, which it
+         *  isn't if the coding is null or the body is too small to bother.
+         */
+        public boolean isEncoded(ContentEncoding encoding) {
+            return encoding != null && body.length >= ContentEncoding.MIN_COMPRESSED_SIZE;
+        }
+
+        /** Returns the body as sent with the passed coding. **/
+        public byte[] getBody(ContentEncoding encoding) {
+            if (!isEncoded(encoding)) {
+                return body;
+            }
+            byte[] encoded = encodedBodies[encoding.ordinal()];
+            if (encoded == null) {
+                encoded = encoding.compress(body);
+                encodedBodies[encoding.ordinal()] = encoded;
+            }
+            return encoded;
+        }
+
+        /** Returns the ETag of the body as sent with the passed coding.  Each
+         *  coding gets its own strong ETag.
+         */
+        public String getETag(ContentEncoding encoding) {
+            if (!isEncoded(encoding)) {
+                return etag;
+            }
+            return etag.substring(0, etag.length() - 1) + '-' + encoding.getToken() + '"';
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private static final ReentrantLock evictLock = new ReentrantLock();
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder notModified = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    /** Sets the maximum number of cached responses; zero turns the cache off. **/
+    public static void setMaxEntries(int max) {
+        maxEntries = max;
+        if (max <= 0) {
+            entries.clear();
+        }
+    }
+
+    public static int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public static boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    public static int size() {
+        return entries.size();
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    public static long getNotModified() {
+        return notModified.sum();
+    }
+
+    public static long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** Discards every cached response.  Called when a site is reloaded. **/
+    public static void clear() {
+        entries.clear();
+    }
+
+    /** Returns the key for a request for the passed page with the passed parameters.
+     *  Parameters are sorted by name, so the order they appear in the request
+     *  doesn't matter.
+     */
+    public static String getKey(String siteName, String pageName, Map<String, String> params) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(siteName).append('\u0000').append(pageName);
+        if (params != null && params.size() > 0) {
+            Map<String, String> sorted = (params instanceof TreeMap ? params : new TreeMap<String, String>(params));
+            for (Map.Entry<String, String> param: sorted.entrySet()) {
+                sb.append('\u0000').append(param.getKey()).append('=').append(param.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Returns the response cached under the passed key, or null if there is none. **/
+    public static Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.lastUsed = System.nanoTime();
+        hits.increment();
+        return entry;
+    }
+
+    /** Caches the passed response body under the passed key, and returns the new
+     *  entry, or null if the response is too large to cache.
+     */
+    public static Entry put(String key, byte[] body) {
+        if (maxEntries <= 0 || body.length > MAX_RESPONSE_SIZE) {
+            return null;
+        }
+        Entry entry = new Entry(body, getETag(body));
+        entries.put(key, entry);
+        evictIfFull();
+        return entry;
+    }
+
+    /** Returns true if the passed If-None-Match header value matches the passed
+     *  ETag, in which case the response is not modified.  Because the server
+     *  only sends strong ETags, a weak tag in the header matches it only if the
+     *  opaque parts are equal, per the weak comparison used for If-None-Match.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String match = ifNoneMatch.trim();
+        if (match.equals("*")) {
+            notModified.increment();
+            return true;
+        }
+        for (String tag: match.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                notModified.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns a strong ETag for the passed content. **/
+    static String getETag(byte[] body) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException("SHA-256 not available: " + nsae);
+        }
+        byte[] hash = digest.digest(body);
+        StringBuilder sb = new StringBuilder(34);
+        sb.append('"');
+        for (int i = 0; i < 16; i++) {
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    private static void evictIfFull() {
+        int max = maxEntries;
+        if (entries.size() <= max || !evictLock.tryLock()) {
+            return;
+        }
+        try {
+            int excess = entries.size() - (int) (max * EVICT_TO);
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+            candidates.sort((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed));
+            int evicted = 0;
+            for (int i = 0; i < candidates.size() && evicted < excess; i++) {
+                Map.Entry<String, Entry> e = candidates.get(i);
+                if (entries.remove(e.getKey(), e.getValue())) {
+                    evicted++;
+                }
+            }
+            evictions.add(evicted);
+            LOG.debug("Evicted " + evicted + " responses from response cache");
+        } finally {
+            evictLock.unlock();
+        }
+    }
+}
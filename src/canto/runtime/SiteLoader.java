@@ -15,6 +15,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.antlr.v4.runtime.RecognitionException;
 
@@ -23,17 +27,22 @@ import canto.runtime.CantoServer;
 import cantocore.CoreSource;
 
 /**
- * A SiteLoader loads a Canto path.  Parsing occurs in a background thread.  This
- * allows SiteLoader to process multiple files simultaneously.
- *
+ * A SiteLoader loads a Canto path.  Loading proceeds in phases (core, config and
+ * site).  Within a phase, the sources are parsed in parallel on a pool of loader
+ * threads, one per available processor; the resulting sites are then added to the
+ * core one at a time, in the order the sources were found, so the outcome does not
+ * depend on which parse finishes first.  File and URL sources that have been
+ * loaded before are read from the site cache instead of being parsed again.
  */
 public class SiteLoader {
     private static final Log LOG = Log.getLogger(SiteLoader.class);
     
-    private static final long LOAD_SLEEP = 200L;
+    private static final int LOAD_THREADS = Runtime.getRuntime().availableProcessors();
 
     private HashMap<String, String> loadedFiles = new HashMap<String, String>();
     private List<CantoSourceLoader> loaders = new ArrayList<CantoSourceLoader>();
+    private ExecutorService executor = null;
+    private SiteCache siteCache = SiteCache.getDefault();
     protected Core core;
     private String siteName;
     private URI externalURI;
@@ -75,12 +84,30 @@ public class SiteLoader {
      *  property for this site is true, then the core can files are loaded from the
      *  corepath, if a definition for "corepath" has been loaded, or else as a resource
      *  from the cantocore directory in the classpath.</li>
+     *  </ol>
+     *  The time taken by each phase is logged.
      */
     public void load() {
+        long startTime = System.currentTimeMillis();
+        executor = Executors.newFixedThreadPool(LOAD_THREADS, r -> {
+            Thread thread = new Thread(r, "canto-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            loadPhases();
+        } finally {
+            executor.shutdownNow();
+            executor = null;
+        }
+        LOG.info("Site loaded in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private void loadPhases() {
     	// if the core is empty, load core canto files useing the loader
         // from the CoreSource class, which will most often be loading from canto.jar
 
-        int finishedLoaders = 0;
+        List<CantoSourceLoader> pending = new ArrayList<CantoSourceLoader>();
         if (core.isEmpty()) {
             String[] corePaths = CoreSource.getCorePaths();
             Class<CoreSource> cs = CoreSource.class;
@@ -92,9 +119,10 @@ public class SiteLoader {
                         LOG.warn(corePath + " not found");
                         continue;
                     }
-                    loadURL(url, loaders, true);
-                    LOG.info(corePath + " autoloaded");
+                    loadURL(url, pending);
                 }
+                runLoaders("core", pending);
+                LOG.info("Core autoloaded");
 
             } catch (Exception e) {
                 if (corePaths.length == 0) {
@@ -109,12 +137,11 @@ public class SiteLoader {
                 throw new SiteLoadException("Unable to autoload core: " + e);
             }
         }
-        waitForLoaders(finishedLoaders);
-        finishedLoaders = loaders.size();
-
         // resolve references in core and mark as closed to prevent further definitions from being added
+        long resolveStart = System.currentTimeMillis();
         int unresolved = core.resolve(null);
         core.setClosed(true);
+        LOG.info("Core resolved in " + (System.currentTimeMillis() - resolveStart) + " ms");
         
         if (unresolved > 0) {
             LOG.warn("Unresolved references in core: " + unresolved);
@@ -139,24 +166,25 @@ public class SiteLoader {
             }
         }
         if (url != null) {
-            loadURL(url, loaders, true);
+            loadURL(url, pending);
+            runLoaders("config", pending);
             LOG.info(config + " loaded from " + url.toString());
         } else if (sourceString != null) {            
-            loadString(sourceString, loaders, true);
+            loadString(sourceString, pending);
+            runLoaders("config", pending);
             LOG.info(config + " loaded from source code");
         } else if (Files.exists(configPath)) {
-            loadFile(configPath.toFile(), filter, loaders, true);
+            loadFile(configPath.toFile(), filter, pending);
+            runLoaders("config", pending);
             LOG.info(config + " loaded from " + configPath.toString());
         } else if (externalPath != null) {
             String[] paths = parsePath(externalPath);
             for (int i = 0; i < paths.length; i++) {
-                loadFile(new File(paths[i]), filter, loaders, true);
+                loadFile(new File(paths[i]), filter, pending);
             }
+            runLoaders("config", pending);
         }
 
-        waitForLoaders(finishedLoaders);
-        finishedLoaders = loaders.size();
-
 
         // the next step requires querying the configuration for cantopath and other
         // useful information. The configuration is presumed to have loaded to the default
@@ -221,37 +249,35 @@ public class SiteLoader {
         if (internalPath != null && internalPath.length() > 0 && !internalPath.equals(externalPath)) {
             String[] paths = parsePath(internalPath);
             for (int i = 0; i < paths.length; i++) {
-                loadFile(new File(paths[i]), filter, loaders, true);
+                loadFile(new File(paths[i]), filter, pending);
             }
-    
-            waitForLoaders(finishedLoaders);
-            finishedLoaders = loaders.size();
+            runLoaders("site", pending);
 
+            resolveStart = System.currentTimeMillis();
             core.resolveOpenSites();
+            LOG.info("Sites resolved in " + (System.currentTimeMillis() - resolveStart) + " ms");
             
             // everything is loaded, now link
             //link(loaders);
             
-            synchronized (loadedFiles) {
-                int size = loaders.size();
-                sources = new Object[size];
-                parseResults = new Site[size];
-                exceptions = new Exception[size];
-    
-                for (int i = 0; i < size; i++) {
-                    CantoSourceLoader loader = loaders.get(i);
-                    Object source = loader.getSource();
-                    String sourceId = (source instanceof File ? ((File) source).getAbsolutePath() : source.toString());
-                    Exception e = loader.getException();
-                    if (e != null) {
-                        loadedFiles.put(sourceId, "Exception: " + e.toString());
-                    } else {
-                        loadedFiles.put(sourceId, "OK");
-                    }
-                    sources[i] = source;
-                    parseResults[i] = loader.getParseResult(); 
-                    exceptions[i] = e;
+            int size = loaders.size();
+            sources = new Object[size];
+            parseResults = new Site[size];
+            exceptions = new Exception[size];
+
+            for (int i = 0; i < size; i++) {
+                CantoSourceLoader loader = loaders.get(i);
+                Object source = loader.getSource();
+                String sourceId = (source instanceof File ? ((File) source).getAbsolutePath() : source.toString());
+                Exception e = loader.getException();
+                if (e != null) {
+                    loadedFiles.put(sourceId, "Exception: " + e.toString());
+                } else {
+                    loadedFiles.put(sourceId, "OK");
                 }
+                sources[i] = source;
+                parseResults[i] = loader.getParseResult(); 
+                exceptions[i] = e;
             }
         }
     }
@@ -349,34 +375,53 @@ public class SiteLoader {
 
     }
     
-    private final void waitForLoaders(int startIx) {
-        
-        int endIx = loaders.size();
-        if (startIx >= endIx) {
+    /** Parses the pending sources in parallel, then adds the resulting sites to the
+     *  core one at a time, in the order the sources were found.  Throws a
+     *  SiteLoadException for the first source that fails to load.  The pending
+     *  list is cleared.
+     */
+    private void runLoaders(String phase, List<CantoSourceLoader> pending) {
+        int numSources = pending.size();
+        if (numSources == 0) {
             return;
         }
-        
-        synchronized (loaders) {
-            while (true) {
-                boolean stillRunning = false;
-                for (int i = startIx; i < endIx; i++) {
-                    CantoSourceLoader loader = loaders.get(i);
-                    if (loader.isLoading()) {
-                        stillRunning = true;
-                        break;
-                    }
-                }
-                if (stillRunning) {
-                    try {
-                        Thread.sleep(LOAD_SLEEP);
-                    } catch (InterruptedException ie) {
-                        ;
-                    }
-                } else {
-                    return;
-                }
+        long startTime = System.currentTimeMillis();
+        List<CompletableFuture<Void>> parses = new ArrayList<CompletableFuture<Void>>(numSources);
+        for (CantoSourceLoader loader: pending) {
+            parses.add(CompletableFuture.runAsync(loader, executor));
+        }
+
+        for (int i = 0; i < numSources; i++) {
+            CantoSourceLoader loader = pending.get(i);
+            try {
+                parses.get(i).join();
+            } catch (CompletionException ce) {
+                Throwable cause = (ce.getCause() != null ? ce.getCause() : ce);
+                LOG.error("Exception loading " + loader.getSourceName() + ": " + cause);
+                throw new SiteLoadException("Unable to load " + loader.getSourceName() + ": " + cause);
+            }
+        }
+        long parseTime = System.currentTimeMillis() - startTime;
+        int numCached = 0;
+
+        startTime = System.currentTimeMillis();
+        for (CantoSourceLoader loader: pending) {
+            if (loader.isFromCache()) {
+                numCached++;
+            }
+            loader.addToCore();
+            loaders.add(loader);
+            Exception e = loader.getException();
+            if (e != null) {
+                LOG.error("Exception loading " + loader.getSourceName() + ": " + e);
+                throw new SiteLoadException("Unable to load " + loader.getSourceName() + ": " + e);
             }
         }
+        long addTime = System.currentTimeMillis() - startTime;
+        
+        LOG.info("Loaded " + numSources + " " + phase + " source" + (numSources == 1 ? "" : "s")
+                 + " (" + numCached + " precompiled): parsed in " + parseTime + " ms, added in " + addTime + " ms");
+        pending.clear();
     }
 
 
@@ -384,6 +429,17 @@ public class SiteLoader {
         return core;
     }
 
+    /** Returns the cache of precompiled sites used by this loader, or null if
+     *  sources are always parsed.
+     */
+    public SiteCache getSiteCache() {
+        return siteCache;
+    }
+
+    public void setSiteCache(SiteCache siteCache) {
+        this.siteCache = siteCache;
+    }
+
     public Object[] getSources() {
         return sources;
     }
@@ -427,7 +483,10 @@ public class SiteLoader {
         return (File[]) fileList.toArray(files);
     }
     
-    private void loadFile(File path, String filter, List<CantoSourceLoader> loaders, boolean wait) {
+    /** Adds a loader for the passed file, or for every matching file in the passed
+     *  directory or wildcard path, to the pending list.
+     */
+    private void loadFile(File path, String filter, List<CantoSourceLoader> pending) {
         try {
 
             // recurse subdirectories
@@ -444,43 +503,28 @@ public class SiteLoader {
                 int last = files.length - 1;
                 for (int i = 0; i < last; i++) {
                     if (files[i].isDirectory()) {
-                        loadFile(files[i], filter, loaders, wait);
+                        loadFile(files[i], filter, pending);
                     } else if (matches(files[i], filter)) {
-                        loadFile(files[i], filter, loaders, wait);
+                        loadFile(files[i], filter, pending);
                     } else {
                         LOG.info("Skipping " + files[i].getAbsolutePath());
                     }
                 }
                 if (last >= 0 ) {
                     if (files[last].isDirectory()) {
-                        loadFile(files[last], filter, loaders, wait);
+                        loadFile(files[last], filter, pending);
                     } else if (matches(files[last], filter)) {
-                        loadFile(files[last], filter, loaders, wait);
+                        loadFile(files[last], filter, pending);
                     } else {
                         LOG.info("Skipping " + files[last].getAbsolutePath());
                     }
                 }
             } else {
                 String abspath = path.getAbsolutePath();
-                boolean load = false;
-                synchronized (loadedFiles) {
-                    if (loadedFiles.get(abspath) == null) {
-                        loadedFiles.put(abspath, "loading");
-                        load = true;
-                    }
-                }
-
-                if (load) {
+                if (loadedFiles.get(abspath) == null) {
+                    loadedFiles.put(abspath, "loading");
                     LOG.info("Loading " + abspath + "...");
-                    CantoSourceLoader fileLoader = new CantoSourceLoader(path);
-                    fileLoader.load(wait);
-                    loaders.add(fileLoader);
-                    System.out.flush();
-                    Exception e = fileLoader.getException();
-                    if (e != null) {
-                        throw e;
-                    }
-
+                    pending.add(new CantoSourceLoader(path));
                 }
             }
 
@@ -492,62 +536,24 @@ public class SiteLoader {
         }
     }
 
-    private void loadURL(URL url, List<CantoSourceLoader> loaders, boolean wait) {
-        try {
-            String urlname = url.toString();
-            boolean load = false;
-            synchronized (loadedFiles) {
-                if (loadedFiles.get(urlname) == null) {
-                    loadedFiles.put(urlname, "loading");
-                    load = true;
-                }
-            }
-
-            if (load) {
-                LOG.info("Loading " + url.toString() + "...");
-                CantoSourceLoader urlLoader = new CantoSourceLoader(url);
-                urlLoader.load(wait);
-                loaders.add(urlLoader);
-                Exception e = urlLoader.getException();
-                if (e != null) {
-                    throw e;
-                }
-            }
-
-        } catch (Exception e) {
-            LOG.error("Exception loading URL: " + url.toString() + ": " + e);
-            System.out.flush();
-            e.printStackTrace();
-            throw new SiteLoadException("Unable to load " + url.toString() + ": " + e);
+    private void loadURL(URL url, List<CantoSourceLoader> pending) {
+        String urlname = url.toString();
+        if (loadedFiles.get(urlname) == null) {
+            loadedFiles.put(urlname, "loading");
+            LOG.info("Loading " + urlname + "...");
+            pending.add(new CantoSourceLoader(url));
         }
     }
 
-    private void loadString(String src, List<CantoSourceLoader> loaders, boolean wait) {
-        try {
-            LOG.info("Loading source from string...");
-            
-            Reader reader = new StringReader(src);
-            String srcName = reader.toString();
-            synchronized (loadedFiles) {
-                if (loadedFiles.get(srcName) == null) {
-                    loadedFiles.put(srcName, "loading");
-                }
-            }
-
-            CantoSourceLoader srcLoader = new CantoSourceLoader(reader);
-            srcLoader.load(wait);
-            loaders.add(srcLoader);
-            Exception e = srcLoader.getException();
-            if (e != null) {
-                throw e;
-            }
-
-        } catch (Exception e) {
-            LOG.error("Exception loading source code: " + e);
-            System.out.flush();
-            e.printStackTrace();
-            throw new SiteLoadException("Unable to load source code: " + e);
+    private void loadString(String src, List<CantoSourceLoader> pending) {
+        LOG.info("Loading source from string...");
+        
+        Reader reader = new StringReader(src);
+        String srcName = reader.toString();
+        if (loadedFiles.get(srcName) == null) {
+            loadedFiles.put(srcName, "loading");
         }
+        pending.add(new CantoSourceLoader(reader));
     }
 
     
@@ -575,13 +581,17 @@ public class SiteLoader {
     }
 
 
+    /** Loads a single source.  <code>run</code> parses the source and may be called
+     *  on any thread; <code>addToCore</code> adds the parsed site to the core and must
+     *  be called by the thread doing the loading, after <code>run</code> completes.
+     */
     private class CantoSourceLoader implements Runnable {
 
+        private CantoBuilder cantoBuilder = null;
+        private boolean fromCache = false;
         private Site parseResult = null;
         private Exception exception = null;
         private Object source;
-        private Thread loaderThread = null;
-        private Object semaphore = new Object();
 
         public CantoSourceLoader(Object source) {
             this.source = source;
@@ -595,6 +605,10 @@ public class SiteLoader {
             return source;
         }
 
+        public boolean isFromCache() {
+            return fromCache;
+        }
+
         public String getSourceName() {
             if (source instanceof File || source instanceof URL) {
                 return source.toString();
@@ -607,69 +621,62 @@ public class SiteLoader {
             }
         }
 
-        protected void load(boolean wait) {
-            if (loaderThread != null && loaderThread.isAlive()) {
-                throw new ConcurrentModificationException("Document already loading");
-            }
-            loaderThread = new Thread(this);
-            loaderThread.setDaemon(true);
-            loaderThread.start();
-            if (wait) {
-                finishLoading();
-            }
-        }
-
-        protected boolean isLoading() {
-            return loaderThread != null;
-        }
-
-        private void finishLoading() {
-            if (Thread.currentThread() == loaderThread) {
-                throw new IllegalStateException("can't call finishLoading() from the loader thread");
-            }
-            if (isLoading()) {
-                synchronized (semaphore) {
-                    try {
-                        semaphore.wait();
-                    } catch (InterruptedException ie) {
-                        ;
-                    }
+        /**
+         * Parses the source.
+         */
+        public void run() {
+            try {
+                cantoBuilder = new CantoBuilder(source, siteCache);
+                parseResult = cantoBuilder.parseSite();
+                fromCache = cantoBuilder.isFromCache();
+                exception = cantoBuilder.getException();
+                if (exception != null) {
+                    LOG.error("...error loading " + getSourceName() + ": " + exception.getMessage());
+                } else if (!fromCache) {
+                    LOG.info("...parsed " + getSourceName() + " in " + cantoBuilder.getParseTime() + " ms"
+                             + (cantoBuilder.isFullLL() ? " (reparsed with full LL prediction)" : ""));
                 }
+
+            } catch (Exception e) {
+                handleException(e);
             }
         }
 
         /**
-         * Loader thread.
+         * Adds the parsed site to the core.
          */
-        public void run() {
+        protected void addToCore() {
+            if (parseResult == null || exception != null) {
+                return;
+            }
             try {
-                CantoBuilder cantoBuilder = new CantoBuilder(source);
-                Site site = cantoBuilder.buildSite(core);
-                this.parseResult = site;
+                parseResult = cantoBuilder.addToCore(parseResult, core);
                 exception = cantoBuilder.getException();
                 if (exception != null) {
                     LOG.error("...error loading " + getSourceName() + ": " + exception.getMessage());
                 }
 
-            } catch (RecognitionException re) {
-                LOG.error("...syntax error in " + getSourceName() + ": " + re.getMessage());
-                exception = re;
+            } catch (Exception e) {
+                handleException(e);
+
+            } finally {
+                // release the parser and its tokens
+                cantoBuilder = null;
+            }
+        }
 
-            } catch (DuplicateDefinitionException dde) {
-                LOG.error("...duplicate definition in " + getSourceName() + ": " + dde.getMessage());
-                exception = dde;
+        private void handleException(Exception e) {
+            exception = e;
+            if (e instanceof RecognitionException) {
+                LOG.error("...syntax error in " + getSourceName() + ": " + e.getMessage());
 
-            } catch (Exception e) {
-                exception = e;
+            } else if (e instanceof DuplicateDefinitionException) {
+                LOG.error("...duplicate definition in " + getSourceName() + ": " + e.getMessage());
+
+            } else {
                 LOG.error("...exception loading " + getSourceName() + ": " + e);
                 System.out.flush();
                 e.printStackTrace();
-
-            } finally {
-                loaderThread = null;
-                synchronized (semaphore) {
-                    semaphore.notifyAll();
-                }
             }
         }
 
@@ -678,4 +685,3 @@ public class SiteLoader {
         }
     }
 }
-
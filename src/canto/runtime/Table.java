@@ -95,7 +95,14 @@ public class Table {
         }        
     }
 
+    /** Returns the table in the passed string.  A table made up only of data is
+     *  read directly into a map; anything else is parsed as Canto source.
+     */
     public static Map<String, Object> parse(Context context, String str) throws Redirection {
+        Map<String, Object> table = DataLiteralReader.readTable(str);
+        if (table != null) {
+            return table;
+        }
         try {
             CantoBuilder builder = new CantoBuilder(str);
             CollectionDefinition collectionDef = builder.buildCollectionDefinition();
@@ -18,6 +18,7 @@ import canto.lang.Context;
 import canto.lang.Definition;
 import canto.lang.Instantiation;
 import canto.lang.NameNode;
+import canto.lang.PrimitiveValue;
 import canto.lang.Redirection;
 import canto.lang.ResolvedArray;
 import canto.lang.ResolvedTable;
@@ -1022,7 +1023,11 @@ public class Utils {
         Map<String, Object> cache = scope.getKeep();
         
         if (str != null) {
-            Map<String, Object> table = Table.parse(context, str);
+            // serialized objects are JSON; anything else is left to the Canto parser
+            Map<String, Object> table = DataLiteralReader.readJsonTable(str);
+            if (table == null) {
+                table = Table.parse(context, str);
+            }
             if (def.isTable()) {
                 handleTable(context, cache, def, def.getName(), table);
             } else {
@@ -1072,10 +1077,28 @@ public class Utils {
                         handleTable(context, subcache, def, itemKey, ((ResolvedTable) obj).getTable());
                     }
                 } else {
-                    handleItem(context, subcache, def, itemKey, contents);
+                    handleItem(context, subcache, def, itemKey, decoded(contents));
+                }
+
+            // plain data, read directly by Table.parse
+            } else if (obj instanceof Map<?, ?>) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> itemTable = (Map<String, Object>) obj;
+                Definition childDef = context.getDefinition(itemKey, null, null);
+                if (childDef != null && !childDef.isTable()) {
+                    context.push(childDef, null, null);
+                    try {
+                        handleObject(context, subcache, childDef, itemTable);
+                    } finally {
+                        context.pop();
+                    }
+                } else {
+                    handleTable(context, subcache, def, itemKey, itemTable);
                 }
+            } else if (obj instanceof List<?>) {
+                handleArray(context, subcache, def, itemKey, (List<?>) obj);
             } else {
-                System.out.println("!! Entry is not a TableElement for " + itemKey + ": <" + obj.getClass().getName() + "> " + obj.toString());
+                handleItem(context, subcache, def, itemKey, obj);
             }
         }
     }
@@ -1100,15 +1123,31 @@ public class Utils {
                 } else if (obj instanceof ResolvedTable) {
                     handleTable(context, subcache, ownerDef, itemKey, ((ResolvedTable) obj).getTable());
                 } else {
-                    handleItem(context, subcache, ownerDef, itemKey, contents);
+                    handleItem(context, subcache, ownerDef, itemKey, decoded(contents));
                 }
+
+            // plain data, read directly by Table.parse
+            } else if (obj instanceof Map<?, ?>) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> itemTable = (Map<String, Object>) obj;
+                handleTable(context, subcache, ownerDef, itemKey, itemTable);
+            } else if (obj instanceof List<?>) {
+                handleArray(context, subcache, ownerDef, itemKey, (List<?>) obj);
             } else {
-                System.out.println("!! Entry is not a TableElement for " + key + ": <" + obj.getClass().getName() + "> " + obj.toString());
+                handleItem(context, subcache, ownerDef, itemKey, obj);
             }
         }
     }
     
     private static void handleArray(Context context, Map<String, Object> cache, Definition ownerDef, String key, CantoArray array) throws Redirection {
+        handleArray(context, cache, ownerDef, key, array.getSize(), array.iterator(), true);
+    }
+
+    private static void handleArray(Context context, Map<String, Object> cache, Definition ownerDef, String key, List<?> list) throws Redirection {
+        handleArray(context, cache, ownerDef, key, list.size(), list.iterator(), false);
+    }
+
+    private static void handleArray(Context context, Map<String, Object> cache, Definition ownerDef, String key, int size, Iterator<?> it, boolean parsed) throws Redirection {
         Definition def = context.getDefinition(key, null, null);
         if (def == null) {
             Instantiation instance = new Instantiation(new NameNode(key));
@@ -1120,15 +1159,21 @@ public class Utils {
         }
 
         Definition itemDef = ((CollectionDefinition) def).getElementType().getDefinition();
-        int size = array.getSize();
         Object[] objArray = new Object[size];
-        Iterator<Object> it = array.iterator();
         for (int i = 0; i < size && it.hasNext(); i++) {
             Object item = it.next();
             if (item instanceof ResolvedTable && itemDef != null && !itemDef.isTable()) {
                 Map<String, Object> subcache = Context.newHashMap(Object.class);
                 handleObject(context, subcache, itemDef, ((ResolvedTable) item).getTable());
                 item = subcache;
+            } else if (item instanceof Map<?, ?> && itemDef != null && !itemDef.isTable()) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> itemTable = (Map<String, Object>) item;
+                Map<String, Object> subcache = Context.newHashMap(Object.class);
+                handleObject(context, subcache, itemDef, itemTable);
+                item = subcache;
+            } else if (parsed) {
+                item = decoded(item);
             }
             objArray[i] = item;
         }
@@ -1138,6 +1183,21 @@ public class Utils {
     private static void handleItem(Context context, Map<String, Object> cache, Definition ownerDef, String key, Object item) throws Redirection {
         cache.put(key, item);
     }
+
+    /** Decodes the escape sequences in a string read by the Canto parser, which
+     *  keeps them as written.  Strings read as JSON are decoded as they are read.
+     */
+    private static Object decoded(Object item) {
+        if (item instanceof String) {
+            return DataLiteralReader.unescape((String) item);
+        } else if (item instanceof PrimitiveValue && ((PrimitiveValue) item).getValueClass() == String.class) {
+            String str = ((PrimitiveValue) item).getString();
+            String decodedStr = DataLiteralReader.unescape(str);
+            return (decodedStr == str ? item : new PrimitiveValue(decodedStr));
+        } else {
+            return item;
+        }
+    }
     
    
     /** Get the current time in milliseconds elapsed since 1/1/1970 **/
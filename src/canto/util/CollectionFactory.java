@@ -9,6 +9,7 @@
 package canto.util;
 
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * EmptyList is an implementation of List with no elements.
@@ -20,56 +21,56 @@ public class CollectionFactory {
     /** The default size for ArrayLists */
     public final static int TYPICAL_LIST_SIZE = 4;
 
-    private static int hashMapsCreated = 0;
-    public static int getNumHashMapsCreated() {
-        return hashMapsCreated;
+    private static final LongAdder hashMapsCreated = new LongAdder();
+    public static long getNumHashMapsCreated() {
+        return hashMapsCreated.sum();
     }
 
     public static <E> HashMap<String, E> newHashMap(Class<E> c) {
-        hashMapsCreated++;
+        hashMapsCreated.increment();
         return new HashMap<String, E>();
     }
 
     public static <E> HashMap<String, E> newHashMap(Map<String, E> map) {
-        hashMapsCreated++;
+        hashMapsCreated.increment();
         return new HashMap<String, E>(map);
     }
 
     public static <E> HashMap<String, Map<String,E>> newHashMapOfMaps(Class<E> c) {
-        hashMapsCreated++;
+        hashMapsCreated.increment();
         return new HashMap<String, Map<String, E>>();
     }
 
-    private static int arrayListsCreated = 0;
-    private static long totalListSize = 0L;
-    public static int getNumArrayListsCreated() {
-        return arrayListsCreated;
+    private static final LongAdder arrayListsCreated = new LongAdder();
+    private static final LongAdder totalListSize = new LongAdder();
+    public static long getNumArrayListsCreated() {
+        return arrayListsCreated.sum();
     }
     public static long getTotalListSize() {
-        return totalListSize;
+        return totalListSize.sum();
     }
 
     public static <E> ArrayList<E> newArrayList(int size, Class<E> c) {
-        arrayListsCreated++;
-        totalListSize += size;
+        arrayListsCreated.increment();
+        totalListSize.add(size);
         return new ArrayList<E>(size);
     }
 
     public static <E> ArrayList<E> newArrayList(int size, List<E> list) {
-        arrayListsCreated++;
-        totalListSize += size;
+        arrayListsCreated.increment();
+        totalListSize.add(size);
         return new ArrayList<E>(size);
     }
 
     public static <E> ArrayList<E> newArrayList(List<E> list) {
-        arrayListsCreated++;
-        totalListSize += list.size();
+        arrayListsCreated.increment();
+        totalListSize.add(list.size());
         return new ArrayList<E>(list);
     }
 
     public static <E> ArrayList<E> newArrayList(Class<E> c) {
-        arrayListsCreated++;
-        totalListSize += TYPICAL_LIST_SIZE;
+        arrayListsCreated.increment();
+        totalListSize.add(TYPICAL_LIST_SIZE);
         return new ArrayList<E>(TYPICAL_LIST_SIZE);
     }
 }
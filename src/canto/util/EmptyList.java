@@ -8,6 +8,7 @@
 
 package canto.util;
 
+import java.io.Serializable;
 import java.util.*;
 
 /**
@@ -16,7 +17,7 @@ import java.util.*;
  * @author Michael St. Hippolyte
  */
 
-public class EmptyList<E> extends AbstractList<E> {
+public class EmptyList<E> extends AbstractList<E> implements Serializable {
 
     public EmptyList() {
     }
@@ -8,6 +8,7 @@
 
 package canto.util;
 
+import java.io.Serializable;
 import java.util.*;
 
 
@@ -15,7 +16,7 @@ import java.util.*;
  * A SingleItemList is a List which only contains one entry.
  */
 
-public class SingleItemList<E> extends AbstractList<E> {
+public class SingleItemList<E> extends AbstractList<E> implements Serializable {
 
     private E item;
 
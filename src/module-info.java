@@ -7,4 +7,5 @@ module cantolang {
     requires org.eclipse.jetty.util;
     requires org.antlr.antlr4.runtime;
     requires ch.qos.logback.classic;
+    requires jdk.management;
 }
\ No newline at end of file
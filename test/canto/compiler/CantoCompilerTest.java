@@ -0,0 +1,100 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * CantoCompilerTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.compiler;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import canto.lang.Core;
+import canto.lang.Definition;
+import canto.lang.Instantiation;
+import canto.runtime.SiteLoader;
+
+public class CantoCompilerTest {
+
+    private static final String SITE_A = "site a { "
+            + "public page pa [| <p>a says {= b.greeting; =}</p> |] "
+            + "public page pa2 [| <p>a alone</p> |] "
+            + "}";
+
+    private static final String SITE_B = "site b { "
+            + "greeting = \"hello\" "
+            + "public page pb [| <p>b</p> |] "
+            + "}";
+
+    @TempDir
+    Path tempDir;
+
+    /** Loads the test configuration rather than one in the current directory,
+     *  and writes every page to the output directory rather than to a directory
+     *  under the current one named for its site.
+     */
+    private class TestCompiler extends CantoCompiler {
+        protected SiteLoader createSiteLoader( Core core, String cantoPath, String filter ) {
+            return new SiteLoader( core, "", tempDir.resolve( "config.canto" ).toUri() );
+        }
+
+        protected File createOutputDirectory( Definition page, Instantiation instance ) {
+            return tempDir.resolve( "out" ).toFile();
+        }
+    }
+
+    private Map<String, CantoCompiler.PageResult> build() {
+        String[] args = { "-i", "-m", tempDir.resolve( "test.manifest" ).toString(), tempDir.resolve( "src" ).toString() };
+        List<CantoCompiler.PageResult> results = new TestCompiler().compile( args );
+        Map<String, CantoCompiler.PageResult> resultMap = new HashMap<String, CantoCompiler.PageResult>();
+        for ( CantoCompiler.PageResult result: results ) {
+            resultMap.put( result.name, result );
+        }
+        return resultMap;
+    }
+
+    @Test
+    @DisplayName("An incremental build should only regenerate the pages that depend on an edited source")
+    public void testIncrementalBuild() throws Exception {
+        Path src = tempDir.resolve( "src" );
+        Files.createDirectories( src );
+        Files.createDirectories( tempDir.resolve( "out" ) );
+        Files.writeString( src.resolve( "a.canto" ), SITE_A );
+        Files.writeString( src.resolve( "b.canto" ), SITE_B );
+        Files.writeString( tempDir.resolve( "config.canto" ), "{ site_config main_site = tc "
+                + "sitename = main_site.name cantopath = main_site.cantopath "
+                + "site_config tc { name = \"a\" cantopath = \"" + src + "\" } }" );
+
+        Map<String, CantoCompiler.PageResult> first = build();
+        Assertions.assertThat( first ).containsKeys( "a.pa", "a.pa2", "b.pb" );
+        Assertions.assertThat( first.values() ).allMatch( r -> r.generated && r.written );
+        Assertions.assertThat( tempDir.resolve( "test.manifest" ) ).exists();
+        Assertions.assertThat( Files.readString( tempDir.resolve( "out/pa.html" ) ) ).contains( "a says hello" );
+
+        // nothing changed, so nothing is generated
+        Map<String, CantoCompiler.PageResult> second = build();
+        Assertions.assertThat( second.values() ).noneMatch( r -> r.generated );
+
+        Files.writeString( src.resolve( "b.canto" ), SITE_B.replace( "hello", "goodbye" ) );
+        Map<String, CantoCompiler.PageResult> third = build();
+
+        // pa reads from b and pb is in b; pa2 only depends on a
+        Assertions.assertThat( third.get( "a.pa" ).generated ).isTrue();
+        Assertions.assertThat( third.get( "a.pa" ).written ).isTrue();
+        Assertions.assertThat( third.get( "b.pb" ).generated ).isTrue();
+        Assertions.assertThat( third.get( "b.pb" ).written ).isFalse();
+        Assertions.assertThat( third.get( "a.pa2" ).generated ).isFalse();
+        Assertions.assertThat( Files.readString( tempDir.resolve( "out/pa.html" ) ) ).contains( "a says goodbye" );
+    }
+}
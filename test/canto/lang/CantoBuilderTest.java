@@ -11,12 +11,22 @@ package canto.lang;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import canto.parser.CantoLexer;
+import canto.parser.CantoParser;
+import cantocore.CoreSource;
+
 public class CantoBuilderTest {
 
 
@@ -62,4 +72,38 @@ public class CantoBuilderTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Valid source should be parsed without falling back to full LL prediction")
+    public void testSLLParse() throws IOException {
+        CantoBuilder builder = new CantoBuilder("site f { g(int n) { \"g\"; n; } h = g(1) + g(2) }");
+        Assertions.assertThat(builder.parseSite()).isNotNull();
+        Assertions.assertThat(builder.isFullLL()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Source with syntax errors should be parsed again with full LL prediction")
+    public void testLLFallback() throws IOException {
+        CantoBuilder builder = new CantoBuilder("site f { g(int n) { \"g\"; n; } h = g(1) + }");
+        builder.parseSite();
+        Assertions.assertThat(builder.isFullLL()).isTrue();
+    }
+
+    @Test
+    @DisplayName("SLL and full LL prediction should build the same parse trees for the core")
+    public void testSLLMatchesLL() throws IOException {
+        for (String corePath: CoreSource.getCorePaths()) {
+            URL url = CoreSource.class.getResource(corePath);
+            Assertions.assertThat(parseTree(url, PredictionMode.SLL)).isEqualTo(parseTree(url, PredictionMode.LL));
+        }
+    }
+
+    private static String parseTree(URL url, PredictionMode mode) throws IOException {
+        try (InputStream in = url.openStream()) {
+            CantoParser parser = new CantoParser(new CommonTokenStream(new CantoLexer(CharStreams.fromStream(in))));
+            parser.getInterpreter().setPredictionMode(mode);
+            String tree = parser.compilationUnit().toStringTree(parser);
+            Assertions.assertThat(parser.getNumberOfSyntaxErrors()).isZero();
+            return tree;
+        }
+    }
+}
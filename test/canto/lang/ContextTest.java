@@ -1,5 +1,15 @@
 package canto.lang;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.assertj.core.api.Assertions;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -80,4 +90,159 @@ class ContextTest {
             Assertions.assertThat(context.size()).isEqualTo(initialSize);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Global data kept by parallel requests should not be lost")
+    void testParallelGlobalKeep() throws Exception {
+        int numDefs = 200;
+        StringBuilder sb = new StringBuilder("site g {");
+        for (int i = 0; i < numDefs; i++) {
+            sb.append(" global int g").append(i).append(" = ").append(i).append(";");
+        }
+        sb.append(" }");
+        Site globalSite = new CantoBuilder(sb.toString()).buildSite(new Core(true));
+
+        int numThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < numThreads; t++) {
+                int first = t;
+                futures.add(executor.submit(() -> {
+                    Context requestContext = new Context(globalSite);
+                    for (int i = first; i < numDefs; i += numThreads) {
+                        Definition def = globalSite.getDefinition("g" + i);
+                        requestContext.putData(def, null, null, def.getName(), Integer.valueOf(i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future: futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assertions.assertThat(globalSite.getGlobalKeep()).hasSize(numDefs);
+    }
+
+    @Test
+    @DisplayName("Copies of a context used by parallel requests should share cached data safely")
+    void testParallelContextCopies() throws Exception {
+        int numThreads = 8;
+        StringBuilder sb = new StringBuilder("site cc { int base = 7 shared = base * 2 ");
+        sb.append("holder { keep: int k = base + 1 } ");
+        for (int t = 0; t < numThreads; t++) {
+            sb.append("p").append(t).append(" { \"p").append(t).append(":\"; shared; \":\"; holder.k; } ");
+        }
+        sb.append("}");
+        Site ccSite = TestSites.build(sb.toString());
+        Context sessionContext = new Context(ccSite);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int t = 0; t < numThreads; t++) {
+                Definition page = ccSite.getDefinition("p" + t);
+                futures.add(executor.submit(() -> {
+                    String text = null;
+                    for (int i = 0; i < 200; i++) {
+                        Context requestContext = new Context(sessionContext);
+                        String next = page.instantiate(requestContext).toString();
+                        if (text != null && !text.equals(next)) {
+                            return "changed from " + text + " to " + next;
+                        }
+                        text = next;
+                    }
+                    return text;
+                }));
+            }
+            for (int t = 0; t < numThreads; t++) {
+                Assertions.assertThat(futures.get(t).get()).isEqualTo("p" + t + ":14:8");
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Parallel copies of a context should not change the counts of the scopes they share")
+    void testParallelCopiesLeaveSharedScopes() throws Exception {
+        int numThreads = 8;
+        Site rcSite = TestSites.build("site rc { int base = 7 frame { \"f\"; } page { \"p:\"; base; } }");
+        Context sessionContext = new Context(rcSite);
+        sessionContext.push(rcSite.getDefinition("frame"), null, null, true);
+        Definition page = rcSite.getDefinition("page");
+
+        List<Scope> scopes = new ArrayList<Scope>();
+        List<Integer> refCounts = new ArrayList<Integer>();
+        Iterator<Scope> it = sessionContext.iterator();
+        while (it.hasNext()) {
+            Scope scope = it.next();
+            scopes.add(scope);
+            refCounts.add(scope.refCount);
+        }
+        Assertions.assertThat(scopes).hasSizeGreaterThan(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < numThreads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        Context requestContext = new Context(sessionContext);
+                        Assertions.assertThat(page.instantiate(requestContext).toString()).isEqualTo("p:7");
+
+                        // as a copied CantoContext does
+                        Context rootContext = new Context(sessionContext);
+                        rootContext.setTop(rootContext.getRootScope());
+                        Assertions.assertThat(page.instantiate(rootContext).toString()).isEqualTo("p:7");
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future: futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // the scopes below the top are shared, so they are kept from being recycled
+        for (int i = 0; i < scopes.size(); i++) {
+            Assertions.assertThat(scopes.get(i).refCount).isEqualTo(refCounts.get(i));
+            Assertions.assertThat(scopes.get(i).isShared()).isEqualTo(i > 0);
+        }
+    }
+
+    @Test
+    @DisplayName("Null values should not be put in concurrent keep tables")
+    void testNullKeepValues() {
+        Map<String, Object> concurrent = new ConcurrentHashMap<String, Object>();
+        Scope.keepPut(concurrent, "a", "x");
+        Scope.keepPut(concurrent, "a", null);
+        Assertions.assertThat(concurrent).doesNotContainKey("a");
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("b", "y");
+        values.put("c", null);
+        Scope.keepPutAll(concurrent, values);
+        Assertions.assertThat(concurrent).containsOnlyKeys("b");
+
+        // tables that aren't concurrent, such as Canto tables, keep nulls as before
+        Map<String, Object> plain = new HashMap<String, Object>();
+        Scope.keepPut(plain, "a", null);
+        Scope.keepPutAll(plain, values);
+        Assertions.assertThat(plain).containsKeys("a", "b", "c");
+
+        Scope scope = context.getRootScope();
+        scope.put("d", "z");
+        scope.put("d", null);
+        Assertions.assertThat(scope.get("d")).isNull();
+
+        Scope keepScope = new Scope(site, null, null, null, null, null);
+        keepScope.addKeepKeep(values);
+        Assertions.assertThat(keepScope.getKeepKeep()).containsKey("b").doesNotContainKey("c");
+    }
+}
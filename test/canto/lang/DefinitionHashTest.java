@@ -0,0 +1,93 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * DefinitionHashTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class DefinitionHashTest {
+
+    private static Site.DefinitionHash tableOf(Site site) {
+        return (Site.DefinitionHash) site.getDefinitionTable();
+    }
+
+    /** Looks up a name that isn't defined, and checks that the miss is remembered. **/
+    private static void rememberMiss(Site site, String name) {
+        Assertions.assertThat(tableOf(site).getDefinition(site, new NameNode(name))).isNull();
+        Assertions.assertThat(tableOf(site).isResolved(site, name)).isTrue();
+    }
+
+    @Test
+    @DisplayName("A remembered miss should be dropped when a definition is added")
+    public void testAddDefinition() throws Exception {
+        Site site = TestSites.build("site dh { x = 1 }");
+        rememberMiss(site, "later");
+
+        Definition later = TestSites.build("site dh { later = 2 }").getDefinition("later");
+        tableOf(site).addDefinition(later, false);
+
+        Assertions.assertThat(tableOf(site).isResolved(site, "later")).isFalse();
+        Assertions.assertThat(tableOf(site).getDefinition(site, new NameNode("later"))).isSameAs(later);
+    }
+
+    @Test
+    @DisplayName("A remembered miss should be dropped when an extern is added")
+    public void testAddExtern() throws Exception {
+        Site site = TestSites.build("site dh { x = 1 }");
+        rememberMiss(site, "java.lang.StringBuilder");
+
+        Site externSite = TestSites.build("site dh_extern { extern java java.lang.** }");
+        site.addExtern(externSite.getExternList().get(0));
+
+        Assertions.assertThat(tableOf(site).isResolved(site, "java.lang.StringBuilder")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Lookups on behalf of an external object should not be remembered")
+    public void testExternalOwner() throws Exception {
+        Site site = TestSites.build("site dh { x = 1 }");
+        Definition external = ExternalDefinition.createForName(site, new ComplexName("java.lang.StringBuilder"), null,
+                                                               Site.defaultExternalAccess, Site.defaultExternalDurability, null);
+        Assertions.assertThat(external).isInstanceOf(ExternalDefinition.class);
+
+        Assertions.assertThat(tableOf(site).getDefinition(external, new NameNode("x"))).isNull();
+        Assertions.assertThat(tableOf(site).isResolved(external, "x")).isFalse();
+
+        // the same lookup on behalf of an ordinary owner is remembered
+        Definition x = site.getDefinition("x");
+        tableOf(site).getDefinition(x, new NameNode("y"));
+        Assertions.assertThat(tableOf(site).isResolved(x, "y")).isTrue();
+    }
+
+    @Test
+    @DisplayName("A remembered miss should be dropped when a site is adopted")
+    public void testAddAdopt() throws Exception {
+        Core core = new Core(true);
+        Site site = new CantoBuilder("site dh { x = 1 }").buildSite(core);
+        new CantoBuilder("site dh_adopted { y = 3 }").buildSite(core);
+        core.resolveOpenSites();
+        rememberMiss(site, "y");
+
+        site.addAdopt(new NameNode("dh_adopted"));
+
+        Assertions.assertThat(tableOf(site).isResolved(site, "y")).isFalse();
+    }
+
+    @Test
+    @DisplayName("A remembered miss should be dropped when another site is merged in")
+    public void testMergeSite() throws Exception {
+        Site site = TestSites.build("site dh { x = 1 }");
+        rememberMiss(site, "merged");
+
+        site.mergeSite(TestSites.build("site dh { merged = 4 }"));
+
+        Assertions.assertThat(tableOf(site).isResolved(site, "merged")).isFalse();
+    }
+}
@@ -0,0 +1,60 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ExternalMethodsTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ExternalMethodsTest {
+
+    @Test
+    @DisplayName("Static and instance methods should be called through cached handles")
+    public void testInvoke() throws Exception {
+        Method valueOf = ExternalMethods.findMethod(String.class, "valueOf", new Class<?>[] { int.class });
+        Method concat = ExternalMethods.findMethod(String.class, "concat", new Class<?>[] { String.class });
+
+        Assertions.assertThat(ExternalMethods.invoke(valueOf, null, new Object[] { 42 })).isEqualTo("42");
+        Assertions.assertThat(ExternalMethods.invoke(concat, "ab", new Object[] { "cd" })).isEqualTo("abcd");
+        Assertions.assertThat(ExternalMethods.findMethod(String.class, "concat", new Class<?>[] { String.class })).isSameAs(concat);
+    }
+
+    @Test
+    @DisplayName("Arguments should be widened and void methods should return null")
+    public void testConversions() throws Exception {
+        Method abs = Math.class.getMethod("abs", long.class);
+        Assertions.assertThat(ExternalMethods.invoke(abs, null, new Object[] { Integer.valueOf(-3) })).isEqualTo(3L);
+
+        StringBuilder sb = new StringBuilder("abc");
+        Method setLength = StringBuilder.class.getMethod("setLength", int.class);
+        Assertions.assertThat(ExternalMethods.invoke(setLength, sb, new Object[] { 1 })).isNull();
+        Assertions.assertThat(sb.toString()).isEqualTo("a");
+    }
+
+    @Test
+    @DisplayName("Exceptions thrown by a method should be wrapped as reflection wraps them")
+    public void testTargetException() throws Exception {
+        Method parseInt = ExternalMethods.findMethod(Integer.class, "parseInt", new Class<?>[] { String.class });
+
+        Assertions.assertThatThrownBy(() -> ExternalMethods.invoke(parseInt, null, new Object[] { "x" }))
+                  .isInstanceOf(InvocationTargetException.class)
+                  .hasCauseInstanceOf(NumberFormatException.class);
+    }
+
+    @Test
+    @DisplayName("Members that don't exist should not be found")
+    public void testNotFound() {
+        Assertions.assertThat(ExternalMethods.findMethod(String.class, "noSuchMethod", new Class<?>[0])).isNull();
+        Assertions.assertThat(ExternalMethods.findField(String.class, "noSuchField")).isNull();
+        Assertions.assertThat(ExternalMethods.findConstructor(StringBuilder.class, new Class<?>[] { String.class })).isNotNull();
+    }
+}
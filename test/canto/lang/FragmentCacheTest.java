@@ -0,0 +1,99 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * FragmentCacheTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class FragmentCacheTest {
+
+    private static final String SITE = "site f { global title = \"Home\"; "
+                                     + "footer(label) { \"<p>\"; label; \"</p>\"; } "
+                                     + "page { \"<h1>\"; title; \"</h1>\"; footer(\"bye\"); } "
+                                     + "dynamic counter { \"n\"; } "
+                                     + "other { counter; } "
+                                     + "counted { int n = 2; n; } }";
+
+    @BeforeEach
+    public void enable() {
+        FragmentCache.setMaxEntries(1000);
+    }
+
+    @AfterEach
+    public void disable() {
+        FragmentCache.setMaxEntries(FragmentCache.DEFAULT_MAX_ENTRIES);
+        FragmentCache.clear();
+    }
+
+    private static Site build() throws Exception {
+        return TestSites.build(SITE);
+    }
+
+    private static Object construct(Site site, String name) throws Redirection {
+        return TestSites.instantiate(site, name);
+    }
+
+    @Test
+    @DisplayName("The output of a definition that depends only on global data should be reused")
+    public void testCachedOutput() throws Exception {
+        Site site = build();
+        FragmentCache.clear();
+
+        Object first = construct(site, "page");
+        long hits = FragmentCache.getHits();
+        Object second = construct(site, "page");
+
+        Assertions.assertThat(first.toString()).isEqualTo("<h1>Home</h1><p>bye</p>");
+        Assertions.assertThat(second).isEqualTo(first);
+        Assertions.assertThat(FragmentCache.getHits()).isEqualTo(hits + 1);
+        Assertions.assertThat(FragmentCache.getProfile(site.getDefinition("footer")).cacheable).isTrue();
+    }
+
+    @Test
+    @DisplayName("Dynamic definitions, definitions that use them and definitions with children should not be cached")
+    public void testNotCacheable() throws Exception {
+        Site site = build();
+
+        Assertions.assertThat(FragmentCache.getProfile(site.getDefinition("counter")).cacheable).isFalse();
+        Assertions.assertThat(FragmentCache.getProfile(site.getDefinition("other")).cacheable).isFalse();
+        Assertions.assertThat(FragmentCache.getProfile(site.getDefinition("counted")).cacheable).isFalse();
+        Assertions.assertThat(construct(site, "counted").toString()).isEqualTo("2");
+    }
+
+    @Test
+    @DisplayName("Clearing the cache should discard cached output")
+    public void testClear() throws Exception {
+        Site site = build();
+        construct(site, "page");
+        Assertions.assertThat(FragmentCache.size()).isGreaterThan(0);
+
+        FragmentCache.clear();
+
+        Assertions.assertThat(FragmentCache.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("The cache should be off by default")
+    public void testOffByDefault() throws Exception {
+        FragmentCache.setMaxEntries(FragmentCache.DEFAULT_MAX_ENTRIES);
+        FragmentCache.clear();
+        Site site = build();
+        long hits = FragmentCache.getHits();
+
+        construct(site, "page");
+        construct(site, "page");
+
+        Assertions.assertThat(FragmentCache.isEnabled()).isFalse();
+        Assertions.assertThat(FragmentCache.size()).isZero();
+        Assertions.assertThat(FragmentCache.getHits()).isEqualTo(hits);
+    }
+}
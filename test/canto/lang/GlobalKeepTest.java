@@ -0,0 +1,61 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * GlobalKeepTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.HashMap;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import canto.util.Holder;
+
+public class GlobalKeepTest {
+
+    private static Holder holder(Object data) {
+        Holder holder = new Holder();
+        holder.data = data;
+        return holder;
+    }
+
+    @Test
+    @DisplayName("A full global keep should evict the least recently used values")
+    public void testEviction() {
+        GlobalKeep keep = new GlobalKeep(10, 0L);
+        keep.put("table.keep", new HashMap<String, Object>());
+        for (int i = 0; i < 9; i++) {
+            keep.put("v" + i, holder(i));
+        }
+        keep.get("v0");
+        keep.put("v9", holder(9));
+
+        Assertions.assertThat(keep.size()).isEqualTo(9);
+        Assertions.assertThat(keep.getEvictions()).isEqualTo(2);
+        Assertions.assertThat(keep.containsKey("table.keep")).isTrue();
+        Assertions.assertThat(keep.containsKey("v0")).isTrue();
+        Assertions.assertThat(keep.containsKey("v9")).isTrue();
+        Assertions.assertThat(keep.containsKey("v1")).isFalse();
+        Assertions.assertThat(keep.containsKey("v2")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Values in a global keep with a time to live should expire")
+    public void testExpiration() throws Exception {
+        GlobalKeep keep = new GlobalKeep(0, 1L);
+        keep.put("table.keep", new HashMap<String, Object>());
+        keep.put("v", holder("x"));
+        Thread.sleep(10);
+
+        Assertions.assertThat(keep.get("v")).isNull();
+        Assertions.assertThat(keep.get("table.keep")).isNotNull();
+        Assertions.assertThat(keep.getExpirations()).isEqualTo(1);
+        Assertions.assertThat(keep.getMisses()).isEqualTo(1);
+        Assertions.assertThat(keep.getHits()).isEqualTo(1);
+    }
+}
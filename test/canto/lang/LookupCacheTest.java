@@ -0,0 +1,102 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * LookupCacheTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LookupCacheTest {
+
+    private static final String SITE = "site lc { "
+            + "x = \"a\"; "
+            + "base { x; } "
+            + "other { x; } "
+            + "ab { x; } "
+            + "al = ab; "
+            + "dynamic page { x; base; } "
+            + "dynamic aliased { al; } "
+            + "dynamic unaliased { ab; } "
+            + "}";
+
+    @Test
+    @DisplayName("A name looked up again in a context of the same shape should be found in the lookup cache")
+    public void testCacheHits() throws Exception {
+        Site site = TestSites.build(SITE);
+        Assertions.assertThat(TestSites.construct(site, "page")).isEqualTo("aa");
+
+        long hits = Instantiation.getLookupCacheHits();
+        Assertions.assertThat(TestSites.construct(site, "page")).isEqualTo("aa");
+        Assertions.assertThat(Instantiation.getLookupCacheHits()).isGreaterThan(hits);
+    }
+
+    @Test
+    @DisplayName("Invalidating the lookup caches, as a reload does, should make every lookup miss")
+    public void testInvalidation() throws Exception {
+        Site site = TestSites.build(SITE);
+        TestSites.construct(site, "page");
+        TestSites.construct(site, "page");
+
+        Instantiation.invalidateLookupCaches();
+        long hits = Instantiation.getLookupCacheHits();
+        Assertions.assertThat(TestSites.construct(site, "page")).isEqualTo("aa");
+        Assertions.assertThat(Instantiation.getLookupCacheHits()).isEqualTo(hits);
+
+        Assertions.assertThat(TestSites.construct(site, "page")).isEqualTo("aa");
+        Assertions.assertThat(Instantiation.getLookupCacheHits()).isGreaterThan(hits);
+    }
+
+    @Test
+    @DisplayName("Lookups under an alias should bypass the lookup cache")
+    public void testContextualShape() throws Exception {
+        Site site = TestSites.build(SITE);
+        Definition al = site.getDefinition("al");
+        Assertions.assertThat(al.isAlias()).isTrue();
+
+        Context context = new Context(site);
+        context.push(al, null, null);
+        try {
+            Assertions.assertThat(context.peek().isContextualShape()).isTrue();
+        } finally {
+            context.pop();
+        }
+        Assertions.assertThat(context.peek().isContextualShape()).isFalse();
+
+        // x is looked up under the alias in one and not in the other
+        long[] hits = new long[2];
+        String[] pages = { "aliased", "unaliased" };
+        for (int i = 0; i < pages.length; i++) {
+            TestSites.construct(site, pages[i]);
+            long before = Instantiation.getLookupCacheHits();
+            Assertions.assertThat(TestSites.construct(site, pages[i])).isEqualTo("a");
+            hits[i] = Instantiation.getLookupCacheHits() - before;
+        }
+        Assertions.assertThat(hits[0]).isLessThan(hits[1]);
+    }
+
+    @Test
+    @DisplayName("Scopes should share a shape exactly when the same definitions are on the stack")
+    public void testShapeIdentity() throws Exception {
+        Site site = TestSites.build(SITE);
+        Definition base = site.getDefinition("base");
+        Definition other = site.getDefinition("other");
+
+        ScopeShape[] shapes = new ScopeShape[3];
+        Definition[][] stacks = { { base, other }, { base, other }, { other, base } };
+        for (int i = 0; i < stacks.length; i++) {
+            Context context = new Context(site);
+            for (Definition def: stacks[i]) {
+                context.push(def, null, null);
+            }
+            shapes[i] = context.peek().getShape();
+        }
+        Assertions.assertThat(shapes[1]).isSameAs(shapes[0]);
+        Assertions.assertThat(shapes[2]).isNotSameAs(shapes[0]);
+    }
+}
@@ -0,0 +1,77 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * OutputSinkTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class OutputSinkTest {
+
+    private static final String SITE = "site s { int x = 12; public p() { \"a\"; x; \"b\"; } public q() { x; } "
+                                     + "public r() [| <i>{= x; =}</i>\u00e9 |] }";
+
+    private Object construct(String name, OutputSink sink) throws Exception {
+        Core core = new Core(true);
+        Site site = new CantoBuilder(SITE).buildSite(core);
+        Context context = new Context(site);
+        Definition def = site.getDefinition(name);
+        context.setOutputSink(def, sink);
+        return def.instantiate(context);
+    }
+
+    @Test
+    @DisplayName("Construction with a sink should stream its output")
+    public void testStreamedConstruction() throws Exception {
+        Object buffered = construct("p", null);
+
+        StringBuilder sb = new StringBuilder();
+        OutputSink sink = new OutputSink(sb);
+        Object streamed = construct("p", sink);
+
+        Assertions.assertThat(sink.isStreaming()).isTrue();
+        Assertions.assertThat(streamed).isNull();
+        Assertions.assertThat(sb.toString()).isEqualTo(buffered.toString());
+    }
+
+    @Test
+    @DisplayName("A single value should be returned rather than streamed")
+    public void testSingleValueNotStreamed() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        OutputSink sink = new OutputSink(sb);
+        Object data = construct("q", sink);
+
+        Assertions.assertThat(sink.isStreaming()).isFalse();
+        Assertions.assertThat(sb.length()).isEqualTo(0);
+        Assertions.assertThat(data).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Static text should be written to the byte stream as encoded bytes")
+    public void testStaticTextAsBytes() throws Exception {
+        Object buffered = construct("r", null);
+
+        StringBuilder sb = new StringBuilder();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        construct("r", new OutputSink(sb, bytes, StandardCharsets.UTF_8));
+        Assertions.assertThat(sb.toString()).isEqualTo("12");
+        Assertions.assertThat(bytes.toString(StandardCharsets.UTF_8)).isEqualTo("<i></i>\u00e9");
+
+        // text and bytes written through the same print stream come out in order
+        bytes.reset();
+        PrintStream out = new PrintStream(bytes, false, StandardCharsets.UTF_8);
+        construct("r", new OutputSink(out, out, StandardCharsets.UTF_8));
+        out.flush();
+        Assertions.assertThat(bytes.toString(StandardCharsets.UTF_8)).isEqualTo(buffered.toString());
+    }
+}
@@ -0,0 +1,191 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ScopePoolTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ScopePoolTest {
+
+    // dynamic, so that nothing is served from the fragment cache
+    private static final String SITE = "site sp { "
+            + "dynamic wrap(x) { \"[\"; x; \"]\"; } "
+            + "dynamic twice(y) { wrap(y); wrap(y); } "
+            + "dynamic item(int n) { \"i\"; n; } "
+            + "dynamic items[] = [ item(1), wrap(\"a\"), twice(item(2)) ] "
+            + "dynamic listed { for it in items { it; \",\"; } } "
+            + "dynamic pair(a, b) { a; \"-\"; b; } "
+            + "dynamic nested(z) { pair(twice(z), pair(item(3), wrap(z))); } "
+            + "dynamic frame { \"<\"; sub; \">\"; } "
+            + "frame framed(w) { \"f\"; nested(w); } "
+            + "dynamic page1 { listed; nested(\"q\"); framed(\"r\"); } "
+            + "dynamic page2 { pair(listed, framed(item(4))); for it in items { nested(it); } } "
+            + "dynamic obj(v) { dynamic label = v; \"<\"; label; \">\"; } "
+            + "dynamic make(p) { dynamic made[] = [ obj(p), obj(item(5)), obj(nested(p)) ] made; } "
+            + "dynamic objs = make(\"a\") "
+            + "}";
+
+    private static final String[] PAGES = { "page1", "page2", "listed", "framed" };
+
+    private static Site build() throws Exception {
+        return TestSites.build(SITE);
+    }
+
+    private static String construct(Site site, String name) throws Redirection {
+        return TestSites.construct(site, name);
+    }
+
+    /** Returns instances made in a scope that has since been popped. **/
+    private static List<?> held(Site site) throws Redirection {
+        Object data = site.getDefinition("objs").instantiate(new Context(site));
+        if (data instanceof CantoArray) {
+            data = ((CantoArray) data).getArrayObject();
+        }
+        return (List<?>) data;
+    }
+
+    @AfterEach
+    public void restorePooling() {
+        Context.setScopePooling(true);
+    }
+
+    @Test
+    @DisplayName("Output should be the same whether or not scopes are recycled")
+    public void testRecycledScopes() throws Exception {
+        Site site = build();
+        Context.setScopePooling(false);
+        String[] expected = new String[PAGES.length];
+        for (int i = 0; i < PAGES.length; i++) {
+            expected[i] = construct(site, PAGES[i]);
+            Assertions.assertThat(expected[i]).isNotEmpty();
+        }
+
+        Context.setScopePooling(true);
+        long recycled = Context.getNumEntriesRecycled();
+        for (int n = 0; n < 50; n++) {
+            for (int i = 0; i < PAGES.length; i++) {
+                Assertions.assertThat(construct(site, PAGES[i])).isEqualTo(expected[i]);
+            }
+        }
+        Assertions.assertThat(Context.getNumEntriesRecycled()).isGreaterThan(recycled);
+    }
+
+    @Test
+    @DisplayName("Threads recycling scopes at the same time should not see each other's scopes")
+    public void testParallelRecycledScopes() throws Exception {
+        Site site = build();
+        Context.setScopePooling(false);
+        String[] expected = new String[PAGES.length];
+        for (int i = 0; i < PAGES.length; i++) {
+            expected[i] = construct(site, PAGES[i]);
+        }
+        Context.setScopePooling(true);
+
+        int numThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < numThreads; t++) {
+                int first = t;
+                futures.add(executor.submit(() -> {
+                    for (int n = 0; n < 200; n++) {
+                        int i = (first + n) % PAGES.length;
+                        Assertions.assertThat(construct(site, PAGES[i])).isEqualTo(expected[i]);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future: futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Scopes that instances still refer to should not be recycled")
+    public void testHeldScopes() throws Exception {
+        Site site = build();
+        Context.setScopePooling(false);
+        List<?> unpooled = held(site);
+        List<Object> expected = new ArrayList<Object>();
+        for (Object obj: unpooled) {
+            expected.add(((ResolvedInstance) obj).generateData());
+        }
+
+        Context.setScopePooling(true);
+        List<?> held = held(site);
+        List<Scope> scopes = new ArrayList<Scope>();
+        List<Object> states = new ArrayList<Object>();
+        for (Object obj: held) {
+            Iterator<Scope> it = ((ResolvedInstance) obj).getResolutionContext().iterator();
+            while (it.hasNext()) {
+                Scope scope = it.next();
+                scopes.add(scope);
+                states.add(Arrays.asList(scope.def, scope.args, String.valueOf(scope.previous)));
+            }
+        }
+
+        // recycle as many scopes as possible on this thread
+        for (int n = 0; n < 50; n++) {
+            for (String page: PAGES) {
+                construct(site, page);
+            }
+        }
+
+        for (int i = 0; i < scopes.size(); i++) {
+            Scope scope = scopes.get(i);
+            Assertions.assertThat(Arrays.asList(scope.def, scope.args, String.valueOf(scope.previous))).isEqualTo(states.get(i));
+        }
+        for (int i = 0; i < held.size(); i++) {
+            Assertions.assertThat(((ResolvedInstance) held.get(i)).generateData()).isEqualTo(expected.get(i));
+        }
+    }
+
+    @Test
+    @DisplayName("A popped scope that a copy on another thread refers to should not be recycled")
+    public void testSharedScopes() throws Exception {
+        Site site = build();
+        Context context = new Context(site);
+        context.push(site.getDefinition("frame"), null, null, true);
+        context.push(site.getDefinition("page1"), null, null, true);
+        Scope pageScope = context.peek();
+        Scope frameScope = context.doublePeek();
+        Definition frame = frameScope.def;
+
+        Context copy = CompletableFuture.supplyAsync(() -> new Context(context)).get();
+        Assertions.assertThat(copy.doublePeek()).isSameAs(frameScope);
+
+        // the top scope is the original's alone, so it may be recycled; the one below it is not
+        context.pop();
+        context.pop();
+        Assertions.assertThat(pageScope.def).isNull();
+        Assertions.assertThat(frameScope.isShared()).isTrue();
+        Assertions.assertThat(frameScope.def).isSameAs(frame);
+
+        for (String page: PAGES) {
+            construct(site, page);
+        }
+        Assertions.assertThat(frameScope.def).isSameAs(frame);
+        Assertions.assertThat(frameScope.refCount).isZero();
+        Assertions.assertThat(CompletableFuture.supplyAsync(() -> copy.doublePeek()).get()).isSameAs(frameScope);
+    }
+}
@@ -0,0 +1,122 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * SiteCacheTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SiteCacheTest {
+
+    private static final String SITE = "site s { int x = 12; cols[] = [ \"a\", \"b\", \"c\" ] "
+                                     + "public p() { \"x = \"; x; \", \"; cols[1]; } }";
+
+    @TempDir
+    Path tempDir;
+
+    private Object[] build(File source, SiteCache cache) throws Exception {
+        Core core = new Core(true);
+        CantoBuilder builder = new CantoBuilder(source, cache);
+        Site site = builder.parseSite();
+        boolean fromCache = builder.isFromCache();
+        site = builder.addToCore(site, core);
+        Context context = new Context(site);
+        Object p = site.getDefinition("p").instantiate(context);
+        return new Object[] { fromCache, p.toString() };
+    }
+
+    @Test
+    @DisplayName("A site read from the cache should produce the same output as a parsed one")
+    public void testCachedSite() throws Exception {
+        File source = tempDir.resolve("s.canto").toFile();
+        Files.writeString(source.toPath(), SITE);
+        SiteCache cache = new SiteCache(tempDir.resolve("cache"));
+
+        Object[] parsed = build(source, cache);
+        Object[] cached = build(source, cache);
+
+        Assertions.assertThat(parsed[0]).isEqualTo(false);
+        Assertions.assertThat(cached[0]).isEqualTo(true);
+        Assertions.assertThat(cached[1]).isEqualTo(parsed[1]);
+    }
+
+    @Test
+    @DisplayName("An unreadable cache entry should be replaced")
+    public void testUnreadableEntry() throws Exception {
+        File source = tempDir.resolve("s.canto").toFile();
+        Files.writeString(source.toPath(), SITE);
+        SiteCache cache = new SiteCache(tempDir.resolve("cache"));
+        Path entry = cache.getDirectory().resolve(cache.getKey(Files.readAllBytes(source.toPath())) + SiteCache.FILE_EXTENSION);
+        Files.createDirectories(cache.getDirectory());
+        Files.writeString(entry, "not a site");
+
+        Object[] result = build(source, cache);
+
+        Assertions.assertThat(result[0]).isEqualTo(false);
+        Assertions.assertThat(cache.get(cache.getKey(Files.readAllBytes(source.toPath())))).isNotNull();
+    }
+
+    private Path entry(SiteCache cache, File source) throws Exception {
+        return cache.getDirectory().resolve(cache.getKey(Files.readAllBytes(source.toPath())) + SiteCache.FILE_EXTENSION);
+    }
+
+    @Test
+    @DisplayName("Caching a site should delete entries cached by other builds")
+    public void testPruneOtherBuilds() throws Exception {
+        File source = tempDir.resolve("s.canto").toFile();
+        Files.writeString(source.toPath(), SITE);
+        SiteCache cache = new SiteCache(tempDir.resolve("cache"));
+        Path otherBuild = cache.getDirectory().resolve("0123456789abcdef-0123" + SiteCache.FILE_EXTENSION);
+        Path unprefixed = cache.getDirectory().resolve("0123456789abcdef" + SiteCache.FILE_EXTENSION);
+        Path unrelated = cache.getDirectory().resolve("notes.txt");
+        Files.createDirectories(cache.getDirectory());
+        Files.writeString(otherBuild, "old");
+        Files.writeString(unprefixed, "old");
+        Files.writeString(unrelated, "kept");
+
+        build(source, cache);
+
+        Assertions.assertThat(entry(cache, source)).exists();
+        Assertions.assertThat(otherBuild).doesNotExist();
+        Assertions.assertThat(unprefixed).doesNotExist();
+        Assertions.assertThat(unrelated).exists();
+    }
+
+    @Test
+    @DisplayName("Caching a site should delete the least recently used entries past the maximum")
+    public void testPruneLeastRecentlyUsed() throws Exception {
+        SiteCache cache = new SiteCache(tempDir.resolve("cache"));
+        cache.setMaxEntries(2);
+        File[] sources = new File[3];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = tempDir.resolve("s" + i + ".canto").toFile();
+            Files.writeString(sources[i].toPath(), SITE.replace("12", String.valueOf(i)));
+        }
+        long now = System.currentTimeMillis();
+        build(sources[0], cache);
+        Files.setLastModifiedTime(entry(cache, sources[0]), FileTime.fromMillis(now - 20000));
+        build(sources[1], cache);
+        Files.setLastModifiedTime(entry(cache, sources[1]), FileTime.fromMillis(now - 10000));
+
+        // reading the first entry makes the second the least recently used
+        Object[] reread = build(sources[0], cache);
+        build(sources[2], cache);
+
+        Assertions.assertThat(reread[0]).isEqualTo(true);
+        Assertions.assertThat(entry(cache, sources[0])).exists();
+        Assertions.assertThat(entry(cache, sources[1])).doesNotExist();
+        Assertions.assertThat(entry(cache, sources[2])).exists();
+    }
+}
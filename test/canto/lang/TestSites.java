@@ -0,0 +1,38 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * TestSites.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+/**
+ * Builds sites from source text and constructs their definitions, for tests.
+ */
+public final class TestSites {
+
+    private TestSites() {}
+
+    /** Builds a site from the passed source in a new core, and resolves it. **/
+    public static Site build(String source) throws Exception {
+        Core core = new Core(true);
+        Site site = new CantoBuilder(source).buildSite(core);
+        core.resolveOpenSites();
+        return site;
+    }
+
+    /** Instantiates the named definition in a new context for the site. **/
+    public static Object instantiate(Site site, String name) throws Redirection {
+        return site.getDefinition(name).instantiate(new Context(site));
+    }
+
+    /** Constructs the named definition and returns its output as a string, or
+     *  null if there is no output.
+     */
+    public static String construct(Site site, String name) throws Redirection {
+        Object data = instantiate(site, name);
+        return (data == null ? null : data.toString());
+    }
+}
@@ -0,0 +1,85 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * TextAccumulatorTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TextAccumulatorTest {
+
+    @Test
+    @DisplayName("Appended pieces should be joined in order, skipping empty ones")
+    public void testJoin() {
+        TextAccumulator text = TextAccumulator.acquire();
+        try {
+            Assertions.assertThat(text.toString()).isEqualTo("");
+            text.append("a").append(null).append("");
+            Assertions.assertThat(text.toString()).isEqualTo("a");
+            text.append("bc");
+            Assertions.assertThat(text.toString()).isEqualTo("abc");
+            for (int i = 0; i < 40; i++) {
+                text.append("d");
+            }
+            Assertions.assertThat(text.toString()).isEqualTo("abc" + "d".repeat(40));
+            Assertions.assertThat(text.length()).isEqualTo(43);
+        } finally {
+            text.release();
+        }
+    }
+
+    @Test
+    @DisplayName("A released accumulator should be reused, empty, on the same thread only")
+    public void testPooling() throws Exception {
+        TextAccumulator text = TextAccumulator.acquire();
+        text.append("left over");
+        text.release();
+
+        TextAccumulator other = CompletableFuture.supplyAsync(TextAccumulator::acquire).get();
+        Assertions.assertThat(other).isNotSameAs(text);
+
+        TextAccumulator reused = TextAccumulator.acquire();
+        try {
+            Assertions.assertThat(reused).isSameAs(text);
+            Assertions.assertThat(reused.length()).isEqualTo(0);
+            Assertions.assertThat(reused.toString()).isEqualTo("");
+        } finally {
+            reused.release();
+        }
+    }
+
+    @Test
+    @DisplayName("Accumulators in use at the same time should be distinct, and one that grew large should be emptied on release")
+    public void testNestedAndLarge() {
+        TextAccumulator outer = TextAccumulator.acquire();
+        TextAccumulator inner = TextAccumulator.acquire();
+        Assertions.assertThat(inner).isNotSameAs(outer);
+        inner.append("x");
+        for (int i = 0; i < 5000; i++) {
+            outer.append("y");
+        }
+        Assertions.assertThat(outer.length()).isEqualTo(5000);
+        outer.release();
+        inner.release();
+
+        TextAccumulator again = TextAccumulator.acquire();
+        TextAccumulator again2 = TextAccumulator.acquire();
+        try {
+            Assertions.assertThat(again.toString()).isEqualTo("");
+            Assertions.assertThat(again2.toString()).isEqualTo("");
+            again2.append("z");
+            Assertions.assertThat(again2.toString()).isEqualTo("z");
+        } finally {
+            again2.release();
+            again.release();
+        }
+    }
+}
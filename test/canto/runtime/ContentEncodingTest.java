@@ -0,0 +1,122 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ContentEncodingTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ContentEncodingTest {
+
+    private static final byte[] LARGE = "<p>a response worth compressing</p>".repeat(20).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SMALL = "<p>small</p>".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    @DisplayName("Missing or empty Accept-Encoding headers should not be compressed")
+    public void testNoHeader() {
+        Assertions.assertThat(ContentEncoding.negotiate(null)).isNull();
+        Assertions.assertThat(ContentEncoding.negotiate("")).isNull();
+        Assertions.assertThat(ContentEncoding.negotiate("identity")).isNull();
+        Assertions.assertThat(ContentEncoding.negotiate("br")).isNull();
+    }
+
+    @Test
+    @DisplayName("gzip, x-gzip and deflate should be accepted in any case")
+    public void testCodings() {
+        Assertions.assertThat(ContentEncoding.negotiate("gzip")).isEqualTo(ContentEncoding.GZIP);
+        Assertions.assertThat(ContentEncoding.negotiate("x-gzip")).isEqualTo(ContentEncoding.GZIP);
+        Assertions.assertThat(ContentEncoding.negotiate("GZIP")).isEqualTo(ContentEncoding.GZIP);
+        Assertions.assertThat(ContentEncoding.negotiate("deflate")).isEqualTo(ContentEncoding.DEFLATE);
+        Assertions.assertThat(ContentEncoding.negotiate("br, deflate")).isEqualTo(ContentEncoding.DEFLATE);
+    }
+
+    @Test
+    @DisplayName("gzip should win ties, and otherwise the higher quality value should win")
+    public void testPreference() {
+        Assertions.assertThat(ContentEncoding.negotiate("deflate, gzip")).isEqualTo(ContentEncoding.GZIP);
+        Assertions.assertThat(ContentEncoding.negotiate("gzip;q=0.5, deflate;q=0.5")).isEqualTo(ContentEncoding.GZIP);
+        Assertions.assertThat(ContentEncoding.negotiate("gzip;q=0.5, deflate")).isEqualTo(ContentEncoding.DEFLATE);
+        Assertions.assertThat(ContentEncoding.negotiate("gzip; Q=0.2, deflate; q=0.8")).isEqualTo(ContentEncoding.DEFLATE);
+        Assertions.assertThat(ContentEncoding.negotiate("deflate;level=1;q=0.1, gzip;q=0.2")).isEqualTo(ContentEncoding.GZIP);
+    }
+
+    @Test
+    @DisplayName("A quality value of zero should refuse a coding")
+    public void testRefusals() {
+        Assertions.assertThat(ContentEncoding.negotiate("gzip;q=0")).isNull();
+        Assertions.assertThat(ContentEncoding.negotiate("gzip;q=0, deflate")).isEqualTo(ContentEncoding.DEFLATE);
+        Assertions.assertThat(ContentEncoding.negotiate("gzip;q=0.0, deflate;q=0")).isNull();
+        Assertions.assertThat(ContentEncoding.negotiate("gzip, gzip;q=0")).isNull();
+
+        // an unreadable quality value counts as zero
+        Assertions.assertThat(ContentEncoding.negotiate("gzip;q=high, deflate")).isEqualTo(ContentEncoding.DEFLATE);
+        Assertions.assertThat(ContentEncoding.negotiate("gzip;q=")).isNull();
+    }
+
+    @Test
+    @DisplayName("A star should stand for the codings that aren't listed")
+    public void testStar() {
+        Assertions.assertThat(ContentEncoding.negotiate("*")).isEqualTo(ContentEncoding.GZIP);
+        Assertions.assertThat(ContentEncoding.negotiate("*;q=0")).isNull();
+        Assertions.assertThat(ContentEncoding.negotiate("gzip;q=0, *")).isEqualTo(ContentEncoding.DEFLATE);
+        Assertions.assertThat(ContentEncoding.negotiate("deflate, *;q=0")).isEqualTo(ContentEncoding.DEFLATE);
+        Assertions.assertThat(ContentEncoding.negotiate("*;q=0.3, deflate;q=0.5")).isEqualTo(ContentEncoding.DEFLATE);
+        Assertions.assertThat(ContentEncoding.negotiate("*;q=0.5, deflate;q=0.5")).isEqualTo(ContentEncoding.GZIP);
+    }
+
+    @Test
+    @DisplayName("Compressed bodies should decompress to the original")
+    public void testCompress() throws Exception {
+        byte[] gzipped = ContentEncoding.GZIP.compress(LARGE);
+        byte[] deflated = ContentEncoding.DEFLATE.compress(LARGE);
+        Assertions.assertThat(gzipped.length).isLessThan(LARGE.length);
+        Assertions.assertThat(deflated.length).isLessThan(LARGE.length);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            Assertions.assertThat(in.readAllBytes()).isEqualTo(LARGE);
+        }
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+            Assertions.assertThat(in.readAllBytes()).isEqualTo(LARGE);
+        }
+    }
+
+    @Test
+    @DisplayName("Each coding of a cached response should have its own ETag")
+    public void testEntryETags() {
+        ResponseCache.Entry entry = new ResponseCache.Entry(LARGE, ResponseCache.getETag(LARGE));
+        String plain = entry.getETag(null);
+        String gzip = entry.getETag(ContentEncoding.GZIP);
+        String deflate = entry.getETag(ContentEncoding.DEFLATE);
+
+        Assertions.assertThat(plain).isEqualTo(entry.etag);
+        Assertions.assertThat(gzip).isEqualTo(plain.substring(0, plain.length() - 1) + "-gzip\"");
+        Assertions.assertThat(deflate).isEqualTo(plain.substring(0, plain.length() - 1) + "-deflate\"");
+        Assertions.assertThat(ResponseCache.matches(plain, gzip)).isFalse();
+        Assertions.assertThat(ResponseCache.matches(gzip, deflate)).isFalse();
+
+        Assertions.assertThat(entry.isEncoded(ContentEncoding.GZIP)).isTrue();
+        Assertions.assertThat(entry.getBody(ContentEncoding.GZIP)).isSameAs(entry.getBody(ContentEncoding.GZIP));
+        Assertions.assertThat(entry.getBody(null)).isSameAs(LARGE);
+    }
+
+    @Test
+    @DisplayName("A response too small to compress should keep its plain ETag")
+    public void testSmallEntryETags() {
+        ResponseCache.Entry entry = new ResponseCache.Entry(SMALL, ResponseCache.getETag(SMALL));
+        Assertions.assertThat(entry.isEncoded(ContentEncoding.GZIP)).isFalse();
+        Assertions.assertThat(entry.getETag(ContentEncoding.GZIP)).isEqualTo(entry.etag);
+        Assertions.assertThat(entry.getETag(ContentEncoding.DEFLATE)).isEqualTo(entry.etag);
+        Assertions.assertThat(entry.getBody(ContentEncoding.GZIP)).isSameAs(SMALL);
+    }
+}
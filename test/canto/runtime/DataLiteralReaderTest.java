@@ -0,0 +1,73 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * DataLiteralReaderTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class DataLiteralReaderTest {
+
+    @Test
+    @DisplayName("Tables and arrays of data should be read into maps and lists")
+    public void testReadTable() {
+        Map<String, Object> table = DataLiteralReader.readTable(
+                "{ \"s\": \"x\", \"i\": -4, \"l\": 12345678901, \"d\": 2.5, \"e\": 1e3, \"t\": true, "
+              + "\"z\": null, \"a\": [ 1, [ \"two\" ], ], 'm': { \"k\": false } }\n");
+
+        Assertions.assertThat(table.keySet()).containsExactly("s", "i", "l", "d", "e", "t", "z", "a", "m");
+        Assertions.assertThat(table.get("s")).isEqualTo("x");
+        Assertions.assertThat(table.get("i")).isEqualTo(-4);
+        Assertions.assertThat(table.get("l")).isEqualTo(12345678901L);
+        Assertions.assertThat(table.get("d")).isEqualTo(2.5);
+        Assertions.assertThat(table.get("e")).isEqualTo(1000.0);
+        Assertions.assertThat(table.get("t")).isEqualTo(true);
+        Assertions.assertThat(table.get("z")).isNull();
+        Assertions.assertThat(table.get("a")).isEqualTo(Arrays.asList(1, Arrays.asList("two")));
+        Assertions.assertThat(table.get("m")).isEqualTo(Map.of("k", false));
+    }
+
+    @Test
+    @DisplayName("Escape sequences in strings should be kept as written, as in Canto source")
+    public void testEscapes() {
+        List<Object> array = DataLiteralReader.readArray("[ \"a\\\"b\\n\", '' ]");
+
+        Assertions.assertThat(array).containsExactly("a\\\"b\\n", "");
+    }
+
+    @Test
+    @DisplayName("Escape sequences in JSON strings should be decoded")
+    public void testJsonEscapes() {
+        Map<String, Object> table = DataLiteralReader.readJsonTable(
+                "{ \"s\": \"a\\\"b\\\\c\\nd\\u0001\\u2028\\/\", \"a\": [ \"\\t\\q\" ] }");
+
+        Assertions.assertThat(table.get("s")).isEqualTo("a\"b\\c\nd\u0001\u2028/");
+        Assertions.assertThat(table.get("a")).isEqualTo(Arrays.asList("\t\\q"));
+        Assertions.assertThat(DataLiteralReader.unescape("\\u12")).isEqualTo("\\u12");
+    }
+
+    @Test
+    @DisplayName("Input that isn't only data should be left to the Canto parser")
+    public void testNotALiteral() {
+        Assertions.assertThat(DataLiteralReader.readTable("t{} = { \"a\": 1 }")).isNull();
+        Assertions.assertThat(DataLiteralReader.readTable("{ a: 1 }")).isNull();
+        Assertions.assertThat(DataLiteralReader.readTable("{ \"a\": x }")).isNull();
+        Assertions.assertThat(DataLiteralReader.readTable("{ \"a\": 1 + 2 }")).isNull();
+        Assertions.assertThat(DataLiteralReader.readTable("{ \"a\": 0x1F }")).isNull();
+        Assertions.assertThat(DataLiteralReader.readTable("{ \"a\": 1 } x")).isNull();
+        Assertions.assertThat(DataLiteralReader.readTable("{ \"a\": 1")).isNull();
+        Assertions.assertThat(DataLiteralReader.readTable("[ 1 ]")).isNull();
+        Assertions.assertThat(DataLiteralReader.readArray("[ truest ]")).isNull();
+        Assertions.assertThat(DataLiteralReader.readArray(null)).isNull();
+    }
+}
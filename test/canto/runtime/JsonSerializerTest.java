@@ -0,0 +1,101 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * JsonSerializerTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import canto.lang.Context;
+import canto.lang.Definition;
+import canto.lang.Site;
+import canto.lang.TestSites;
+
+public class JsonSerializerTest {
+
+    @Test
+    @DisplayName("Data should be written as JSON values")
+    public void testWriteValue() throws Exception {
+        Map<String, Object> table = new LinkedHashMap<String, Object>();
+        table.put("s", "x");
+        table.put("n", 2.5);
+        table.put("nan", Double.NaN);
+        table.put("b", true);
+        table.put("z", null);
+        table.put("a", Arrays.asList(1, new int[] { 2, 3 }));
+
+        StringWriter writer = new StringWriter();
+        new JsonSerializer(null, writer).writeValue(table);
+
+        Assertions.assertThat(writer.toString())
+                  .isEqualTo("{ \"s\": \"x\", \"n\": 2.5, \"nan\": null, \"b\": true, \"z\": null, \"a\": [ 1, [ 2, 3 ] ] }");
+    }
+
+    @Test
+    @DisplayName("Quotes, backslashes and control characters should be escaped")
+    public void testWriteString() throws Exception {
+        StringWriter writer = new StringWriter();
+        new JsonSerializer(null, writer).writeString("a\"b\\c\nd\u0001\u2028");
+
+        Assertions.assertThat(writer.toString()).isEqualTo("\"a\\\"b\\\\c\\nd\\u0001\\u2028\"");
+    }
+
+    /** Deserializes the passed string into the keep of a new holder object, and
+     *  returns the values that were kept.
+     */
+    private static Map<?, ?> deserialize(String str) throws Exception {
+        Site site = TestSites.build("site rt { holder { a[] = [] } }");
+        Definition def = site.getDefinition("holder");
+        Context context = new Context(site);
+        context.push(def, null, null);
+        try {
+            Utils.deserialize(context, def, str, null, null);
+            return (Map<?, ?>) def.getScopeInContext(context).getPrevious().getKeep().get("holder.keep");
+        } finally {
+            context.pop();
+        }
+    }
+
+    @Test
+    @DisplayName("Strings should be the same after being serialized and deserialized")
+    public void testRoundTrip() throws Exception {
+        String[] strs = { "plain", "a\"b", "back\\slash", "two\nlines\r\t", "\u0001\u2028", "\\n" };
+        Map<String, Object> table = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < strs.length; i++) {
+            table.put("s" + i, strs[i]);
+        }
+        table.put("a", Arrays.asList((Object[]) strs));
+
+        // each round trip leaves them unchanged, so repeated ones don't pile up escapes
+        Map<?, ?> kept = table;
+        for (int n = 0; n < 2; n++) {
+            StringWriter writer = new StringWriter();
+            new JsonSerializer(null, writer).writeValue(kept);
+            kept = deserialize(writer.toString());
+            for (int i = 0; i < strs.length; i++) {
+                Assertions.assertThat(kept.get("s" + i)).isEqualTo(strs[i]);
+            }
+            Assertions.assertThat((Object[]) kept.get("a")).containsExactly((Object[]) strs);
+        }
+    }
+
+    @Test
+    @DisplayName("Escape sequences in strings read by the Canto parser should be decoded when deserializing")
+    public void testParsedRoundTrip() throws Exception {
+        // a named table isn't plain data, so this is read by the Canto parser
+        Map<?, ?> kept = deserialize("t{} = { \"s\": \"a\\\"b\\\\c\\n\", \"n\": 1 }");
+
+        Assertions.assertThat(String.valueOf(kept.get("s"))).isEqualTo("a\"b\\c\n");
+    }
+}
@@ -0,0 +1,83 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * LatencyHistogramTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.assertj.core.api.Assertions;
+import org.assertj.core.data.Percentage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Percentiles should be within a sixteenth of the recorded values")
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+
+        Assertions.assertThat(histogram.getCount()).isEqualTo(10000);
+        Assertions.assertThat(histogram.getMax()).isEqualTo(10000);
+        Assertions.assertThat(histogram.getMean()).isEqualTo(5000.5);
+        Assertions.assertThat(histogram.getPercentile(50)).isCloseTo(5000, Percentage.withPercentage(6.25));
+        Assertions.assertThat(histogram.getPercentile(99)).isCloseTo(9900, Percentage.withPercentage(6.25));
+        Assertions.assertThat(histogram.getPercentile(100)).isEqualTo(10000);
+        Assertions.assertThat(new LatencyHistogram().getPercentile(50)).isZero();
+
+        histogram = new LatencyHistogram();
+        histogram.record(7);
+        histogram.record(Long.MAX_VALUE);
+        Assertions.assertThat(histogram.getPercentile(50)).isEqualTo(7);
+        Assertions.assertThat(histogram.getMax()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    @DisplayName("Requests recorded on several threads at once should all be counted")
+    public void testParallelRecording() throws Exception {
+        RequestStats stats = new RequestStats();
+        int numThreads = 8;
+        int numRequests = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < numThreads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int n = 0; n < numRequests; n++) {
+                        stats.record("page" + (n % 2), 1000000L);
+                        stats.record("file");
+                    }
+                }));
+            }
+            for (Future<?> future: futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assertions.assertThat(stats.getEntries().keySet()).containsExactly("file", "page0", "page1");
+        Assertions.assertThat(stats.getEntries().get("file").getRequests()).isEqualTo(numThreads * numRequests);
+        Assertions.assertThat(stats.getEntries().get("file").getLatencies()).isNull();
+        LatencyHistogram latencies = stats.getEntries().get("page0").getLatencies();
+        Assertions.assertThat(latencies.getCount()).isEqualTo(numThreads * numRequests / 2);
+        Assertions.assertThat(latencies.getPercentile(99)).isEqualTo(1000);
+
+        Map<?, ?> row = (Map<?, ?>) stats.toTable().get("page1");
+        Assertions.assertThat(row.get("requests")).isEqualTo((long) (numThreads * numRequests / 2));
+        Assertions.assertThat(row.get("p50_ms")).isEqualTo(1.0);
+    }
+}
@@ -0,0 +1,106 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * RequestProfileTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import canto.lang.GlobalKeep;
+import canto.lang.Site;
+import canto.lang.TestSites;
+
+public class RequestProfileTest {
+
+    private static final String SITE = "site rp { "
+            + "dynamic item(int n) { \"i\"; n; } "
+            + "dynamic page { item(1); item(2); } "
+            + "}";
+
+    private static String construct(Site site) throws Exception {
+        return TestSites.construct(site, "page");
+    }
+
+    @AfterEach
+    public void disable() {
+        RequestProfile.setEnabled(false);
+    }
+
+    @Test
+    @DisplayName("A profile should count only what its own request does")
+    public void testProfile() throws Exception {
+        Site site = TestSites.build(SITE);
+        RequestProfile.setEnabled(true);
+        RequestProfile alone = RequestProfile.start();
+        Assertions.assertThat(construct(site)).isEqualTo("i1i2");
+        alone.end();
+        Assertions.assertThat(alone.getScopes()).isPositive();
+        Assertions.assertThat(alone.getWallNanos()).isPositive();
+        Assertions.assertThat(RequestProfile.current()).isNull();
+
+        // a request on another thread counts toward its own profile only
+        RequestProfile profile = RequestProfile.start();
+        construct(site);
+        CompletableFuture.runAsync(() -> {
+            RequestProfile other = RequestProfile.start();
+            try {
+                construct(site);
+                construct(site);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            other.end();
+            Assertions.assertThat(other.getScopes()).isEqualTo(2 * alone.getScopes());
+        }).get();
+        profile.end();
+        Assertions.assertThat(profile.getScopes()).isEqualTo(alone.getScopes());
+
+        RequestStats stats = new RequestStats();
+        stats.record("page", alone.getWallNanos(), alone);
+        stats.record("page", profile.getWallNanos(), profile);
+        RequestStats.ProfileTotals totals = stats.getEntries().get("page").getProfiles();
+        Assertions.assertThat(totals.getCount()).isEqualTo(2);
+        Assertions.assertThat(totals.getScopes()).isEqualTo(2 * alone.getScopes());
+    }
+
+    @Test
+    @DisplayName("A global looked up from a nested scope should count as one keep hit")
+    public void testKeepCounts() throws Exception {
+        Site site = TestSites.build("site gk { global int g = 7 "
+                + "dynamic inner { \"g\"; g; } "
+                + "dynamic page { g; inner; } "
+                + "}");
+        GlobalKeep keep = (GlobalKeep) site.getGlobalKeep();
+        long hits = keep.getHits();
+        long misses = keep.getMisses();
+
+        // page instantiates and keeps g, then inner looks it up two scopes down
+        RequestProfile.setEnabled(true);
+        RequestProfile profile = RequestProfile.start();
+        Assertions.assertThat(construct(site)).isEqualTo("7g7");
+        profile.end();
+
+        Assertions.assertThat(keep.getHits() - hits).isEqualTo(1);
+        Assertions.assertThat(keep.getMisses() - misses).isZero();
+        Assertions.assertThat(profile.getKeepHits()).isEqualTo(1);
+        Assertions.assertThat(profile.getKeepMisses()).isZero();
+    }
+
+    @Test
+    @DisplayName("Nothing should be profiled unless profiling is turned on")
+    public void testDisabled() throws Exception {
+        Site site = TestSites.build(SITE);
+        Assertions.assertThat(RequestProfile.start()).isNull();
+        construct(site);
+        Assertions.assertThat(RequestProfile.current()).isNull();
+    }
+}
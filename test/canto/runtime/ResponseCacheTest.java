@@ -0,0 +1,157 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ResponseCacheTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.assertj.core.api.Assertions;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ResponseCacheTest {
+
+    @AfterEach
+    public void restore() {
+        ResponseCache.setMaxEntries(ResponseCache.DEFAULT_MAX_ENTRIES);
+        ResponseCache.clear();
+    }
+
+    @Test
+    @DisplayName("Keys should not depend on the order of the parameters")
+    public void testKeyOrder() {
+        Map<String, String> ab = new LinkedHashMap<String, String>();
+        ab.put("a", "1");
+        ab.put("b", "2");
+        Map<String, String> ba = new LinkedHashMap<String, String>();
+        ba.put("b", "2");
+        ba.put("a", "1");
+
+        Assertions.assertThat(ResponseCache.getKey("s", "p", ab)).isEqualTo(ResponseCache.getKey("s", "p", ba));
+        Assertions.assertThat(ResponseCache.getKey("s", "p", null)).isEqualTo(ResponseCache.getKey("s", "p", new HashMap<String, String>()));
+
+        ba.put("a", "3");
+        Assertions.assertThat(ResponseCache.getKey("s", "p", ab)).isNotEqualTo(ResponseCache.getKey("s", "p", ba));
+        Assertions.assertThat(ResponseCache.getKey("s", "p", null)).isNotEqualTo(ResponseCache.getKey("s", "q", null));
+        Assertions.assertThat(ResponseCache.getKey("s", "p", null)).isNotEqualTo(ResponseCache.getKey("t", "p", null));
+    }
+
+    @Test
+    @DisplayName("If-None-Match should match a star, a tag in a list and a weak tag")
+    public void testMatches() {
+        String etag = ResponseCache.getETag("body".getBytes(StandardCharsets.UTF_8));
+        String other = ResponseCache.getETag("other".getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertThat(etag).startsWith("\"").endsWith("\"").hasSize(34);
+        Assertions.assertThat(ResponseCache.matches(etag, etag)).isTrue();
+        Assertions.assertThat(ResponseCache.matches(" * ", etag)).isTrue();
+        Assertions.assertThat(ResponseCache.matches(other + ", " + etag, etag)).isTrue();
+        Assertions.assertThat(ResponseCache.matches("W/" + etag, etag)).isTrue();
+        Assertions.assertThat(ResponseCache.matches(other + ",W/" + etag, etag)).isTrue();
+
+        Assertions.assertThat(ResponseCache.matches(other, etag)).isFalse();
+        Assertions.assertThat(ResponseCache.matches(null, etag)).isFalse();
+        Assertions.assertThat(ResponseCache.matches(etag, null)).isFalse();
+        Assertions.assertThat(ResponseCache.matches(etag.replace("\"", ""), etag)).isFalse();
+    }
+
+    @Test
+    @DisplayName("A full cache should evict the least recently used responses")
+    public void testEviction() {
+        ResponseCache.clear();
+        ResponseCache.setMaxEntries(10);
+        long evictions = ResponseCache.getEvictions();
+        for (int i = 0; i < 10; i++) {
+            ResponseCache.put("k" + i, ("body " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertThat(ResponseCache.get("k" + i)).isNotNull();
+        }
+        ResponseCache.put("k10", "body 10".getBytes(StandardCharsets.UTF_8));
+
+        // evicted down to 90%, and only from the responses not used since
+        Assertions.assertThat(ResponseCache.size()).isEqualTo(9);
+        Assertions.assertThat(ResponseCache.getEvictions() - evictions).isEqualTo(2);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertThat(ResponseCache.get("k" + i)).isNotNull();
+        }
+        Assertions.assertThat(ResponseCache.get("k10")).isNotNull();
+
+        ResponseCache.setMaxEntries(0);
+        Assertions.assertThat(ResponseCache.size()).isZero();
+        Assertions.assertThat(ResponseCache.isEnabled()).isFalse();
+        Assertions.assertThat(ResponseCache.put("k", "body".getBytes(StandardCharsets.UTF_8))).isNull();
+    }
+
+    @Test
+    @DisplayName("A request for a cached page with a matching ETag should get Not Modified")
+    public void testNotModified() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("port", "0");
+        CantoServer cantoServer = new CantoServer(params);
+        CantoSite site = new CantoSite("rc", cantoServer) {
+            public boolean isCachedPage(String pageName) {
+                return "index".equals(pageName);
+            }
+        };
+        String body = "<p>cached</p>".repeat(40);
+        ResponseCache.Entry entry = ResponseCache.put(ResponseCache.getKey("rc", "index", null), body.getBytes(StandardCharsets.UTF_8));
+
+        Server server = new Server(0);
+        server.setHandler(new Handler.Abstract() {
+            public boolean handle(Request request, Response response, Callback callback) {
+                cantoServer.respond(site, "index", request, response, callback);
+                return true;
+            }
+        });
+        server.start();
+        try {
+            int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            URI uri = URI.create("http://127.0.0.1:" + port + "/index");
+            long notModified = ResponseCache.getNotModified();
+
+            HttpURLConnection conn = (HttpURLConnection) uri.toURL().openConnection();
+            Assertions.assertThat(conn.getResponseCode()).isEqualTo(200);
+            Assertions.assertThat(conn.getHeaderField("ETag")).isEqualTo(entry.etag);
+            Assertions.assertThat(new String(conn.getInputStream().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(body);
+
+            conn = (HttpURLConnection) uri.toURL().openConnection();
+            conn.setRequestProperty("If-None-Match", entry.etag);
+            Assertions.assertThat(conn.getResponseCode()).isEqualTo(304);
+            Assertions.assertThat(ResponseCache.getNotModified() - notModified).isEqualTo(1);
+
+            // the compressed response has its own ETag, so the plain one doesn't match it
+            String gzipETag = entry.getETag(ContentEncoding.GZIP);
+            conn = (HttpURLConnection) uri.toURL().openConnection();
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            conn.setRequestProperty("If-None-Match", entry.etag);
+            Assertions.assertThat(conn.getResponseCode()).isEqualTo(200);
+            Assertions.assertThat(conn.getHeaderField("ETag")).isEqualTo(gzipETag);
+            Assertions.assertThat(conn.getHeaderField("Content-Encoding")).isEqualTo("gzip");
+
+            conn = (HttpURLConnection) uri.toURL().openConnection();
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            conn.setRequestProperty("If-None-Match", "W/" + gzipETag);
+            Assertions.assertThat(conn.getResponseCode()).isEqualTo(304);
+        } finally {
+            server.stop();
+        }
+    }
+}